@@ -0,0 +1,86 @@
+package com.db.awmd.challenge;
+
+import java.util.Random;
+
+/**
+ * Distribution of the accounts picked by the benchmarks.
+ * - UNIFORM: every account is equally likely.
+ * - ZIPFIAN: a few hot accounts take most of the traffic (theta 0.99, the YCSB default).
+ */
+public enum AccountSkew {
+
+    UNIFORM {
+        @Override
+        public int[] sample(int accounts, int count, Random random) {
+            int[] indexes = new int[count];
+            for (int i = 0; i < count; i++) {
+                indexes[i] = random.nextInt(accounts);
+            }
+            return indexes;
+        }
+    },
+
+    ZIPFIAN {
+        @Override
+        public int[] sample(int accounts, int count, Random random) {
+            // Gray et al. "Quickly generating billion-record synthetic databases", as used by YCSB
+            double zetaN = zeta(accounts);
+            double zeta2 = zeta(2);
+            double alpha = 1.0 / (1.0 - THETA);
+            double eta = (1 - Math.pow(2.0 / accounts, 1 - THETA)) / (1 - zeta2 / zetaN);
+            int[] indexes = new int[count];
+            for (int i = 0; i < count; i++) {
+                double u = random.nextDouble();
+                double uz = u * zetaN;
+                int index;
+                if (uz < 1.0) {
+                    index = 0;
+                } else if (uz < 1.0 + Math.pow(0.5, THETA)) {
+                    index = 1;
+                } else {
+                    index = (int) (accounts * Math.pow(eta * u - eta + 1, alpha));
+                }
+                indexes[i] = Math.min(index, accounts - 1);
+            }
+            return indexes;
+        }
+    };
+
+    private static final double THETA = 0.99;
+
+    /**
+     * Returns count account indexes between 0 and accounts - 1 following this distribution.
+     *
+     * @param accounts number of accounts
+     * @param count number of indexes to generate
+     * @param random
+     * @return account indexes
+     */
+    public abstract int[] sample(int accounts, int count, Random random);
+
+    /**
+     * Returns count pairs of different account indexes, from in the even and to in the odd positions.
+     *
+     * @param accounts number of accounts, at least 2
+     * @param count number of pairs to generate
+     * @param random
+     * @return account index pairs
+     */
+    public int[] samplePairs(int accounts, int count, Random random) {
+        int[] indexes = sample(accounts, count * 2, random);
+        for (int i = 0; i < indexes.length; i += 2) {
+            if (indexes[i] == indexes[i + 1]) {
+                indexes[i + 1] = (indexes[i + 1] + 1) % accounts;
+            }
+        }
+        return indexes;
+    }
+
+    private static double zeta(long n) {
+        double sum = 0;
+        for (long i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, THETA);
+        }
+        return sum;
+    }
+}
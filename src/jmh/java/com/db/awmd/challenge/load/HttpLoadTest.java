@@ -0,0 +1,284 @@
+package com.db.awmd.challenge.load;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the transfer API over many concurrent keep alive connections, driven by one thread and a selector so
+ * the client itself needs no thread per connection. Every connection sends a transfer, waits for the response and
+ * sends the next one. It reports the connections established, the throughput and the latency percentiles, so the
+ * blocking /v1 and the non blocking /v2 controllers can be compared on the same server:
+ * <pre>
+ * HttpLoadTest [host] [port] [v1|v2] [connections] [seconds] [accounts]
+ * </pre>
+ * Tens of thousands of connections need a matching open file limit (ulimit -n) on both sides.
+ */
+public final class HttpLoadTest {
+
+    private static final int BUFFER_SIZE = 1 << 14;
+
+    private final String host;
+
+    private final int port;
+
+    private final String api;
+
+    private final String accountPrefix;
+
+    private final int accounts;
+
+    private final Random random = new Random(42);
+
+    private long[] latencies = new long[1 << 20];
+
+    private int completed;
+
+    private int failed;
+
+    private int errors;
+
+    private int reconnects;
+
+    private HttpLoadTest(String host, int port, String api, int accounts) {
+        this.host = host;
+        this.port = port;
+        this.api = api;
+        this.accountPrefix = "load-" + System.currentTimeMillis() + "-";
+        this.accounts = accounts;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 18080;
+        String api = args.length > 2 ? args[2] : "v2";
+        int connections = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 30;
+        int accounts = args.length > 5 ? Integer.parseInt(args[5]) : 10_000;
+
+        HttpLoadTest loadTest = new HttpLoadTest(host, port, api, accounts);
+        loadTest.createAccounts();
+        loadTest.run(connections, TimeUnit.SECONDS.toNanos(seconds));
+    }
+
+    private void createAccounts() throws IOException {
+        for (int i = 0; i < accounts; i++) {
+            HttpURLConnection connection = (HttpURLConnection) new URL("http", host, port, "/" + api + "/accounts")
+                    .openConnection();
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(("{\"accountId\":\"" + accountPrefix + i + "\",\"balance\":1000000000}")
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+            if (connection.getResponseCode() != 201) {
+                throw new IOException("Can not create account, status " + connection.getResponseCode());
+            }
+        }
+    }
+
+    private void run(int connections, long durationNanos) throws IOException {
+        Selector selector = Selector.open();
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        for (int i = 0; i < connections; i++) {
+            new Connection().open(selector, address);
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + durationNanos;
+        while (System.nanoTime() < deadline) {
+            selector.select(100);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Connection connection = (Connection) key.attachment();
+                try {
+                    if (key.isConnectable()) {
+                        connection.channel.finishConnect();
+                        connection.connected = true;
+                        send(key, connection);
+                    } else if (key.isWritable()) {
+                        write(key, connection);
+                    } else if (key.isReadable()) {
+                        read(key, connection);
+                    }
+                } catch (IOException ex) {
+                    errors++;
+                    key.cancel();
+                    connection.channel.close();
+                    connection.connected = false;
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        int connected = 0;
+        for (SelectionKey key : selector.keys()) {
+            connected += ((Connection) key.attachment()).connected ? 1 : 0;
+            key.channel().close();
+        }
+        selector.close();
+        report(connections, connected, elapsed);
+    }
+
+    private void send(SelectionKey key, Connection connection) throws IOException {
+        int from = random.nextInt(accounts);
+        int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+        byte[] body = ("{\"accountFromId\":\"" + accountPrefix + from + "\",\"accountToId\":\"" + accountPrefix + to
+                + "\",\"amount\":1}").getBytes(StandardCharsets.UTF_8);
+        byte[] head = ("POST /" + api + "/transfer HTTP/1.1\r\nHost: " + host + "\r\n"
+                + "Content-Type: application/json\r\nContent-Length: " + body.length + "\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII);
+        connection.out = ByteBuffer.allocate(head.length + body.length).put(head).put(body);
+        connection.out.flip();
+        connection.sentAt = System.nanoTime();
+        write(key, connection);
+    }
+
+    private void write(SelectionKey key, Connection connection) throws IOException {
+        connection.channel.write(connection.out);
+        key.interestOps(connection.out.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    private void read(SelectionKey key, Connection connection) throws IOException {
+        if (connection.channel.read(connection.in) < 0) {
+            throw new IOException("Connection closed by the server");
+        }
+        int status = connection.parseResponse();
+        if (status == 0) {
+            return;
+        }
+        record(System.nanoTime() - connection.sentAt, status);
+        if (connection.closing) {
+            // the server closes a keep alive connection after a number of requests, open a new one like a client would
+            reconnects++;
+            key.cancel();
+            connection.channel.close();
+            connection.open(key.selector(), new InetSocketAddress(host, port));
+        } else {
+            send(key, connection);
+        }
+    }
+
+    private void record(long latency, int status) {
+        if (completed == latencies.length) {
+            latencies = Arrays.copyOf(latencies, completed * 2);
+        }
+        latencies[completed++] = latency;
+        if (status != 200) {
+            failed++;
+        }
+    }
+
+    private void report(int connections, int connected, long elapsed) {
+        long[] sorted = Arrays.copyOf(latencies, completed);
+        Arrays.sort(sorted);
+        System.out.printf("api=%s connections=%d connected=%d errors=%d reconnects=%d%n", api, connections, connected,
+                errors, reconnects);
+        System.out.printf("requests=%d non-200=%d throughput=%.0f req/s%n", completed, failed,
+                completed / (elapsed / 1e9));
+        System.out.printf("latency ms p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f%n", percentile(sorted, 0.5),
+                percentile(sorted, 0.9), percentile(sorted, 0.99), percentile(sorted, 0.999),
+                percentile(sorted, 1.0));
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    /**
+     * Keep alive connection with one request in flight.
+     */
+    private static final class Connection {
+
+        private final ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+
+        private SocketChannel channel;
+
+        private ByteBuffer out;
+
+        private long sentAt;
+
+        private boolean connected;
+
+        private boolean closing;
+
+        private void open(Selector selector, InetSocketAddress address) throws IOException {
+            in.clear();
+            closing = false;
+            connected = false;
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.connect(address);
+            channel.register(selector, SelectionKey.OP_CONNECT, this);
+        }
+
+        /**
+         * Consumes the response if it is complete, with either a content length or a chunked body.
+         *
+         * @return HTTP status of the response, 0 if it is not complete yet
+         */
+        private int parseResponse() {
+            byte[] data = in.array();
+            int length = in.position();
+            int headerEnd = indexOf(data, 0, length, "\r\n\r\n");
+            if (headerEnd < 0) {
+                return 0;
+            }
+            String headers = new String(data, 0, headerEnd, StandardCharsets.US_ASCII);
+            int status = Integer.parseInt(headers.substring(9, 12));
+            int bodyStart = headerEnd + 4;
+            int end;
+            String lowerCase = headers.toLowerCase();
+            closing = lowerCase.contains("\r\nconnection: close");
+            int contentLength = lowerCase.indexOf("\r\ncontent-length:");
+            if (contentLength >= 0) {
+                int valueEnd = lowerCase.indexOf("\r\n", contentLength + 2);
+                end = bodyStart + Integer.parseInt(lowerCase.substring(contentLength + 17,
+                        valueEnd < 0 ? lowerCase.length() : valueEnd).trim());
+            } else if (lowerCase.contains("\r\ntransfer-encoding: chunked")) {
+                int last = indexOf(data, headerEnd, length, "\r\n0\r\n\r\n");
+                end = last < 0 ? Integer.MAX_VALUE : last + 7;
+            } else {
+                end = bodyStart;
+            }
+            if (end > length) {
+                return 0;
+            }
+            in.flip();
+            in.position(end);
+            in.compact();
+            return status;
+        }
+
+        private static int indexOf(byte[] data, int from, int to, String pattern) {
+            byte[] bytes = pattern.getBytes(StandardCharsets.US_ASCII);
+            for (int i = from; i <= to - bytes.length; i++) {
+                int j = 0;
+                while (j < bytes.length && data[i + j] == bytes[j]) {
+                    j++;
+                }
+                if (j == bytes.length) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link AccountsRepositoryInMemory#createAccount(Account)} into repositories already holding 1k, 1M and
+ * 10M accounts. New accounts are added during the run, so the population grows slightly while measuring.
+ * The fork gets a 6 GB heap to hold the 10M population.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class AccountCreateBenchmark {
+
+    @Param({"1000", "1000000", "10000000"})
+    public int population;
+
+    private AccountsRepository accountsRepository;
+
+    private long next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        accountsRepository = new AccountsRepositoryInMemory();
+        for (int i = 0; i < population; i++) {
+            accountsRepository.createAccount(new Account("Id-" + i, BigDecimal.TEN));
+        }
+        next = population;
+    }
+
+    @Benchmark
+    public void createAccount() {
+        accountsRepository.createAccount(new Account("Id-" + next++, BigDecimal.TEN));
+    }
+}
@@ -0,0 +1,97 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the account map of {@link AccountsRepositoryInMemory} with the {@link AccountIdIndex} and a long balance
+ * per slot, as kept by {@link AccountsRepositoryFixedPoint}. The setup prints the heap used per account, the benchmark
+ * measures the lookup of a random existing account id.
+ * 100M accounts need about 20 GB of heap for the map, set it with -jvmArgsAppend -Xmx.. when running that case.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class AccountIdIndexBenchmark {
+
+    private static final int KEYS = 1 << 16;
+
+    @Param({"map", "index"})
+    public String structure;
+
+    @Param({"10000000", "100000000"})
+    public int population;
+
+    private Map<String, Account> map;
+
+    private AccountIdIndex index;
+
+    private long[] balances;
+
+    private String[] keys;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        long before = usedHeap();
+        if ("map".equals(structure)) {
+            map = new ConcurrentHashMap<>();
+            for (int i = 0; i < population; i++) {
+                String accountId = "Id-" + i;
+                map.put(accountId, new Account(accountId, BigDecimal.valueOf(1000)));
+            }
+        } else {
+            index = new AccountIdIndex();
+            balances = new long[population];
+            for (int i = 0; i < population; i++) {
+                index.add("Id-" + i, slot -> balances[slot] = 100_000);
+            }
+        }
+        System.out.printf("%n%s heap per account: %.1f bytes%n", structure,
+                (usedHeap() - before) / (double) population);
+
+        Random random = new Random(42);
+        keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "Id-" + random.nextInt(population);
+        }
+    }
+
+    @Benchmark
+    public long lookup() {
+        String key = keys[next++ & (KEYS - 1)];
+        if (map != null) {
+            return map.get(key).getBalance().unscaledValue().longValue();
+        }
+        return balances[index.slotOf(key)];
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
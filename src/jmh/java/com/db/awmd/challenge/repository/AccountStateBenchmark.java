@@ -0,0 +1,93 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the immutable account states of {@link AccountsRepositoryInMemory} with the mutable accounts of
+ * {@link LegacyAccountsRepositoryInMemory}, with 4 threads either on accounts of their own (uncontended) or all on
+ * the same two accounts (hot). Every thread transfers between its two accounts, credits one of them and reads it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class AccountStateBenchmark {
+
+    @Param({"legacy", "immutable"})
+    public String implementation;
+
+    @Param({"uncontended", "hot"})
+    public String contention;
+
+    private AccountsRepository accountsRepository;
+
+    private final AtomicInteger threads = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        accountsRepository = "legacy".equals(implementation)
+                ? new LegacyAccountsRepositoryInMemory() : new AccountsRepositoryInMemory();
+        for (int i = 0; i < 64; i++) {
+            accountsRepository.createAccount(new Account("Id-" + i, new BigDecimal("1000000.00")));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Accounts {
+
+        private String from;
+
+        private List<Transaction> transfer;
+
+        private List<Transaction> credit;
+
+        @Setup(Level.Trial)
+        public void setUp(AccountStateBenchmark benchmark) {
+            int pair = "hot".equals(benchmark.contention) ? 0 : benchmark.threads.getAndIncrement();
+            from = "Id-" + (2 * pair);
+            String to = "Id-" + (2 * pair + 1);
+            BigDecimal amount = new BigDecimal("0.01");
+            transfer = Arrays.asList(new Transaction(from, amount.negate()), new Transaction(to, amount));
+            credit = Collections.singletonList(new Transaction(from, amount));
+        }
+    }
+
+    @Benchmark
+    public boolean transfer(Accounts accounts) {
+        return accountsRepository.updateAccountsForTransactions(accounts.transfer);
+    }
+
+    @Benchmark
+    public boolean credit(Accounts accounts) {
+        return accountsRepository.updateAccountsForTransactions(accounts.credit);
+    }
+
+    @Benchmark
+    public Account getAccount(Accounts accounts) {
+        return accountsRepository.getAccount(accounts.from);
+    }
+}
@@ -0,0 +1,86 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.AccountSkew;
+import com.db.awmd.challenge.RepositoryConfiguration;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the repository implementations on the two calls of a transfer: reading an account and applying the
+ * transactions. Run with -prof gc to see the allocation rate per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountsRepositoryBenchmark {
+
+    private static final int OPERATIONS = 1 << 16;
+
+    @Param({"in-memory", "fixed-point"})
+    public String type;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    public AccountSkew skew;
+
+    @Param({"10000"})
+    public int accounts;
+
+    private AccountsRepository accountsRepository;
+
+    private String[] accountIds;
+
+    private List<Transaction>[] transactions;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        accountsRepository = RepositoryConfiguration.createAccountsRepository(type, MinorUnits.DEFAULT_SCALE);
+        Random random = new Random(42);
+        accountIds = new String[OPERATIONS];
+        transactions = new List[OPERATIONS];
+        for (int i = 0; i < accounts; i++) {
+            accountsRepository.createAccount(new Account("Id-" + i, new BigDecimal("1000000.00")));
+        }
+        int[] pairs = skew.samplePairs(accounts, OPERATIONS, random);
+        for (int i = 0; i < OPERATIONS; i++) {
+            String from = "Id-" + pairs[2 * i];
+            String to = "Id-" + pairs[2 * i + 1];
+            BigDecimal amount = BigDecimal.valueOf(1 + random.nextInt(10000), 2);
+            accountIds[i] = from;
+            transactions[i] = Arrays.asList(new Transaction(from, amount.negate()), new Transaction(to, amount));
+        }
+    }
+
+    @Benchmark
+    public Account getAccount() {
+        return accountsRepository.getAccount(accountIds[next++ & (OPERATIONS - 1)]);
+    }
+
+    @Benchmark
+    public boolean updateAccountsForTransactions() {
+        return accountsRepository.updateAccountsForTransactions(transactions[next++ & (OPERATIONS - 1)]);
+    }
+}
@@ -0,0 +1,95 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.service.TransferService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transfers per second through a journaled repository for every sync policy, from all cores, so concurrent transfers
+ * can share a group commit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(Threads.MAX)
+public class JournalBenchmark {
+
+    private static final int TRANSFERS = 1 << 16;
+
+    @Param({"PER_TRANSFER", "INTERVAL", "OS"})
+    public TransactionJournal.SyncPolicy sync;
+
+    @Param({"10000"})
+    public int accounts;
+
+    private Path directory;
+
+    private JournaledAccountsRepository accountsRepository;
+
+    private TransferService transferService;
+
+    private Transfer[] transfers;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal-benchmark");
+        accountsRepository = new JournaledAccountsRepository(new AccountsRepositoryInMemory(),
+                directory.resolve("accounts.journal"), sync, 10);
+        transferService = new TransferService(accountsRepository, (account, description) -> { });
+        for (int i = 0; i < accounts; i++) {
+            accountsRepository.createAccount(new Account("Id-" + i, new BigDecimal("1000000000000")));
+        }
+        Random random = new Random(42);
+        transfers = new Transfer[TRANSFERS];
+        for (int i = 0; i < TRANSFERS; i++) {
+            int from = random.nextInt(accounts);
+            transfers[i] = new Transfer("Id-" + from, "Id-" + ((from + 1 + random.nextInt(accounts - 1)) % accounts),
+                    new BigDecimal(1 + random.nextInt(1000)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        accountsRepository.close();
+        Files.delete(directory.resolve("accounts.journal"));
+        Files.delete(directory);
+    }
+
+    /**
+     * Cursor of each benchmark thread in the prepared transfers.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next = new Random().nextInt(TRANSFERS);
+    }
+
+    @Benchmark
+    public void transfer(Cursor cursor) {
+        transferService.transfer(transfers[cursor.next++ & (TRANSFERS - 1)]);
+    }
+}
@@ -0,0 +1,58 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The map of mutable accounts updated with computeIfPresent, as {@link AccountsRepositoryInMemory} was before it kept
+ * immutable account states. Kept to compare both in {@link AccountStateBenchmark}.
+ */
+@Slf4j
+public class LegacyAccountsRepositoryInMemory implements AccountsRepository {
+
+    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+
+    @Override
+    public void createAccount(Account account) throws DuplicateAccountIdException {
+        Account previousAccount = accounts.putIfAbsent(account.getAccountId(), account);
+        if (previousAccount != null) {
+            throw new DuplicateAccountIdException(
+                    "Account id " + account.getAccountId() + " already exists!");
+        }
+    }
+
+    @Override
+    public Account getAccount(String accountId) {
+        return accounts.get(accountId);
+    }
+
+    @Override
+    public void clearAccounts() {
+        accounts.clear();
+    }
+
+    @Override
+    public long countAccounts() {
+        return accounts.size();
+    }
+
+    @Override
+    public boolean updateAccountsForTransactions(List<Transaction> transactions) {
+        log.debug("Updating account in repository for account {}", transactions);
+        transactions.stream().forEach(transaction -> {
+            // computeIfPresent method perform the operation atomically.
+            accounts.computeIfPresent(transaction.getAccountId(), (key, account)-> {
+                account.setBalance(account.getBalance().add(transaction.getAmount()));
+                return account;
+            });
+        });
+        return true;
+    }
+
+}
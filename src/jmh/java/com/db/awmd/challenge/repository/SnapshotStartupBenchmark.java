@@ -0,0 +1,85 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup time of a journaled repository with 1M and 10M accounts, recovering either from a snapshot (with an empty
+ * journal tail) or by replaying the whole journal.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class SnapshotStartupBenchmark {
+
+    @Param({"1000000", "10000000"})
+    public int accounts;
+
+    private Path directory;
+
+    private Path journal;
+
+    private Path snapshot;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("snapshot-benchmark");
+        journal = directory.resolve("accounts.journal");
+        snapshot = directory.resolve("accounts.snapshot");
+        try (JournaledAccountsRepository repository = new JournaledAccountsRepository(new AccountsRepositoryInMemory(),
+                journal, TransactionJournal.SyncPolicy.OS, 0, snapshot)) {
+            TransactionJournal writer = repository.getJournal();
+            TransactionJournal.Entry last = null;
+            for (int i = 0; i < accounts; i++) {
+                last = writer.append(JournalCodec.encodeCreate(new Account("Id-" + i, BigDecimal.valueOf(i, 2))));
+            }
+            writer.await(last);
+            repository.snapshot();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(journal);
+        Files.deleteIfExists(snapshot);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public AccountsRepository startFromSnapshot() throws IOException {
+        return start(snapshot);
+    }
+
+    @Benchmark
+    public AccountsRepository startFromJournal() throws IOException {
+        return start(null);
+    }
+
+    private AccountsRepository start(Path snapshotPath) throws IOException {
+        AccountsRepositoryInMemory accountsRepository = new AccountsRepositoryInMemory();
+        new JournaledAccountsRepository(accountsRepository, journal, TransactionJournal.SyncPolicy.OS, 0, snapshotPath)
+                .close();
+        return accountsRepository;
+    }
+}
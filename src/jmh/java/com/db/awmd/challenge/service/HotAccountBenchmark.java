@@ -0,0 +1,80 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.AccountSkew;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures transfers from uniformly picked payers to Zipfian picked payees, so the first few accounts take most of the
+ * credits like settlement and fee accounts do, with those accounts plain (0 stripes) or split into stripes. To see how
+ * it scales with the cores, run it with -t 1,2,4,8 on as many cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+public class HotAccountBenchmark {
+
+    @Param({"0", "8"})
+    public int stripes;
+
+    @Param({"4"})
+    public int hotAccounts;
+
+    @Param({"10000"})
+    public int accounts;
+
+    private TransferService transferService;
+
+    private Transfer[] transfers;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<String> hotAccountIds = new ArrayList<>();
+        for (int i = 0; i < hotAccounts && stripes > 0; i++) {
+            hotAccountIds.add("Id-" + i);
+        }
+        AccountsRepository accountsRepository = new AccountsRepositoryInMemory(hotAccountIds, Math.max(1, stripes));
+        transferService = new TransferService(accountsRepository, (account, description) -> { });
+        for (int i = 0; i < accounts; i++) {
+            accountsRepository.createAccount(new Account("Id-" + i, TransferServiceBenchmark.INITIAL_BALANCE));
+        }
+        Random random = new Random(42);
+        int[] payers = AccountSkew.UNIFORM.sample(accounts, TransferServiceBenchmark.TRANSFERS, random);
+        int[] payees = AccountSkew.ZIPFIAN.sample(accounts, TransferServiceBenchmark.TRANSFERS, random);
+        transfers = new Transfer[TransferServiceBenchmark.TRANSFERS];
+        for (int i = 0; i < transfers.length; i++) {
+            int payee = payees[i] == payers[i] ? (payees[i] + 1) % accounts : payees[i];
+            transfers[i] = new Transfer("Id-" + payers[i], "Id-" + payee, new BigDecimal(1 + random.nextInt(1000)));
+        }
+    }
+
+    @Benchmark
+    public void transfer(TransferServiceBenchmark.Cursor cursor) {
+        transferService.transfer(transfers[cursor.next++ & (TransferServiceBenchmark.TRANSFERS - 1)]);
+    }
+}
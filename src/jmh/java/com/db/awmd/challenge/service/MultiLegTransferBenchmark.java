@@ -0,0 +1,105 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.MultiLegTransfer;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.JournaledAccountsRepository;
+import com.db.awmd.challenge.repository.TransactionJournal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a payroll of one debit fanning out to 500 credits, as one multi-leg transfer and as 500 single transfers,
+ * without journal and with a journal synced per transfer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiLegTransferBenchmark {
+
+    @Param({"500"})
+    public int credits;
+
+    @Param({"false", "true"})
+    public boolean journaled;
+
+    private Path directory;
+
+    private AccountsRepository accountsRepository;
+
+    private TransferService transferService;
+
+    private MultiLegTransfer payroll;
+
+    private Transfer[] transfers;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        accountsRepository = new AccountsRepositoryInMemory();
+        if (journaled) {
+            directory = Files.createTempDirectory("multi-leg-benchmark");
+            accountsRepository = new JournaledAccountsRepository(accountsRepository,
+                    directory.resolve("accounts.journal"), TransactionJournal.SyncPolicy.PER_TRANSFER, 0);
+        }
+        transferService = new TransferService(accountsRepository, (account, description) -> { });
+        accountsRepository.createAccount(new Account("Payer", TransferServiceBenchmark.INITIAL_BALANCE));
+        List<MultiLegTransfer.Leg> legs = new ArrayList<>(credits);
+        transfers = new Transfer[credits];
+        for (int i = 0; i < credits; i++) {
+            accountsRepository.createAccount(new Account("Id-" + i, BigDecimal.ZERO));
+            legs.add(new MultiLegTransfer.Leg("Id-" + i, BigDecimal.ONE));
+            transfers[i] = new Transfer("Payer", "Id-" + i, BigDecimal.ONE);
+        }
+        payroll = new MultiLegTransfer(Collections.singletonList(
+                new MultiLegTransfer.Leg("Payer", new BigDecimal(credits))), legs);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (journaled) {
+            ((JournaledAccountsRepository) accountsRepository).close();
+            Files.delete(directory.resolve("accounts.journal"));
+            Files.delete(directory);
+        }
+    }
+
+    @Benchmark
+    public TransferResult multiLeg() {
+        return transferService.tryTransfer(payroll);
+    }
+
+    @Benchmark
+    public TransferResult singleTransfers() {
+        TransferResult result = null;
+        for (Transfer transfer : transfers) {
+            result = transferService.tryTransfer(transfer);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,76 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.AccountSkew;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the transfer throughput of the locking mode (0 shards) and of the sharded mode with 1 to 8 shards, from 32
+ * calling threads. To see how it scales with the cores, pin the benchmark to as many cores as shards, for example
+ * taskset -c 0-3 with 4 shards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(32)
+public class ShardedTransferBenchmark {
+
+    @Param({"0", "1", "2", "4", "8"})
+    public int shards;
+
+    @Param({"UNIFORM"})
+    public AccountSkew skew;
+
+    @Param({"10000"})
+    public int accounts;
+
+    private TransferService transferService;
+
+    private Transfer[] transfers;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        AccountsRepository accountsRepository = new AccountsRepositoryInMemory();
+        transferService = new TransferService(accountsRepository, (account, description) -> { });
+        if (shards > 0) {
+            transferService.useShards(shards, 4096);
+        }
+        for (int i = 0; i < accounts; i++) {
+            accountsRepository.createAccount(new Account("Id-" + i, TransferServiceBenchmark.INITIAL_BALANCE));
+        }
+        transfers = TransferServiceBenchmark.randomTransfers(skew, accounts, TransferServiceBenchmark.TRANSFERS,
+                new Random(42));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        transferService.shutdown();
+    }
+
+    @Benchmark
+    public void transfer(TransferServiceBenchmark.Cursor cursor) {
+        transferService.transfer(transfers[cursor.next++ & (TransferServiceBenchmark.TRANSFERS - 1)]);
+    }
+}
@@ -0,0 +1,73 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.AccountSkew;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link TransferService#transfer(List)} for several batch sizes. One operation is one whole batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransferBatchBenchmark {
+
+    private static final int BATCHES = 64;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    public AccountSkew skew;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int batchSize;
+
+    @Param({"10000"})
+    public int accounts;
+
+    private TransferService transferService;
+
+    private List<List<Transfer>> batches;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        AccountsRepository accountsRepository = new AccountsRepositoryInMemory();
+        transferService = new TransferService(accountsRepository, (account, description) -> { });
+        for (int i = 0; i < accounts; i++) {
+            accountsRepository.createAccount(new Account("Id-" + i, TransferServiceBenchmark.INITIAL_BALANCE));
+        }
+        Random random = new Random(42);
+        batches = new ArrayList<>(BATCHES);
+        for (int i = 0; i < BATCHES; i++) {
+            batches.add(Arrays.asList(TransferServiceBenchmark.randomTransfers(skew, accounts, batchSize, random)));
+        }
+    }
+
+    @Benchmark
+    public void transferBatch() {
+        transferService.transfer(batches.get(next++ % BATCHES));
+    }
+}
@@ -0,0 +1,88 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.AccountSkew;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link TransferPipeline} from one publishing thread: the throughput when 1024 transfers are published
+ * before waiting for the last one, and the latency of one transfer published and awaited alone. Run with -prof gc to
+ * see the allocation per transfer.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransferPipelineBenchmark {
+
+    private static final int WINDOW = 1024;
+
+    @Param({"65536"})
+    public int size;
+
+    @Param({"10000"})
+    public int accounts;
+
+    private TransferPipeline pipeline;
+
+    private Transfer[] transfers;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        AccountsRepository accountsRepository = new AccountsRepositoryInMemory();
+        TransferService transferService = new TransferService(accountsRepository, (account, description) -> { });
+        pipeline = new TransferPipeline(accountsRepository, transferService::validateTransfer,
+                transferService.getTransactionHistory(), NotificationDispatcher.direct((account, description) -> { }), size);
+        for (int i = 0; i < accounts; i++) {
+            accountsRepository.createAccount(new Account("Id-" + i, TransferServiceBenchmark.INITIAL_BALANCE));
+        }
+        transfers = TransferServiceBenchmark.randomTransfers(AccountSkew.UNIFORM, accounts,
+                TransferServiceBenchmark.TRANSFERS, new Random(42));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        pipeline.shutdown();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OperationsPerInvocation(WINDOW)
+    public TransferResult publishWindow() {
+        CompletableFuture<TransferResult> last = null;
+        for (int i = 0; i < WINDOW; i++) {
+            last = pipeline.publish(transfers[next++ & (TransferServiceBenchmark.TRANSFERS - 1)]);
+        }
+        return last.join();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public TransferResult publishOne() {
+        return pipeline.publish(transfers[next++ & (TransferServiceBenchmark.TRANSFERS - 1)]).join();
+    }
+}
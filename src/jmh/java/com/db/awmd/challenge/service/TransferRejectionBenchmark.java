@@ -0,0 +1,96 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.AccountSkew;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks a workload in which a share of the transfers is rejected, half of them for insufficient money and half
+ * for an unknown account. {@link TransferService#tryTransfer(Transfer)} returns the rejections,
+ * {@link TransferService#transfer(Transfer)} throws them and the benchmark catches them, like a caller of the
+ * exception based API would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransferRejectionBenchmark {
+
+    static final int TRANSFERS = 1 << 16;
+
+    @Param({"50"})
+    public int rejectedPercent;
+
+    @Param({"10000"})
+    public int accounts;
+
+    private TransferService transferService;
+
+    private Transfer[] transfers;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        AccountsRepository accountsRepository = new AccountsRepositoryInMemory();
+        transferService = new TransferService(accountsRepository, (account, description) -> { });
+        for (int i = 0; i < accounts; i++) {
+            accountsRepository.createAccount(new Account("Id-" + i, TransferServiceBenchmark.INITIAL_BALANCE));
+        }
+        Random random = new Random(42);
+        transfers = TransferServiceBenchmark.randomTransfers(AccountSkew.UNIFORM, accounts, TRANSFERS, random);
+        BigDecimal tooMuch = TransferServiceBenchmark.INITIAL_BALANCE.multiply(BigDecimal.TEN);
+        for (int i = 0; i < TRANSFERS; i++) {
+            if (random.nextInt(100) >= rejectedPercent) {
+                continue;
+            }
+            Transfer transfer = transfers[i];
+            transfers[i] = random.nextBoolean()
+                    ? new Transfer(transfer.getAccountFromId(), transfer.getAccountToId(), tooMuch)
+                    : new Transfer(transfer.getAccountFromId(), "Unknown-" + i, transfer.getAmount());
+        }
+    }
+
+    /**
+     * Cursor of each benchmark thread in the prepared transfers.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next = new Random().nextInt(TRANSFERS);
+    }
+
+    @Benchmark
+    public TransferResult tryTransfer(Cursor cursor) {
+        return transferService.tryTransfer(transfers[cursor.next++ & (TRANSFERS - 1)]);
+    }
+
+    @Benchmark
+    public RuntimeException transferCatching(Cursor cursor) {
+        try {
+            transferService.transfer(transfers[cursor.next++ & (TRANSFERS - 1)]);
+            return null;
+        } catch (RuntimeException ex) {
+            return ex;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.AccountSkew;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks a single {@link TransferService#transfer(Transfer)} from one thread and from all cores at once.
+ * Sample time mode reports the latency percentiles, p0.99 included. Use -t or -PjmhThreads for other thread counts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransferServiceBenchmark {
+
+    static final int TRANSFERS = 1 << 16;
+
+    static final BigDecimal INITIAL_BALANCE = new BigDecimal("1000000000000");
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    public AccountSkew skew;
+
+    @Param({"10000"})
+    public int accounts;
+
+    private TransferService transferService;
+
+    private Transfer[] transfers;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        AccountsRepository accountsRepository = new AccountsRepositoryInMemory();
+        transferService = new TransferService(accountsRepository, (account, description) -> { });
+        for (int i = 0; i < accounts; i++) {
+            accountsRepository.createAccount(new Account("Id-" + i, INITIAL_BALANCE));
+        }
+        transfers = randomTransfers(skew, accounts, TRANSFERS, new Random(42));
+    }
+
+    /**
+     * Cursor of each benchmark thread in the prepared transfers.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        int next = new Random().nextInt(TRANSFERS);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void transfer(Cursor cursor) {
+        transferService.transfer(transfers[cursor.next++ & (TRANSFERS - 1)]);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void transferAllCores(Cursor cursor) {
+        transferService.transfer(transfers[cursor.next++ & (TRANSFERS - 1)]);
+    }
+
+    static Transfer[] randomTransfers(AccountSkew skew, int accounts, int count, Random random) {
+        int[] pairs = skew.samplePairs(accounts, count, random);
+        Transfer[] transfers = new Transfer[count];
+        for (int i = 0; i < count; i++) {
+            transfers[i] = new Transfer("Id-" + pairs[2 * i], "Id-" + pairs[2 * i + 1],
+                    new BigDecimal(1 + random.nextInt(1000)));
+        }
+        return transfers;
+    }
+}
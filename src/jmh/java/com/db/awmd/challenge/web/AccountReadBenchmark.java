@@ -0,0 +1,115 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.AccountSkew;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of reading an account as JSON, serialised on every read or through the
+ * {@link AccountJsonCache}, by three readers while one writer keeps changing balances. Reads are Zipfian like the
+ * lookups of a few busy accounts, writes are uniform. Compare the p0.99 of the read with and without the writer
+ * updating balances.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountReadBenchmark {
+
+    private static final int READS = 1 << 16;
+
+    @Param({"false", "true"})
+    public boolean cached;
+
+    @Param({"false", "true"})
+    public boolean writing;
+
+    @Param({"10000"})
+    public int accounts;
+
+    private AccountsRepository accountsRepository;
+
+    private ObjectMapper objectMapper;
+
+    private AccountJsonCache accountJsonCache;
+
+    private String[] reads;
+
+    private List<Transaction>[] writes;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        accountsRepository = new AccountsRepositoryInMemory();
+        objectMapper = new ObjectMapper();
+        accountJsonCache = new AccountJsonCache(objectMapper, accounts);
+        for (int i = 0; i < accounts; i++) {
+            accountsRepository.createAccount(new Account("Id-" + i, new BigDecimal("1000000.00")));
+        }
+        Random random = new Random(42);
+        int[] indexes = AccountSkew.ZIPFIAN.sample(accounts, READS, random);
+        reads = new String[READS];
+        for (int i = 0; i < READS; i++) {
+            reads[i] = "Id-" + indexes[i];
+        }
+        int[] pairs = AccountSkew.UNIFORM.samplePairs(accounts, READS, random);
+        writes = new List[READS];
+        for (int i = 0; i < READS; i++) {
+            writes[i] = Arrays.asList(new Transaction("Id-" + pairs[2 * i], new BigDecimal("-0.01")),
+                    new Transaction("Id-" + pairs[2 * i + 1], new BigDecimal("0.01")));
+        }
+    }
+
+    /**
+     * Cursor of each benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        int next = new Random().nextInt(READS);
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(3)
+    public byte[] read(Cursor cursor) throws JsonProcessingException {
+        Account account = accountsRepository.getAccount(reads[cursor.next++ & (READS - 1)]);
+        return cached ? accountJsonCache.toJson(account) : objectMapper.writeValueAsBytes(account);
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(1)
+    public boolean write(Cursor cursor) {
+        if (!writing) {
+            return false;
+        }
+        return accountsRepository.updateAccountsForTransactions(writes[cursor.next++ & (READS - 1)]);
+    }
+}
@@ -0,0 +1,89 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.AccountSkew;
+import com.db.awmd.challenge.domain.Transfer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.validation.Validation;
+import javax.validation.Validator;
+import javax.validation.ValidatorFactory;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing and validating a transfer request body, with Jackson and bean validation like the controllers did
+ * before or with the {@link JsonPayloadConverter}. The bodies are transfers between accounts drawn uniformly from
+ * the given number of accounts, so with many accounts the string cache of the converter misses as often as it hits.
+ * Run with -prof gc for the bytes allocated per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransferPayloadBenchmark {
+
+    private static final int BODIES = 1 << 12;
+
+    @Param({"100", "100000"})
+    public int accounts;
+
+    private ObjectMapper objectMapper;
+
+    private ValidatorFactory validatorFactory;
+
+    private Validator validator;
+
+    private byte[][] bodies;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        objectMapper = new ObjectMapper();
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        validator = validatorFactory.getValidator();
+        int[] pairs = AccountSkew.UNIFORM.samplePairs(accounts, BODIES, new Random(42));
+        bodies = new byte[BODIES][];
+        for (int i = 0; i < BODIES; i++) {
+            bodies[i] = ("{\"accountFromId\":\"Id-" + pairs[2 * i] + "\",\"accountToId\":\"Id-" + pairs[2 * i + 1]
+                    + "\",\"amount\":" + (1 + i % 500) + ".25}").getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        validatorFactory.close();
+    }
+
+    @Benchmark
+    public Transfer jacksonAndValidator() throws IOException {
+        Transfer transfer = objectMapper.readValue(bodies[next++ & (BODIES - 1)], Transfer.class);
+        if (!validator.validate(transfer).isEmpty()) {
+            throw new IllegalStateException("Invalid transfer " + transfer);
+        }
+        return transfer;
+    }
+
+    @Benchmark
+    public Transfer converter() {
+        byte[] body = bodies[next++ & (BODIES - 1)];
+        return JsonPayloadConverter.readTransfer(body, body.length);
+    }
+}
@@ -0,0 +1,37 @@
+package com.db.awmd.challenge;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This configuration creates the executor of the non blocking /v2 controllers. The request thread only parses the
+ * request and hands it to this executor, so a few request threads serve many open connections. The number of threads
+ * is set with web.async.threads, 0 uses one thread per core. At most web.async.queue-capacity requests wait for a
+ * thread, further requests are rejected and answered with service unavailable by the {@link
+ * com.db.awmd.challenge.web.RejectedRequestHandler}.
+ */
+@Configuration
+public class AsyncConfiguration {
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService requestExecutor(@Value("${web.async.threads:0}") int threads,
+                                           @Value("${web.async.queue-capacity:10000}") int queueCapacity) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "request-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+}
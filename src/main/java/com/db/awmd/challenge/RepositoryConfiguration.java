@@ -0,0 +1,154 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryFixedPoint;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.AccountsRepositoryOffHeap;
+import com.db.awmd.challenge.repository.JournaledAccountsRepository;
+import com.db.awmd.challenge.repository.ReplicatedAccountsRepository;
+import com.db.awmd.challenge.repository.StandbyAccountsRepository;
+import com.db.awmd.challenge.repository.TransactionJournal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This configuration selects the {@link AccountsRepository} implementation with the property accounts.repository.type
+ * - in-memory: map of {@link com.db.awmd.challenge.domain.Account} objects (default)
+ * - fixed-point: balances kept as scaled longs, the scale is set with accounts.repository.scale
+ * - off-heap: scaled longs in slots outside of the heap, in the memory mapped file accounts.repository.path if it is
+ * set, otherwise in direct memory
+ * The in-memory repository splits the comma separated accounts.repository.hot-accounts into
+ * accounts.repository.hot-stripes sub-balances each, one per core by default. Every repository is sized ahead for
+ * accounts.repository.initial-capacity accounts.
+ * With accounts.journal.enabled the repository is wrapped in a {@link JournaledAccountsRepository} writing to
+ * accounts.journal.path, synced by the accounts.journal.sync policy. Setting accounts.snapshot.path additionally takes
+ * a snapshot every accounts.snapshot.interval-ms, from which the accounts are recovered on startup. The journal can not
+ * be enabled for an off-heap repository in a file, which recovers its accounts by itself.
+ * accounts.replication.role replicates the repository between instances:
+ * - none: no replication (default)
+ * - primary: a {@link ReplicatedAccountsRepository} streams the changes to the comma separated host:port list
+ * accounts.replication.standbys and acknowledges them by accounts.replication.ack, ASYNC or ONE
+ * - standby: a read only {@link StandbyAccountsRepository} applies the changes of the primary connecting to
+ * accounts.replication.port
+ */
+@Configuration
+@Slf4j
+public class RepositoryConfiguration {
+
+    @Bean
+    public AccountsRepository accountsRepository(
+            @Value("${accounts.repository.type:in-memory}") String type,
+            @Value("${accounts.repository.scale:2}") int scale,
+            @Value("${accounts.repository.path:}") String path,
+            @Value("${accounts.repository.hot-accounts:}") String hotAccounts,
+            @Value("${accounts.repository.hot-stripes:0}") int hotStripes,
+            @Value("${accounts.repository.initial-capacity:16}") int initialCapacity,
+            @Value("${accounts.journal.enabled:false}") boolean journalEnabled,
+            @Value("${accounts.journal.path:java-dev-challenge.journal}") String journalPath,
+            @Value("${accounts.journal.sync:PER_TRANSFER}") TransactionJournal.SyncPolicy journalSync,
+            @Value("${accounts.journal.sync-interval-ms:10}") long journalSyncIntervalMillis,
+            @Value("${accounts.snapshot.path:}") String snapshotPath,
+            @Value("${accounts.snapshot.interval-ms:60000}") long snapshotIntervalMillis,
+            @Value("${accounts.replication.role:none}") String replicationRole,
+            @Value("${accounts.replication.standbys:}") String replicationStandbys,
+            @Value("${accounts.replication.ack:ONE}") ReplicatedAccountsRepository.AckLevel replicationAck,
+            @Value("${accounts.replication.port:7070}") int replicationPort) {
+        List<String> hotAccountIds = hotAccounts.trim().isEmpty()
+                ? Collections.emptyList() : Arrays.asList(hotAccounts.trim().split("\\s*,\\s*"));
+        if (journalEnabled && "off-heap".equals(type) && !path.isEmpty()) {
+            // replaying the journal would create the accounts already in the file again
+            throw new IllegalArgumentException("accounts.journal.enabled can not be set for an off-heap repository in "
+                    + "the file accounts.repository.path");
+        }
+        AccountsRepository accountsRepository;
+        if ("in-memory".equals(type)) {
+            accountsRepository = new AccountsRepositoryInMemory(hotAccountIds,
+                    hotStripes > 0 ? hotStripes : Runtime.getRuntime().availableProcessors(), initialCapacity);
+        } else {
+            if (!hotAccountIds.isEmpty()) {
+                log.warn("Hot accounts are only split by the in-memory repository, not by {}", type);
+            }
+            accountsRepository = createAccountsRepository(type, scale, path.isEmpty() ? null : Paths.get(path));
+            accountsRepository.ensureCapacity(initialCapacity);
+        }
+        if (journalEnabled) {
+            JournaledAccountsRepository journaledAccountsRepository = new JournaledAccountsRepository(
+                    accountsRepository, Paths.get(journalPath), journalSync, journalSyncIntervalMillis,
+                    snapshotPath.isEmpty() ? null : Paths.get(snapshotPath));
+            journaledAccountsRepository.scheduleSnapshots(snapshotIntervalMillis);
+            accountsRepository = journaledAccountsRepository;
+        }
+        switch (replicationRole) {
+            case "none":
+                return accountsRepository;
+            case "primary":
+                return new ReplicatedAccountsRepository(accountsRepository, parseAddresses(replicationStandbys),
+                        replicationAck);
+            case "standby":
+                try {
+                    return new StandbyAccountsRepository(accountsRepository, replicationPort);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException("Can not listen for the primary on port " + replicationPort, ex);
+                }
+            default:
+                throw new IllegalArgumentException("Unknown replication role " + replicationRole);
+        }
+    }
+
+    private static List<InetSocketAddress> parseAddresses(String addresses) {
+        List<InetSocketAddress> parsed = new ArrayList<>();
+        for (String address : addresses.trim().split("\\s*,\\s*")) {
+            int colon = address.lastIndexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("Standby address " + address + " is not host:port");
+            }
+            parsed.add(new InetSocketAddress(address.substring(0, colon),
+                    Integer.parseInt(address.substring(colon + 1))));
+        }
+        return parsed;
+    }
+
+    /**
+     * Creates the repository of the type, without journal.
+     *
+     * @param type
+     * @param scale
+     * @return AccountsRepository
+     */
+    public static AccountsRepository createAccountsRepository(String type, int scale) {
+        return createAccountsRepository(type, scale, null);
+    }
+
+    /**
+     * Creates the repository of the type, without journal.
+     *
+     * @param type
+     * @param scale
+     * @param path file of an off-heap repository, null to keep it in direct memory
+     * @return AccountsRepository
+     */
+    public static AccountsRepository createAccountsRepository(String type, int scale, Path path) {
+        switch (type) {
+            case "in-memory":
+                return new AccountsRepositoryInMemory();
+            case "fixed-point":
+                return new AccountsRepositoryFixedPoint(scale);
+            case "off-heap":
+                return path == null ? new AccountsRepositoryOffHeap(scale) : new AccountsRepositoryOffHeap(scale, path);
+            default:
+                throw new IllegalArgumentException("Unknown accounts repository type " + type);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.web.JsonPayloadConverter;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+import java.util.List;
+
+/**
+ * This configuration puts the {@link JsonPayloadConverter} ahead of the converters of Spring Boot, so the transfer and
+ * account request bodies are parsed and validated by it while every other body still goes through Jackson.
+ */
+@Configuration
+public class WebConfiguration extends WebMvcConfigurerAdapter {
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(0, new JsonPayloadConverter());
+    }
+}
@@ -0,0 +1,56 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * This class represents the outcome of a bulk import of accounts: the counts and the first rejected records.
+ */
+@Data
+public class ImportSummary {
+
+    /**
+     * Number of records read
+     */
+    private final long read;
+
+    /**
+     * Number of accounts created
+     */
+    private final long created;
+
+    /**
+     * Number of records rejected, including those not listed in rejects
+     */
+    private final long rejected;
+
+    /**
+     * The first rejected records, in no particular order
+     */
+    private final List<Reject> rejects;
+
+    /**
+     * Why the input could not be read to its end, null if it was
+     */
+    private final String error;
+
+    /**
+     * A record which is not imported.
+     */
+    @Data
+    public static class Reject {
+
+        /**
+         * Line of the record in the input, starting at 1
+         */
+        private final long line;
+
+        /**
+         * Account id of the record, null if it has none
+         */
+        private final String accountId;
+
+        private final String reason;
+    }
+}
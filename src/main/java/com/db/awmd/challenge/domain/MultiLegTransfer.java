@@ -0,0 +1,67 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * This class represents a transfer from one or more accounts to one or more accounts, applied all or nothing.
+ * The debits and the credits must add up to the same amount.
+ */
+@Data
+public class MultiLegTransfer {
+
+    /**
+     * Amounts taken from accounts, an account may appear more than once
+     */
+    @NotNull
+    @NotEmpty
+    @Valid
+    private final List<Leg> debits;
+
+    /**
+     * Amounts given to accounts, an account may appear more than once
+     */
+    @NotNull
+    @NotEmpty
+    @Valid
+    private final List<Leg> credits;
+
+    /**
+     * Optional key chosen by the client, as for {@link Transfer#getIdempotencyKey()}.
+     */
+    private String idempotencyKey;
+
+    @JsonCreator
+    public MultiLegTransfer(@JsonProperty("debits") List<Leg> debits,
+                            @JsonProperty("credits") List<Leg> credits) {
+        this.debits = debits;
+        this.credits = credits;
+    }
+
+    /**
+     * The amount taken from or given to one account. Should be positive value.
+     */
+    @Data
+    public static class Leg {
+
+        @NotNull
+        @NotEmpty
+        private final String accountId;
+
+        @NotNull
+        private final BigDecimal amount;
+
+        @JsonCreator
+        public Leg(@JsonProperty("accountId") String accountId, @JsonProperty("amount") BigDecimal amount) {
+            this.accountId = accountId;
+            this.amount = amount;
+        }
+    }
+}
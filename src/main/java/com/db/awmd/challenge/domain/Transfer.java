@@ -38,6 +38,12 @@ public class Transfer {
     @Min(value = 1, message = "Transfer amount must be positive.")
     private BigDecimal amount;
 
+    /**
+     * Optional key chosen by the client. A transfer submitted again with the same key is not applied twice,
+     * the result of the first submission is returned instead.
+     */
+    private String idempotencyKey;
+
     @JsonCreator
     public Transfer(@JsonProperty("accountFromId") String accountFromId,
                     @JsonProperty("accountToId") String accountToId,
@@ -0,0 +1,61 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Getter;
+
+/**
+ * This enum represents the reason a transfer is rejected and the {@link TransferStatus} it is reported with.
+ */
+public enum TransferRejection {
+
+    /**
+     * One of the accounts do not exists
+     */
+    NO_ACCOUNT(TransferStatus.NOT_FOUND),
+
+    /**
+     * The from account do not have enough money
+     */
+    INSUFFICIENT_MONEY(TransferStatus.INSUFFICIENT),
+
+    /**
+     * Both account ids are the same
+     */
+    SAME_ACCOUNT(TransferStatus.BAD_REQUEST),
+
+    /**
+     * The amount is zero or negative
+     */
+    NOT_POSITIVE_AMOUNT(TransferStatus.BAD_REQUEST),
+
+    /**
+     * The amount or a resulting balance can not be stored by the repository
+     */
+    AMOUNT_OUT_OF_RANGE(TransferStatus.BAD_REQUEST),
+
+    /**
+     * The transfer misses an account id or the amount
+     */
+    INVALID(TransferStatus.BAD_REQUEST),
+
+    /**
+     * A node holding one of the accounts can not be reached
+     */
+    UNAVAILABLE(TransferStatus.UNAVAILABLE),
+
+    /**
+     * The idempotency key was used before for a different transfer
+     */
+    IDEMPOTENCY_KEY_REUSED(TransferStatus.UNPROCESSABLE),
+
+    /**
+     * Applying the transfer failed with an unexpected error
+     */
+    FAILED(TransferStatus.FAILED);
+
+    @Getter
+    private final TransferStatus status;
+
+    TransferRejection(TransferStatus status) {
+        this.status = status;
+    }
+}
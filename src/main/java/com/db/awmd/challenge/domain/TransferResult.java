@@ -0,0 +1,41 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+/**
+ * This class represents the result of a transfer, the status and the reason when it is rejected.
+ */
+@Data
+public class TransferResult {
+
+    public static final TransferResult OK = new TransferResult(TransferStatus.OK, null, null);
+
+    /**
+     * Outcome of the transfer
+     */
+    private final TransferStatus status;
+
+    /**
+     * Reason of the rejection, null when the transfer succeeded
+     */
+    private final TransferRejection rejection;
+
+    /**
+     * Description of the rejection, null when the transfer succeeded
+     */
+    private final String message;
+
+    private TransferResult(TransferStatus status, TransferRejection rejection, String message) {
+        this.status = status;
+        this.rejection = rejection;
+        this.message = message;
+    }
+
+    public static TransferResult rejected(TransferRejection rejection, String message) {
+        return new TransferResult(rejection.getStatus(), rejection, message);
+    }
+
+    public boolean isOk() {
+        return status == TransferStatus.OK;
+    }
+}
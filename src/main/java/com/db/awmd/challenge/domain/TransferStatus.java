@@ -0,0 +1,42 @@
+package com.db.awmd.challenge.domain;
+
+/**
+ * This enum represents the outcome of a single transfer.
+ */
+public enum TransferStatus {
+
+    /**
+     * The amount is transferred
+     */
+    OK,
+
+    /**
+     * One of the accounts do not exists
+     */
+    NOT_FOUND,
+
+    /**
+     * The from account do not have enough money
+     */
+    INSUFFICIENT,
+
+    /**
+     * The transfer itself is invalid, e.g. same account or not a positive amount
+     */
+    BAD_REQUEST,
+
+    /**
+     * A node holding one of the accounts can not be reached, the transfer is not applied
+     */
+    UNAVAILABLE,
+
+    /**
+     * The idempotency key was used for a different transfer, the transfer is not applied
+     */
+    UNPROCESSABLE,
+
+    /**
+     * The transfer failed with an unexpected error, e.g. the journal can not be written
+     */
+    FAILED
+}
@@ -0,0 +1,12 @@
+package com.db.awmd.challenge.exception;
+
+/**
+ * This exception represents an amount which can not be stored exactly, either because it has more decimal places than
+ * the configured scale or because the resulting balance does not fit
+ */
+public class AmountOutOfRangeException extends RuntimeException {
+
+    public AmountOutOfRangeException(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,21 @@
+package com.db.awmd.challenge.exception;
+
+import lombok.Getter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+/**
+ * This exception represents a request body which is no valid JSON or breaks a constraint of the object it is read as
+ */
+public class InvalidPayloadException extends HttpMessageNotReadableException {
+
+    /**
+     * Field whose value is invalid, null if the body itself is
+     */
+    @Getter
+    private final String field;
+
+    public InvalidPayloadException(String field, String message) {
+        super(message);
+        this.field = field;
+    }
+}
@@ -6,6 +6,6 @@ package com.db.awmd.challenge.exception;
 public class NoAccountExistsException extends RuntimeException {
 
     public NoAccountExistsException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
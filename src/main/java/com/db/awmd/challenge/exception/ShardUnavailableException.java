@@ -0,0 +1,11 @@
+package com.db.awmd.challenge.exception;
+
+/**
+ * This exception represents a shard node which can not be reached
+ */
+public class ShardUnavailableException extends RuntimeException {
+
+    public ShardUnavailableException(String message) {
+        super(message, null, false, false);
+    }
+}
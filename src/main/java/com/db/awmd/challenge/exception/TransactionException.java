@@ -5,5 +5,8 @@ package com.db.awmd.challenge.exception;
  */
 public class TransactionException extends RuntimeException {
 
-    public TransactionException(String message) { super(message); }
+    public TransactionException(String message) {
+        // rejections are expected outcomes, the stack trace is not needed
+        super(message, null, false, false);
+    }
 }
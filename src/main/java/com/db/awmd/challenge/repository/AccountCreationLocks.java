@@ -0,0 +1,49 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+
+import java.util.function.Function;
+
+/**
+ * This class orders the creation of an account with its record in a journal or a replication stream. The record is
+ * appended before the account becomes visible in the delegate, so a transfer into the new account can only be
+ * recorded after the creation. Creations of the same id are serialised, and an existing id or an account the delegate
+ * can not store is refused before anything is appended. A record whose creation still fails in the delegate is skipped
+ * when it is replayed.
+ */
+final class AccountCreationLocks {
+
+    private static final int STRIPES = 256;
+
+    private final Object[] locks = new Object[STRIPES];
+
+    AccountCreationLocks() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Appends the record of the account and then creates it in the delegate.
+     *
+     * @param delegate
+     * @param account
+     * @param append appends the encoded record and returns the ticket to wait on
+     * @return ticket of the record
+     * @throws DuplicateAccountIdException if the account exists already, nothing is appended then
+     */
+    <T> T create(AccountsRepository delegate, Account account, Function<byte[], T> append) {
+        delegate.checkAccount(account);
+        String accountId = account.getAccountId();
+        int h = accountId.hashCode();
+        synchronized (locks[(h ^ (h >>> 16)) & (STRIPES - 1)]) {
+            if (delegate.getAccount(accountId) != null) {
+                throw new DuplicateAccountIdException("Account id " + accountId + " already exists!");
+            }
+            T ticket = append.apply(JournalCodec.encodeCreate(account));
+            delegate.createAccount(account);
+            return ticket;
+        }
+    }
+}
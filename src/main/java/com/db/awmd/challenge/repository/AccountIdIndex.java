@@ -0,0 +1,268 @@
+package com.db.awmd.challenge.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntConsumer;
+
+/**
+ * This class maps account ids to dense slots 0, 1, 2, ... in the order they are added, without an object per id.
+ * - ids are kept as a short length and their UTF-8 bytes in an arena of large byte pages
+ * - the arena offset of every slot is kept in pages of longs
+ * - an open addressing table of longs holds the 32 bit hash and the slot + 1 of every id, 0 marks a free entry
+ * Lookups never lock. Ids are added under a lock; the table entry is written last with a release store, so a reader
+ * which sees it also sees the id bytes. A resize fills a new table and publishes it through a volatile field, readers
+ * still probing the old table find every id it had.
+ */
+public class AccountIdIndex {
+
+    /**
+     * Longest id in UTF-8 bytes.
+     */
+    public static final int MAX_ID_LENGTH = 0xFFFF;
+
+    private static final int ARENA_SHIFT = 20;
+
+    private static final int ARENA_PAGE_SIZE = 1 << ARENA_SHIFT;
+
+    private static final int OFFSET_SHIFT = 16;
+
+    private static final int OFFSET_PAGE_SIZE = 1 << OFFSET_SHIFT;
+
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    /**
+     * Largest table, at most three quarters of it are filled.
+     */
+    private final int maxCapacity;
+
+    private volatile AtomicLongArray table;
+
+    private volatile byte[][] arena = new byte[0][];
+
+    private volatile long[][] offsets = new long[0][];
+
+    private volatile int size;
+
+    private int threshold;
+
+    private int arenaPage = -1;
+
+    private int arenaPosition = ARENA_PAGE_SIZE;
+
+    public AccountIdIndex() {
+        this(1024);
+    }
+
+    /**
+     * @param expectedSize number of ids which fit without resizing the table
+     */
+    public AccountIdIndex(int expectedSize) {
+        this(expectedSize, MAX_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize
+     * @param maxCapacity largest table, a power of two
+     */
+    AccountIdIndex(int expectedSize, int maxCapacity) {
+        this.maxCapacity = maxCapacity;
+        int capacity = Integer.highestOneBit(Math.max(16, (int) Math.min(maxCapacity, expectedSize * 4L / 3)));
+        if (capacity * 3L / 4 < expectedSize && capacity < maxCapacity) {
+            capacity <<= 1;
+        }
+        this.table = new AtomicLongArray(capacity);
+        this.threshold = (int) (capacity * 3L / 4);
+    }
+
+    /**
+     * @param accountId
+     * @return slot of the id, -1 if it was not added
+     */
+    public int slotOf(String accountId) {
+        int hash = hash(accountId);
+        AtomicLongArray current = table;
+        int mask = current.length() - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            long entry = current.get(i);
+            if (entry == 0) {
+                return -1;
+            }
+            if ((int) (entry >>> 32) == hash) {
+                int slot = (int) entry - 1;
+                if (matches(slot, accountId)) {
+                    return slot;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the id with the next slot. The initializer runs before the id can be found, so whatever it stores for the
+     * slot is visible to every reader finding the id.
+     *
+     * @param accountId
+     * @param initializer receives the new slot
+     * @return the new slot, -1 if the id was already added
+     * @throws IllegalArgumentException if the id is longer than {@link #MAX_ID_LENGTH} bytes
+     * @throws IllegalStateException if the index holds three quarters of its largest table already
+     */
+    public synchronized int add(String accountId, IntConsumer initializer) {
+        if (slotOf(accountId) >= 0) {
+            return -1;
+        }
+        byte[] bytes = accountId.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_ID_LENGTH) {
+            throw new IllegalArgumentException("Account id is longer than " + MAX_ID_LENGTH + " bytes");
+        }
+        int slot = size;
+        // checked before anything is changed, a full table would make every probe for a missing id endless
+        if (slot >= maxCapacity / 4 * 3) {
+            throw new IllegalStateException("Account id index is full with " + slot + " ids");
+        }
+        setOffset(slot, append(bytes));
+        initializer.accept(slot);
+        if (slot >= threshold) {
+            resize(table.length() * 2);
+        }
+        AtomicLongArray current = table;
+        int index = freeIndex(current, hash(accountId));
+        current.lazySet(index, entry(hash(accountId), slot));
+        size = slot + 1;
+        return slot;
+    }
+
+    /**
+     * @param slot
+     * @return id of the slot
+     */
+    public String idOf(int slot) {
+        if (slot < 0 || slot >= size) {
+            throw new IndexOutOfBoundsException("No account id in slot " + slot);
+        }
+        long offset = offsets[slot >>> OFFSET_SHIFT][slot & (OFFSET_PAGE_SIZE - 1)];
+        byte[] page = arena[(int) (offset >>> ARENA_SHIFT)];
+        int position = (int) offset & (ARENA_PAGE_SIZE - 1);
+        int length = ((page[position] & 0xFF) << 8) | (page[position + 1] & 0xFF);
+        return new String(page, position + 2, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Grows the table at once to hold the expected number of ids without further resizing.
+     *
+     * @param expectedSize
+     */
+    public synchronized void ensureCapacity(int expectedSize) {
+        if (expectedSize <= threshold) {
+            return;
+        }
+        int capacity = table.length();
+        while (capacity * 3L / 4 < expectedSize && capacity < maxCapacity) {
+            capacity <<= 1;
+        }
+        if (capacity > table.length()) {
+            resize(capacity);
+        }
+    }
+
+    /**
+     * @return number of ids added
+     */
+    public int size() {
+        return size;
+    }
+
+    private boolean matches(int slot, String accountId) {
+        long offset = offsets[slot >>> OFFSET_SHIFT][slot & (OFFSET_PAGE_SIZE - 1)];
+        byte[] page = arena[(int) (offset >>> ARENA_SHIFT)];
+        int position = (int) offset & (ARENA_PAGE_SIZE - 1);
+        int length = ((page[position] & 0xFF) << 8) | (page[position + 1] & 0xFF);
+        position += 2;
+        int chars = accountId.length();
+        if (chars > length) {
+            return false;
+        }
+        for (int i = 0; i < chars; i++) {
+            char c = accountId.charAt(i);
+            if (c >= 0x80) {
+                return matchesUtf8(page, position, length, accountId);
+            }
+            if (page[position + i] != c) {
+                return false;
+            }
+        }
+        return chars == length;
+    }
+
+    private static boolean matchesUtf8(byte[] page, int position, int length, String accountId) {
+        byte[] bytes = accountId.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (page[position + i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long append(byte[] bytes) {
+        if (arenaPosition + 2 + bytes.length > ARENA_PAGE_SIZE) {
+            arenaPage++;
+            arenaPosition = 0;
+            byte[][] grown = new byte[arenaPage + 1][];
+            System.arraycopy(arena, 0, grown, 0, arena.length);
+            grown[arenaPage] = new byte[ARENA_PAGE_SIZE];
+            arena = grown;
+        }
+        byte[] page = arena[arenaPage];
+        page[arenaPosition] = (byte) (bytes.length >>> 8);
+        page[arenaPosition + 1] = (byte) bytes.length;
+        System.arraycopy(bytes, 0, page, arenaPosition + 2, bytes.length);
+        long offset = ((long) arenaPage << ARENA_SHIFT) | arenaPosition;
+        arenaPosition += 2 + bytes.length;
+        return offset;
+    }
+
+    private void setOffset(int slot, long offset) {
+        int page = slot >>> OFFSET_SHIFT;
+        if (page == offsets.length) {
+            long[][] grown = new long[page + 1][];
+            System.arraycopy(offsets, 0, grown, 0, offsets.length);
+            grown[page] = new long[OFFSET_PAGE_SIZE];
+            offsets = grown;
+        }
+        offsets[page][slot & (OFFSET_PAGE_SIZE - 1)] = offset;
+    }
+
+    private void resize(int capacity) {
+        AtomicLongArray current = table;
+        AtomicLongArray grown = new AtomicLongArray(capacity);
+        for (int i = 0; i < current.length(); i++) {
+            long entry = current.get(i);
+            if (entry != 0) {
+                grown.set(freeIndex(grown, (int) (entry >>> 32)), entry);
+            }
+        }
+        threshold = (int) (grown.length() * 3L / 4);
+        table = grown;
+    }
+
+    private static int freeIndex(AtomicLongArray table, int hash) {
+        int mask = table.length() - 1;
+        int i = hash & mask;
+        while (table.get(i) != 0) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private static long entry(int hash, int slot) {
+        return ((long) hash << 32) | (slot + 1L);
+    }
+
+    private static int hash(String accountId) {
+        int h = accountId.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
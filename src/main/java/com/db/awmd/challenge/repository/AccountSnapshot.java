@@ -0,0 +1,130 @@
+package com.db.awmd.challenge.repository;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * This class reads and writes the binary snapshot of all accounts. The snapshot is columnar:
+ * - header: magic, version, journal position the snapshot is consistent with, number of accounts and the offset of
+ *   the balance column
+ * - id column: short length and UTF-8 bytes of every account id
+ * - balance column: scale and unscaled bytes of every balance, in the same order
+ * Snapshots are written to a temporary file and moved in place, so a crash never leaves a partial snapshot.
+ */
+public final class AccountSnapshot {
+
+    private static final int MAGIC = 0x41435348;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 8;
+
+    private AccountSnapshot() {
+    }
+
+    /**
+     * Writes the snapshot of the accounts.
+     *
+     * @param path
+     * @param journalPosition position of the journal after the last record included in the snapshot
+     * @param balances balance of every account id
+     * @throws IOException
+     * @throws IllegalArgumentException if an account id or balance is too long for the snapshot
+     */
+    public static void write(Path path, long journalPosition, Map<String, BigDecimal> balances) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (OutputStream file = Files.newOutputStream(temporary);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            long idsSize = 0;
+            for (String accountId : balances.keySet()) {
+                idsSize += 2 + accountId.getBytes(StandardCharsets.UTF_8).length;
+            }
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(journalPosition);
+            out.writeInt(balances.size());
+            out.writeLong(HEADER_SIZE + idsSize);
+            for (String accountId : balances.keySet()) {
+                byte[] id = accountId.getBytes(StandardCharsets.UTF_8);
+                if (id.length > JournalCodec.MAX_STRING_LENGTH) {
+                    throw new IllegalArgumentException("Account id of " + id.length + " bytes is too long");
+                }
+                out.writeShort(id.length);
+                out.write(id);
+            }
+            for (BigDecimal balance : balances.values()) {
+                byte[] unscaled = balance.unscaledValue().toByteArray();
+                if (unscaled.length > JournalCodec.MAX_UNSCALED_LENGTH) {
+                    throw new IllegalArgumentException("Balance of " + unscaled.length + " bytes is too long");
+                }
+                out.writeInt(balance.scale());
+                out.writeByte(unscaled.length);
+                out.write(unscaled);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the snapshot through a memory mapped buffer and passes every account to the consumer.
+     *
+     * @param path
+     * @param consumer receives the id and balance of every account
+     * @return journal position the snapshot is consistent with, 0 if there is no snapshot
+     * @throws IOException if the snapshot can not be read or is not a snapshot
+     */
+    public static long read(Path path, BiConsumer<String, BigDecimal> consumer) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // read the whole header
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException(path + " is not an account snapshot");
+            }
+            long journalPosition = header.getLong();
+            int count = header.getInt();
+            long balancesOffset = header.getLong();
+            // the columns are mapped separately, so each of them can be up to 2 GB
+            MappedByteBuffer ids = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE,
+                    balancesOffset - HEADER_SIZE);
+            MappedByteBuffer balances = channel.map(FileChannel.MapMode.READ_ONLY, balancesOffset,
+                    channel.size() - balancesOffset);
+            byte[] id = new byte[256];
+            for (int i = 0; i < count; i++) {
+                int length = ids.getShort() & 0xFFFF;
+                if (id.length < length) {
+                    id = new byte[length];
+                }
+                ids.get(id, 0, length);
+                int scale = balances.getInt();
+                byte[] unscaled = new byte[balances.get() & 0xFF];
+                balances.get(unscaled);
+                consumer.accept(new String(id, 0, length, StandardCharsets.UTF_8),
+                        new BigDecimal(new BigInteger(unscaled), scale));
+            }
+            return journalPosition;
+        }
+    }
+}
@@ -2,9 +2,12 @@ package com.db.awmd.challenge.repository;
 
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.domain.Transfer;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.function.BiConsumer;
 
 public interface AccountsRepository {
 
@@ -15,6 +18,43 @@ public interface AccountsRepository {
    */
   void createAccount(Account account) throws DuplicateAccountIdException;
 
+  /**
+   * This method creates the accounts of a bulk load. An account which can not be created, e.g. because its id exists
+   * already, is handed to the rejected consumer and the others are still created.
+   *
+   * @param accounts
+   * @param rejected receives every account not created and the reason
+   */
+  default void createAccounts(List<Account> accounts, BiConsumer<Account, RuntimeException> rejected) {
+    for (Account account : accounts) {
+      try {
+        createAccount(account);
+      } catch (RuntimeException ex) {
+        rejected.accept(account, ex);
+      }
+    }
+  }
+
+  /**
+   * This method checks that the repository can store the account, without creating it, so a journal can refuse an
+   * account before recording it. Whether the id exists already is not checked.
+   *
+   * @param account
+   * @throws com.db.awmd.challenge.exception.AmountOutOfRangeException if the balance can not be stored
+   * @throws IllegalArgumentException if the id can not be stored
+   */
+  default void checkAccount(Account account) {
+  }
+
+  /**
+   * This method prepares the repository to hold the expected number of accounts in total, so a bulk load does not
+   * grow its structures step by step. Repositories which can not be sized ahead ignore it.
+   *
+   * @param expectedAccounts
+   */
+  default void ensureCapacity(long expectedAccounts) {
+  }
+
   /**
    * This method returns the account details for the perticular account id
    * @param accountId
@@ -27,6 +67,12 @@ public interface AccountsRepository {
    */
   void clearAccounts();
 
+  /**
+   * This method returns the number of accounts in the database
+   * @return number of accounts
+   */
+  long countAccounts();
+
   /**
    * This method updates the accounts with given amount.
    *
@@ -34,4 +80,58 @@ public interface AccountsRepository {
    * @return boolean, returns true if amount updating is successful
    */
   boolean updateAccountsForTransactions(List<Transaction> transactions);
+
+  /**
+   * This method debits the payer of a transfer whose payee is credited later by
+   * {@link #commitReservation(long, Transfer)}, or whose payer is refunded by {@link #releaseReservation(long, Transfer)}.
+   * A durable repository records the reservation, so it can refund a reservation neither committed nor released
+   * when it recovers.
+   *
+   * @param reservationId unique among the reservations not committed or released
+   * @param transfer {@link com.db.awmd.challenge.domain.Transfer}
+   */
+  default void reserve(long reservationId, Transfer transfer) {
+    updateAccountsForTransactions(Collections.singletonList(
+        new Transaction(transfer.getAccountFromId(), transfer.getAmount().negate())));
+  }
+
+  /**
+   * This method credits the payee of a reserved transfer.
+   *
+   * @param reservationId
+   * @param transfer
+   */
+  default void commitReservation(long reservationId, Transfer transfer) {
+    updateAccountsForTransactions(Collections.singletonList(
+        new Transaction(transfer.getAccountToId(), transfer.getAmount())));
+  }
+
+  /**
+   * This method refunds the payer of a reserved transfer.
+   *
+   * @param reservationId
+   * @param transfer
+   */
+  default void releaseReservation(long reservationId, Transfer transfer) {
+    updateAccountsForTransactions(Collections.singletonList(
+        new Transaction(transfer.getAccountFromId(), transfer.getAmount())));
+  }
+
+  /**
+   * This method tells whether the account is split into sub-balances, whose credits need no lock as they commute with
+   * every other credit and debit of the account.
+   *
+   * @param accountId
+   * @return true for a hot account
+   */
+  default boolean isHotAccount(String accountId) {
+    return false;
+  }
+
+  /**
+   * This method waits until the updates made by the calling thread are durable. Updates may be made durable
+   * asynchronously, so a caller can release its locks before waiting. Repositories without durability return at once.
+   */
+  default void awaitDurable() {
+  }
 }
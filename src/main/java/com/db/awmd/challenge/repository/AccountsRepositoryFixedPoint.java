@@ -0,0 +1,167 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.exception.AmountOutOfRangeException;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This repository keeps balances as scaled longs of minor units in primitive pages, indexed by the slot the
+ * {@link AccountIdIndex} assigns to every account id on creation. No {@link Account}, {@link String} or
+ * {@link java.math.BigDecimal} is kept per account, they are only created when an account is read.
+ */
+@Slf4j
+public class AccountsRepositoryFixedPoint implements AccountsRepository {
+
+    private static final int PAGE_SHIFT = 14;
+
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private final int scale;
+
+    private volatile AccountIdIndex slots = new AccountIdIndex();
+
+    private volatile AtomicLongArray[] pages = new AtomicLongArray[0];
+
+    public AccountsRepositoryFixedPoint() {
+        this(MinorUnits.DEFAULT_SCALE);
+    }
+
+    /**
+     * @param scale number of decimal places kept for every balance
+     */
+    public AccountsRepositoryFixedPoint(int scale) {
+        this.scale = scale;
+    }
+
+    @Override
+    public void createAccount(Account account) throws DuplicateAccountIdException {
+        long units = MinorUnits.toMinorUnits(account.getBalance(), scale);
+        int slot = slots.add(account.getAccountId(), created -> pageOf(created).set(created & PAGE_MASK, units));
+        if (slot < 0) {
+            throw new DuplicateAccountIdException(
+                    "Account id " + account.getAccountId() + " already exists!");
+        }
+    }
+
+    @Override
+    public void checkAccount(Account account) {
+        MinorUnits.toMinorUnits(account.getBalance(), scale);
+        if (account.getAccountId().getBytes(StandardCharsets.UTF_8).length > AccountIdIndex.MAX_ID_LENGTH) {
+            throw new IllegalArgumentException("Account id is longer than " + AccountIdIndex.MAX_ID_LENGTH + " bytes");
+        }
+    }
+
+    @Override
+    public Account getAccount(String accountId) {
+        int slot = slots.slotOf(accountId);
+        if (slot < 0) {
+            return null;
+        }
+        return new Account(accountId, MinorUnits.toBigDecimal(pageOf(slot).get(slot & PAGE_MASK), scale));
+    }
+
+    @Override
+    public synchronized void clearAccounts() {
+        slots = new AccountIdIndex();
+        pages = new AtomicLongArray[0];
+    }
+
+    @Override
+    public long countAccounts() {
+        return slots.size();
+    }
+
+    /**
+     * Sizes the id index and allocates the balance pages for the expected number of accounts.
+     *
+     * @param expectedAccounts
+     */
+    @Override
+    public void ensureCapacity(long expectedAccounts) {
+        int expected = (int) Math.min(Integer.MAX_VALUE - 1, expectedAccounts);
+        if (expected < 1) {
+            return;
+        }
+        slots.ensureCapacity(expected);
+        growPages((expected - 1) >>> PAGE_SHIFT);
+    }
+
+    /**
+     * Applies all transactions or none of them. Amounts are converted before any balance is touched and a balance
+     * overflow rolls back the transactions already applied.
+     *
+     * @param transactions {@link com.db.awmd.challenge.domain.Transaction}
+     * @return boolean, returns true if amount updating is successful
+     * @throws AmountOutOfRangeException if an amount does not fit the scale or a balance would overflow
+     */
+    @Override
+    public boolean updateAccountsForTransactions(List<Transaction> transactions) {
+        log.debug("Updating account in repository for account {}", transactions);
+        int size = transactions.size();
+        int[] targets = new int[size];
+        long[] units = new long[size];
+        for (int i = 0; i < size; i++) {
+            Transaction transaction = transactions.get(i);
+            // same as computeIfPresent, transactions on unknown accounts are skipped
+            targets[i] = slots.slotOf(transaction.getAccountId());
+            units[i] = MinorUnits.toMinorUnits(transaction.getAmount(), scale);
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (targets[i] < 0) {
+                continue;
+            }
+            try {
+                addUnits(targets[i], units[i]);
+            } catch (AmountOutOfRangeException ex) {
+                for (int j = 0; j < i; j++) {
+                    if (targets[j] >= 0) {
+                        addUnits(targets[j], -units[j]);
+                    }
+                }
+                throw ex;
+            }
+        }
+        return true;
+    }
+
+    private void addUnits(int slot, long units) {
+        AtomicLongArray page = pageOf(slot);
+        int index = slot & PAGE_MASK;
+        long current;
+        do {
+            current = page.get(index);
+        } while (!page.compareAndSet(index, current, MinorUnits.add(current, units)));
+    }
+
+    private AtomicLongArray pageOf(int slot) {
+        int pageIndex = slot >>> PAGE_SHIFT;
+        AtomicLongArray[] current = pages;
+        if (pageIndex < current.length) {
+            return current[pageIndex];
+        }
+        return growPages(pageIndex);
+    }
+
+    private synchronized AtomicLongArray growPages(int pageIndex) {
+        AtomicLongArray[] current = pages;
+        if (pageIndex < current.length) {
+            return current[pageIndex];
+        }
+        AtomicLongArray[] grown = new AtomicLongArray[Math.max(pageIndex + 1, current.length * 2)];
+        System.arraycopy(current, 0, grown, 0, current.length);
+        for (int i = current.length; i < grown.length; i++) {
+            grown[i] = new AtomicLongArray(PAGE_SIZE);
+        }
+        pages = grown;
+        return grown[pageIndex];
+    }
+}
@@ -4,30 +4,90 @@ import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.domain.Transaction;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
-@Repository
+/**
+ * This repository keeps the balance of every account as an immutable {@link BigDecimal}. An update replaces it by
+ * compare and swap, so reads and updates never block and readers never see an account half updated. The accounts of
+ * an update of several accounts are changed one after the other: a reader may see some of them changed and others
+ * not, and two such updates may interleave. Transfers are atomic across their accounts because the
+ * {@link com.db.awmd.challenge.service.TransferService} holds the
+ * {@link com.db.awmd.challenge.service.StripedAccountLocks} of all of them while validating and updating.
+ * Hot accounts, such as settlement and fee accounts taking part in most transfers, may be split into stripes of
+ * sub-balances in the manner of a {@link java.util.concurrent.atomic.LongAdder}. A credit goes to the stripe of the
+ * crediting thread and takes no monitor. A debit takes the monitor of the account, debits its own stripe and borrows
+ * from the other stripes only when that one is short.
+ */
 @Slf4j
 public class AccountsRepositoryInMemory implements AccountsRepository {
 
-    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+    private final Map<String, Cell> accounts;
+
+    private final Set<String> hotAccountIds;
+
+    private final int stripes;
+
+    public AccountsRepositoryInMemory() {
+        this(Collections.emptySet(), 1);
+    }
+
+    /**
+     * @param hotAccountIds accounts split into stripes
+     * @param stripes number of stripes of a hot account, rounded up to the next power of two
+     */
+    public AccountsRepositoryInMemory(Collection<String> hotAccountIds, int stripes) {
+        this(hotAccountIds, stripes, 16);
+    }
+
+    /**
+     * @param hotAccountIds accounts split into stripes
+     * @param stripes number of stripes of a hot account, rounded up to the next power of two
+     * @param initialCapacity number of accounts held without resizing the map
+     */
+    public AccountsRepositoryInMemory(Collection<String> hotAccountIds, int stripes, int initialCapacity) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Number of stripes must be positive");
+        }
+        this.accounts = new ConcurrentHashMap<>(initialCapacity);
+        this.hotAccountIds = new HashSet<>(hotAccountIds);
+        this.stripes = Integer.highestOneBit(stripes) < stripes ? Integer.highestOneBit(stripes) << 1 : stripes;
+    }
 
     @Override
     public void createAccount(Account account) throws DuplicateAccountIdException {
-        Account previousAccount = accounts.putIfAbsent(account.getAccountId(), account);
+        String accountId = account.getAccountId();
+        Cell cell = hotAccountIds.contains(accountId)
+                ? new StripedCell(accountId, account.getBalance(), stripes)
+                : new StateCell(accountId, account.getBalance());
+        Cell previousAccount = accounts.putIfAbsent(accountId, cell);
         if (previousAccount != null) {
             throw new DuplicateAccountIdException(
                     "Account id " + account.getAccountId() + " already exists!");
         }
     }
 
+    /**
+     * @param accountId
+     * @return a copy of the account, changing it does not change the repository
+     */
     @Override
     public Account getAccount(String accountId) {
-        return accounts.get(accountId);
+        Cell cell = accounts.get(accountId);
+        return cell == null ? null : new Account(accountId, cell.balance());
+    }
+
+    @Override
+    public boolean isHotAccount(String accountId) {
+        return hotAccountIds.contains(accountId);
     }
 
     @Override
@@ -35,17 +95,186 @@ public class AccountsRepositoryInMemory implements AccountsRepository {
         accounts.clear();
     }
 
+    @Override
+    public long countAccounts() {
+        return accounts.size();
+    }
+
     @Override
     public boolean updateAccountsForTransactions(List<Transaction> transactions) {
         log.debug("Updating account in repository for account {}", transactions);
-        transactions.stream().forEach(transaction -> {
-            // computeIfPresent method perform the operation atomically.
-            accounts.computeIfPresent(transaction.getAccountId(), (key, account)-> {
-                account.setBalance(account.getBalance().add(transaction.getAmount()));
-                return account;
-            });
-        });
+        for (Transaction transaction : transactions) {
+            // same as computeIfPresent, transactions on unknown accounts are skipped
+            Cell cell = accounts.get(transaction.getAccountId());
+            if (cell != null) {
+                cell.add(transaction.getAmount());
+            }
+        }
         return true;
     }
 
+    /**
+     * An account in the repository.
+     */
+    private abstract static class Cell {
+
+        final String accountId;
+
+        private Cell(String accountId) {
+            this.accountId = accountId;
+        }
+
+        abstract BigDecimal balance();
+
+        abstract void add(BigDecimal amount);
+    }
+
+    /**
+     * Current balance of an account.
+     */
+    private static final class StateCell extends Cell {
+
+        private static final AtomicReferenceFieldUpdater<StateCell, BigDecimal> BALANCE =
+                AtomicReferenceFieldUpdater.newUpdater(StateCell.class, BigDecimal.class, "balance");
+
+        private volatile BigDecimal balance;
+
+        private StateCell(String accountId, BigDecimal balance) {
+            super(accountId);
+            this.balance = balance;
+        }
+
+        @Override
+        BigDecimal balance() {
+            return balance;
+        }
+
+        @Override
+        void add(BigDecimal amount) {
+            BigDecimal current;
+            do {
+                current = balance;
+            } while (!BALANCE.compareAndSet(this, current, current.add(amount)));
+        }
+    }
+
+    /**
+     * Sub-balance of a hot account, padded so two stripes do not share a cache line.
+     */
+    @SuppressWarnings("unused")
+    private static final class Stripe {
+
+        private static final AtomicReferenceFieldUpdater<Stripe, BigDecimal> BALANCE =
+                AtomicReferenceFieldUpdater.newUpdater(Stripe.class, BigDecimal.class, "balance");
+
+        private long p1, p2, p3, p4, p5, p6, p7;
+
+        private volatile BigDecimal balance;
+
+        private long q1, q2, q3, q4, q5, q6, q7;
+
+        private Stripe(BigDecimal balance) {
+            this.balance = balance;
+        }
+
+        private boolean compareAndSet(BigDecimal expected, BigDecimal updated) {
+            return BALANCE.compareAndSet(this, expected, updated);
+        }
+    }
+
+    /**
+     * A hot account split into stripes. The debit counter is odd while a debit is moving money out of several
+     * stripes, so the total read around it is retried instead of missing a part of the debit.
+     */
+    private static final class StripedCell extends Cell {
+
+        private final Stripe[] stripes;
+
+        private final int mask;
+
+        private volatile long debits;
+
+        private StripedCell(String accountId, BigDecimal balance, int stripes) {
+            super(accountId);
+            this.stripes = new Stripe[stripes];
+            this.mask = stripes - 1;
+            for (int i = 0; i < stripes; i++) {
+                this.stripes[i] = new Stripe(i == 0 ? balance : BigDecimal.ZERO);
+            }
+        }
+
+        @Override
+        BigDecimal balance() {
+            while (true) {
+                long before = debits;
+                if ((before & 1) == 0) {
+                    BigDecimal total = BigDecimal.ZERO;
+                    for (Stripe stripe : stripes) {
+                        total = total.add(stripe.balance);
+                    }
+                    if (debits == before) {
+                        return total;
+                    }
+                }
+                Thread.yield();
+            }
+        }
+
+        @Override
+        void add(BigDecimal amount) {
+            if (amount.signum() >= 0) {
+                credit(amount);
+            } else {
+                debit(amount.negate());
+            }
+        }
+
+        private int home() {
+            long id = Thread.currentThread().getId();
+            return (((int) (id ^ (id >>> 16)) * 0x9E3779B9) >>> 16) & mask;
+        }
+
+        private void credit(BigDecimal amount) {
+            // moves on to the next stripe when another thread credits the same one, like LongAdder rehashing
+            for (int i = home(); ; i = (i + 1) & mask) {
+                Stripe stripe = stripes[i];
+                BigDecimal current = stripe.balance;
+                if (stripe.compareAndSet(current, current.add(amount))) {
+                    return;
+                }
+            }
+        }
+
+        private synchronized void debit(BigDecimal amount) {
+            debits++;
+            try {
+                int home = home();
+                BigDecimal remaining = amount;
+                for (int i = 0; i <= mask && remaining.signum() > 0; i++) {
+                    Stripe stripe = stripes[(home + i) & mask];
+                    while (true) {
+                        BigDecimal current = stripe.balance;
+                        if (current.signum() <= 0) {
+                            break;
+                        }
+                        BigDecimal taken = current.min(remaining);
+                        if (stripe.compareAndSet(current, current.subtract(taken))) {
+                            remaining = remaining.subtract(taken);
+                            break;
+                        }
+                    }
+                }
+                if (remaining.signum() > 0) {
+                    // the total is short, the home stripe goes negative as a plain account would
+                    Stripe stripe = stripes[home];
+                    BigDecimal current;
+                    do {
+                        current = stripe.balance;
+                    } while (!stripe.compareAndSet(current, current.subtract(remaining)));
+                }
+            } finally {
+                debits++;
+            }
+        }
+    }
 }
@@ -0,0 +1,301 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.exception.AmountOutOfRangeException;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import lombok.extern.slf4j.Slf4j;
+import sun.misc.Unsafe;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This repository keeps the accounts outside of the heap, in fixed size slots of 64 bytes:
+ * - balance: long of minor units, updated with compare and swap
+ * - id: short length and up to {@link #MAX_ID_LENGTH} UTF-8 bytes
+ * The slots live either in direct memory or in a memory mapped file, which starts with a header holding a magic
+ * number, the scale and the number of accounts. A mapped file is reopened from the page cache after a restart, only
+ * the {@link AccountIdIndex} of the ids is rebuilt on the heap. The file is not a journal: changes reach the disk when
+ * the operating system writes the pages back, or on {@link #close()}.
+ */
+@Slf4j
+public class AccountsRepositoryOffHeap implements AccountsRepository, Closeable {
+
+    public static final int MAX_ID_LENGTH = 54;
+
+    private static final int MAGIC = 0x4F464850;
+
+    private static final int SLOT_SHIFT = 6;
+
+    private static final int SEGMENT_SHIFT = 16;
+
+    private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+
+    private static final long SEGMENT_BYTES = 1L << (SEGMENT_SHIFT + SLOT_SHIFT);
+
+    private static final int HEADER_SIZE = 64;
+
+    private static final int ID_OFFSET = 8;
+
+    private static final Unsafe UNSAFE;
+
+    private static final long BUFFER_ADDRESS;
+
+    static {
+        try {
+            Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            UNSAFE = (Unsafe) field.get(null);
+            BUFFER_ADDRESS = UNSAFE.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private final int scale;
+
+    private final FileChannel channel;
+
+    private final long headerAddress;
+
+    private final List<ByteBuffer> buffers = new ArrayList<>();
+
+    private volatile long[] segments = new long[0];
+
+    private volatile AccountIdIndex slots = new AccountIdIndex();
+
+    /**
+     * Creates the repository in direct memory.
+     *
+     * @param scale number of decimal places kept for every balance
+     */
+    public AccountsRepositoryOffHeap(int scale) {
+        this.scale = scale;
+        this.channel = null;
+        ByteBuffer header = ByteBuffer.allocateDirect(HEADER_SIZE);
+        buffers.add(header);
+        this.headerAddress = addressOf(header);
+    }
+
+    /**
+     * Opens the repository in the memory mapped file, recovering the accounts it holds.
+     *
+     * @param scale number of decimal places kept for every balance, must match the scale of an existing file
+     * @param path file of the accounts, created if missing
+     * @throws UncheckedIOException if the file can not be mapped
+     * @throws IllegalStateException if the file is not an accounts file of the same scale
+     */
+    public AccountsRepositoryOffHeap(int scale, Path path) {
+        this.scale = scale;
+        try {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            boolean existing = channel.size() >= HEADER_SIZE;
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            buffers.add(header);
+            this.headerAddress = addressOf(header);
+            if (!existing) {
+                UNSAFE.putInt(headerAddress, MAGIC);
+                UNSAFE.putInt(headerAddress + 4, scale);
+                UNSAFE.putIntVolatile(null, headerAddress + 8, 0);
+            } else if (UNSAFE.getInt(headerAddress) != MAGIC || UNSAFE.getInt(headerAddress + 4) != scale) {
+                throw new IllegalStateException(path + " is not an accounts file of scale " + scale);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Can not open accounts file " + path, ex);
+        }
+        recover();
+        log.info("Opened {} with {} accounts", path, slots.size());
+    }
+
+    @Override
+    public void createAccount(Account account) throws DuplicateAccountIdException {
+        long units = MinorUnits.toMinorUnits(account.getBalance(), scale);
+        byte[] id = account.getAccountId().getBytes(StandardCharsets.UTF_8);
+        if (id.length > MAX_ID_LENGTH) {
+            throw new IllegalArgumentException("Account id is longer than " + MAX_ID_LENGTH + " bytes");
+        }
+        int slot = slots.add(account.getAccountId(), created -> {
+            long address = addressOf(created);
+            UNSAFE.putShort(address + ID_OFFSET, (short) id.length);
+            for (int i = 0; i < id.length; i++) {
+                UNSAFE.putByte(address + ID_OFFSET + 2 + i, id[i]);
+            }
+            UNSAFE.putLongVolatile(null, address, units);
+            UNSAFE.putIntVolatile(null, headerAddress + 8, created + 1);
+        });
+        if (slot < 0) {
+            throw new DuplicateAccountIdException(
+                    "Account id " + account.getAccountId() + " already exists!");
+        }
+    }
+
+    @Override
+    public void checkAccount(Account account) {
+        MinorUnits.toMinorUnits(account.getBalance(), scale);
+        if (account.getAccountId().getBytes(StandardCharsets.UTF_8).length > MAX_ID_LENGTH) {
+            throw new IllegalArgumentException("Account id is longer than " + MAX_ID_LENGTH + " bytes");
+        }
+    }
+
+    @Override
+    public Account getAccount(String accountId) {
+        int slot = slots.slotOf(accountId);
+        if (slot < 0) {
+            return null;
+        }
+        return new Account(accountId, MinorUnits.toBigDecimal(UNSAFE.getLongVolatile(null, addressOf(slot)), scale));
+    }
+
+    /**
+     * Forgets all accounts, the slots are reused by the next accounts.
+     */
+    @Override
+    public synchronized void clearAccounts() {
+        slots = new AccountIdIndex();
+        UNSAFE.putIntVolatile(null, headerAddress + 8, 0);
+    }
+
+    @Override
+    public long countAccounts() {
+        return slots.size();
+    }
+
+    /**
+     * Sizes the id index and allocates the segments of slots for the expected number of accounts.
+     *
+     * @param expectedAccounts
+     */
+    @Override
+    public void ensureCapacity(long expectedAccounts) {
+        int expected = (int) Math.min(Integer.MAX_VALUE - 1, expectedAccounts);
+        if (expected < 1) {
+            return;
+        }
+        slots.ensureCapacity(expected);
+        growSegments((expected - 1) >>> SEGMENT_SHIFT);
+    }
+
+    /**
+     * Applies all transactions or none of them, like {@link AccountsRepositoryFixedPoint}.
+     *
+     * @param transactions {@link com.db.awmd.challenge.domain.Transaction}
+     * @return boolean, returns true if amount updating is successful
+     * @throws AmountOutOfRangeException if an amount does not fit the scale or a balance would overflow
+     */
+    @Override
+    public boolean updateAccountsForTransactions(List<Transaction> transactions) {
+        log.debug("Updating account in repository for account {}", transactions);
+        int size = transactions.size();
+        long[] addresses = new long[size];
+        long[] units = new long[size];
+        for (int i = 0; i < size; i++) {
+            Transaction transaction = transactions.get(i);
+            int slot = slots.slotOf(transaction.getAccountId());
+            // same as computeIfPresent, transactions on unknown accounts are skipped
+            addresses[i] = slot < 0 ? 0 : addressOf(slot);
+            units[i] = MinorUnits.toMinorUnits(transaction.getAmount(), scale);
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (addresses[i] == 0) {
+                continue;
+            }
+            try {
+                addUnits(addresses[i], units[i]);
+            } catch (AmountOutOfRangeException ex) {
+                for (int j = 0; j < i; j++) {
+                    if (addresses[j] != 0) {
+                        addUnits(addresses[j], -units[j]);
+                    }
+                }
+                throw ex;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the mapped pages back to the file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        for (ByteBuffer buffer : buffers) {
+            ((MappedByteBuffer) buffer).force();
+        }
+        channel.close();
+    }
+
+    private void recover() {
+        int count = UNSAFE.getIntVolatile(null, headerAddress + 8);
+        AccountIdIndex recovered = new AccountIdIndex(count);
+        for (int slot = 0; slot < count; slot++) {
+            long address = addressOf(slot);
+            byte[] id = new byte[UNSAFE.getShort(address + ID_OFFSET)];
+            for (int i = 0; i < id.length; i++) {
+                id[i] = UNSAFE.getByte(address + ID_OFFSET + 2 + i);
+            }
+            recovered.add(new String(id, StandardCharsets.UTF_8), created -> { });
+        }
+        slots = recovered;
+    }
+
+    private static void addUnits(long address, long units) {
+        long current;
+        do {
+            current = UNSAFE.getLongVolatile(null, address);
+        } while (!UNSAFE.compareAndSwapLong(null, address, current, MinorUnits.add(current, units)));
+    }
+
+    private long addressOf(int slot) {
+        int segment = slot >>> SEGMENT_SHIFT;
+        long[] current = segments;
+        long base = segment < current.length ? current[segment] : growSegments(segment);
+        return base + ((long) (slot & SEGMENT_MASK) << SLOT_SHIFT);
+    }
+
+    private synchronized long growSegments(int segment) {
+        long[] current = segments;
+        if (segment < current.length) {
+            return current[segment];
+        }
+        long[] grown = new long[segment + 1];
+        System.arraycopy(current, 0, grown, 0, current.length);
+        for (int i = current.length; i < grown.length; i++) {
+            ByteBuffer buffer;
+            if (channel == null) {
+                buffer = ByteBuffer.allocateDirect((int) SEGMENT_BYTES);
+            } else {
+                try {
+                    buffer = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + i * SEGMENT_BYTES,
+                            SEGMENT_BYTES);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException("Can not map accounts file", ex);
+                }
+            }
+            buffers.add(buffer);
+            grown[i] = addressOf(buffer);
+        }
+        segments = grown;
+        return grown[segment];
+    }
+
+    private static long addressOf(ByteBuffer buffer) {
+        return UNSAFE.getLong(buffer, BUFFER_ADDRESS);
+    }
+}
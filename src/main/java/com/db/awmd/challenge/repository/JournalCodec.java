@@ -0,0 +1,208 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.AmountOutOfRangeException;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class encodes the changes of the accounts into the binary records of the journal.
+ * A record payload starts with its type:
+ * - CREATE: account id, balance
+ * - TRANSACTIONS: number of transactions, then account id and amount of each
+ * - CLEAR: nothing
+ * - RESERVE, COMMIT, RELEASE: reservation id, payer id, payee id, amount of a transfer between two shards
+ * Strings are written as a short length and UTF-8 bytes, amounts as the scale, a byte length and the bytes of the
+ * unscaled value. Longer ids are refused with an {@link IllegalArgumentException} and longer amounts with an
+ * {@link AmountOutOfRangeException} before a record is built, so the caller can refuse the change before making it.
+ */
+public final class JournalCodec {
+
+    public static final byte CREATE = 1;
+
+    public static final byte TRANSACTIONS = 2;
+
+    public static final byte CLEAR = 3;
+
+    public static final byte RESERVE = 4;
+
+    public static final byte COMMIT = 5;
+
+    public static final byte RELEASE = 6;
+
+    public static final int MAX_STRING_LENGTH = 0xFFFF;
+
+    public static final int MAX_UNSCALED_LENGTH = 0xFF;
+
+    /**
+     * Receives the decoded records.
+     */
+    public interface Handler {
+
+        void onCreate(Account account);
+
+        void onTransactions(List<Transaction> transactions);
+
+        void onClear();
+
+        /**
+         * The payer of the transfer is debited.
+         */
+        void onReserve(long reservationId, Transfer transfer);
+
+        /**
+         * The payee of the transfer is credited.
+         */
+        void onCommit(long reservationId, Transfer transfer);
+
+        /**
+         * The payer of the transfer is refunded.
+         */
+        void onRelease(long reservationId, Transfer transfer);
+    }
+
+    private JournalCodec() {
+    }
+
+    public static byte[] encodeCreate(Account account) {
+        byte[] id = account.getAccountId().getBytes(StandardCharsets.UTF_8);
+        byte[] unscaled = account.getBalance().unscaledValue().toByteArray();
+        ByteBuffer buffer = ByteBuffer.allocate(1 + stringSize(id) + amountSize(unscaled));
+        buffer.put(CREATE);
+        putString(buffer, id);
+        putAmount(buffer, account.getBalance().scale(), unscaled);
+        return buffer.array();
+    }
+
+    public static byte[] encodeTransactions(List<Transaction> transactions) {
+        int size = transactions.size();
+        byte[][] ids = new byte[size][];
+        byte[][] amounts = new byte[size][];
+        int length = 1 + 4;
+        for (int i = 0; i < size; i++) {
+            ids[i] = transactions.get(i).getAccountId().getBytes(StandardCharsets.UTF_8);
+            amounts[i] = transactions.get(i).getAmount().unscaledValue().toByteArray();
+            length += stringSize(ids[i]) + amountSize(amounts[i]);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.put(TRANSACTIONS);
+        buffer.putInt(size);
+        for (int i = 0; i < size; i++) {
+            putString(buffer, ids[i]);
+            putAmount(buffer, transactions.get(i).getAmount().scale(), amounts[i]);
+        }
+        return buffer.array();
+    }
+
+    public static byte[] encodeClear() {
+        return new byte[]{CLEAR};
+    }
+
+    /**
+     * @param type {@link #RESERVE}, {@link #COMMIT} or {@link #RELEASE}
+     * @param reservationId
+     * @param transfer
+     * @return the record
+     */
+    public static byte[] encodeReservation(byte type, long reservationId, Transfer transfer) {
+        byte[] fromId = transfer.getAccountFromId().getBytes(StandardCharsets.UTF_8);
+        byte[] toId = transfer.getAccountToId().getBytes(StandardCharsets.UTF_8);
+        byte[] unscaled = transfer.getAmount().unscaledValue().toByteArray();
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 8 + stringSize(fromId) + stringSize(toId) + amountSize(unscaled));
+        buffer.put(type);
+        buffer.putLong(reservationId);
+        putString(buffer, fromId);
+        putString(buffer, toId);
+        putAmount(buffer, transfer.getAmount().scale(), unscaled);
+        return buffer.array();
+    }
+
+    /**
+     * Decodes one record payload and passes it to the handler.
+     *
+     * @param payload positioned at the start of the record payload
+     * @param handler
+     * @throws IllegalArgumentException if the record type is unknown
+     */
+    public static void decode(ByteBuffer payload, Handler handler) {
+        byte type = payload.get();
+        switch (type) {
+            case CREATE:
+                handler.onCreate(new Account(getString(payload), getAmount(payload)));
+                break;
+            case TRANSACTIONS:
+                int size = payload.getInt();
+                List<Transaction> transactions = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    transactions.add(new Transaction(getString(payload), getAmount(payload)));
+                }
+                handler.onTransactions(transactions);
+                break;
+            case CLEAR:
+                handler.onClear();
+                break;
+            case RESERVE:
+            case COMMIT:
+            case RELEASE:
+                long reservationId = payload.getLong();
+                Transfer transfer = new Transfer(getString(payload), getString(payload), getAmount(payload));
+                if (type == RESERVE) {
+                    handler.onReserve(reservationId, transfer);
+                } else if (type == COMMIT) {
+                    handler.onCommit(reservationId, transfer);
+                } else {
+                    handler.onRelease(reservationId, transfer);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown journal record type " + type);
+        }
+    }
+
+    private static int stringSize(byte[] value) {
+        if (value.length > MAX_STRING_LENGTH) {
+            throw new IllegalArgumentException("Account id of " + value.length + " bytes is longer than "
+                    + MAX_STRING_LENGTH + " bytes");
+        }
+        return 2 + value.length;
+    }
+
+    private static int amountSize(byte[] unscaled) {
+        if (unscaled.length > MAX_UNSCALED_LENGTH) {
+            throw new AmountOutOfRangeException("Amount of " + unscaled.length + " bytes is longer than "
+                    + MAX_UNSCALED_LENGTH + " bytes");
+        }
+        return 4 + 1 + unscaled.length;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        buffer.putShort((short) value.length);
+        buffer.put(value);
+    }
+
+    private static void putAmount(ByteBuffer buffer, int scale, byte[] unscaled) {
+        buffer.putInt(scale);
+        buffer.put((byte) unscaled.length);
+        buffer.put(unscaled);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] value = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static BigDecimal getAmount(ByteBuffer buffer) {
+        int scale = buffer.getInt();
+        byte[] unscaled = new byte[buffer.get() & 0xFF];
+        buffer.get(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+}
@@ -0,0 +1,429 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.AmountOutOfRangeException;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * This repository records every change of the accounts in a {@link TransactionJournal} and recovers the accounts by
+ * replaying the journal when it is created. Updates are applied to the delegate repository first and then journaled,
+ * in the same order as they were applied. An account is journaled before it is created, so no update of it can be
+ * journaled ahead of its creation.
+ * A transfer between two shards is journaled as the records of its reservation, commit or release. A reservation
+ * neither committed nor released when the journal ends was interrupted by a crash, its payer is refunded and the
+ * release journaled on recovery. A snapshot refunds the reservations open when it is taken, the commit of such a
+ * reservation after the snapshot applies the debit as well.
+ * Account creation and clearing wait for the journal, updates only queue their record and the caller waits with
+ * {@link #awaitDurable()}, so concurrent transfers share one disk sync.
+ * With a snapshot path, snapshots of all accounts are taken from the journal and startup replays only the journal
+ * records written after the latest snapshot.
+ */
+@Slf4j
+public class JournaledAccountsRepository implements AccountsRepository, Closeable {
+
+    @Getter
+    private final AccountsRepository delegate;
+
+    @Getter
+    private final TransactionJournal journal;
+
+    private final ThreadLocal<TransactionJournal.Entry> lastEntry = new ThreadLocal<>();
+
+    private final AccountCreationLocks creationLocks = new AccountCreationLocks();
+
+    @Getter
+    private final Path snapshotPath;
+
+    private ScheduledExecutorService snapshotScheduler;
+
+    public JournaledAccountsRepository(AccountsRepository delegate, Path path, TransactionJournal.SyncPolicy syncPolicy,
+                                       long syncIntervalMillis) {
+        this(delegate, path, syncPolicy, syncIntervalMillis, null);
+    }
+
+    /**
+     * Recovers the accounts from the latest snapshot and the journal records written after it.
+     *
+     * @param delegate repository holding the accounts
+     * @param path file of the journal
+     * @param syncPolicy
+     * @param syncIntervalMillis
+     * @param snapshotPath file of the snapshot, null to always replay the whole journal
+     * @throws UncheckedIOException if the snapshot or the journal can not be read
+     */
+    public JournaledAccountsRepository(AccountsRepository delegate, Path path, TransactionJournal.SyncPolicy syncPolicy,
+                                       long syncIntervalMillis, Path snapshotPath) {
+        this.delegate = delegate;
+        this.snapshotPath = snapshotPath;
+        long start = System.nanoTime();
+        long position = 0;
+        ReplayHandler handler = new ReplayHandler(delegate);
+        if (snapshotPath != null) {
+            try {
+                position = AccountSnapshot.read(snapshotPath,
+                        (accountId, balance) -> handler.onCreate(new Account(accountId, balance)));
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Can not read snapshot " + snapshotPath, ex);
+            }
+        }
+        this.journal = new TransactionJournal(path, syncPolicy, syncIntervalMillis, position,
+                payload -> JournalCodec.decode(payload, handler));
+        releaseReservations(handler.getReservations());
+        log.info("Recovered accounts from snapshot {} and journal {} in {} ms", snapshotPath, path,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Takes a snapshot every interval in a background thread.
+     *
+     * @param intervalMillis
+     */
+    public synchronized void scheduleSnapshots(long intervalMillis) {
+        if (snapshotPath == null || snapshotScheduler != null) {
+            return;
+        }
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "account-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot();
+            } catch (IOException | RuntimeException ex) {
+                log.error("Error in taking snapshot {}", snapshotPath, ex);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes a new snapshot by applying the journal records written since the previous snapshot to a copy of it.
+     * The live accounts are never read, so transfers continue while the snapshot is taken, and the snapshot is
+     * consistent with the journal position it records. Only records forced to disk are applied, so the snapshot is
+     * never ahead of the journal after a power loss. The previous snapshot is loaded in full on every call, which
+     * is the memory the snapshot needs anyway to write the new one.
+     *
+     * @return journal position of the snapshot
+     * @throws IOException
+     */
+    public synchronized long snapshot() throws IOException {
+        Map<String, BigDecimal> balances = new HashMap<>();
+        long from = AccountSnapshot.read(snapshotPath, balances::put);
+        // the size is read before the sync, so every record up to it is on disk once the sync returns; records
+        // written after the size was read may not be, and are left to the next snapshot
+        long durable = journal.size();
+        journal.sync();
+        long end;
+        try (FileChannel channel = FileChannel.open(journal.getPath(), StandardOpenOption.READ)) {
+            SnapshotHandler handler = new SnapshotHandler(balances, delegate);
+            end = TransactionJournal.replay(channel, from, durable, payload -> JournalCodec.decode(payload, handler));
+            handler.releaseReservations();
+        }
+        if (end > from) {
+            long start = System.nanoTime();
+            AccountSnapshot.write(snapshotPath, end, balances);
+            log.info("Snapshot of {} accounts at journal position {} written in {} ms", balances.size(), end,
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+        return end;
+    }
+
+    @Override
+    public void createAccount(Account account) throws DuplicateAccountIdException {
+        journal.await(creationLocks.create(delegate, account, journal::append));
+    }
+
+    /**
+     * Journals the accounts created and waits once for the last of them.
+     */
+    @Override
+    public void createAccounts(List<Account> accounts, BiConsumer<Account, RuntimeException> rejected) {
+        TransactionJournal.Entry last = null;
+        for (Account account : accounts) {
+            try {
+                last = creationLocks.create(delegate, account, journal::append);
+            } catch (RuntimeException ex) {
+                rejected.accept(account, ex);
+            }
+        }
+        if (last != null) {
+            journal.await(last);
+        }
+    }
+
+    @Override
+    public void ensureCapacity(long expectedAccounts) {
+        delegate.ensureCapacity(expectedAccounts);
+    }
+
+    @Override
+    public Account getAccount(String accountId) {
+        return delegate.getAccount(accountId);
+    }
+
+    @Override
+    public void checkAccount(Account account) {
+        delegate.checkAccount(account);
+    }
+
+    @Override
+    public boolean isHotAccount(String accountId) {
+        return delegate.isHotAccount(accountId);
+    }
+
+    @Override
+    public long countAccounts() {
+        return delegate.countAccounts();
+    }
+
+    @Override
+    public void clearAccounts() {
+        delegate.clearAccounts();
+        journal.await(journal.append(JournalCodec.encodeClear()));
+    }
+
+    @Override
+    public boolean updateAccountsForTransactions(List<Transaction> transactions) {
+        byte[] record = JournalCodec.encodeTransactions(transactions);
+        boolean updated = delegate.updateAccountsForTransactions(transactions);
+        lastEntry.set(journal.append(record));
+        return updated;
+    }
+
+    @Override
+    public void reserve(long reservationId, Transfer transfer) {
+        byte[] record = JournalCodec.encodeReservation(JournalCodec.RESERVE, reservationId, transfer);
+        delegate.reserve(reservationId, transfer);
+        lastEntry.set(journal.append(record));
+    }
+
+    @Override
+    public void commitReservation(long reservationId, Transfer transfer) {
+        byte[] record = JournalCodec.encodeReservation(JournalCodec.COMMIT, reservationId, transfer);
+        delegate.commitReservation(reservationId, transfer);
+        lastEntry.set(journal.append(record));
+    }
+
+    @Override
+    public void releaseReservation(long reservationId, Transfer transfer) {
+        byte[] record = JournalCodec.encodeReservation(JournalCodec.RELEASE, reservationId, transfer);
+        delegate.releaseReservation(reservationId, transfer);
+        lastEntry.set(journal.append(record));
+    }
+
+    @Override
+    public void awaitDurable() {
+        TransactionJournal.Entry entry = lastEntry.get();
+        if (entry != null) {
+            lastEntry.remove();
+            journal.await(entry);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (snapshotScheduler != null) {
+                snapshotScheduler.shutdownNow();
+            }
+        }
+        journal.close();
+    }
+
+    /**
+     * Refunds the payers of the reservations left open by the journal and journals the releases.
+     *
+     * @param reservations open reservations by id
+     */
+    private void releaseReservations(Map<Long, Transfer> reservations) {
+        if (reservations.isEmpty()) {
+            return;
+        }
+        TransactionJournal.Entry last = null;
+        for (Map.Entry<Long, Transfer> reservation : reservations.entrySet()) {
+            delegate.releaseReservation(reservation.getKey(), reservation.getValue());
+            last = journal.append(JournalCodec.encodeReservation(JournalCodec.RELEASE, reservation.getKey(),
+                    reservation.getValue()));
+        }
+        journal.await(last);
+        log.warn("Released {} transfers reserved and neither committed nor released", reservations.size());
+        reservations.clear();
+    }
+
+    private static Transaction debit(Transfer transfer) {
+        return new Transaction(transfer.getAccountFromId(), transfer.getAmount().negate());
+    }
+
+    private static Transaction credit(Transfer transfer) {
+        return new Transaction(transfer.getAccountToId(), transfer.getAmount());
+    }
+
+    private static Transaction refund(Transfer transfer) {
+        return new Transaction(transfer.getAccountFromId(), transfer.getAmount());
+    }
+
+    /**
+     * Applies the replayed records to the repository.
+     */
+    static final class ReplayHandler implements JournalCodec.Handler {
+
+        private final AccountsRepository accountsRepository;
+
+        /**
+         * Reservations replayed and not committed or released yet, by id.
+         */
+        @Getter
+        private final Map<Long, Transfer> reservations = new HashMap<>();
+
+        ReplayHandler(AccountsRepository accountsRepository) {
+            this.accountsRepository = accountsRepository;
+        }
+
+        @Override
+        public void onCreate(Account account) {
+            try {
+                accountsRepository.createAccount(account);
+            } catch (DuplicateAccountIdException | AmountOutOfRangeException | IllegalArgumentException ex) {
+                // the creation failed the same way when it was journaled
+                log.warn("Skipping journaled creation of account {}: {}", account.getAccountId(), ex.getMessage());
+            }
+        }
+
+        @Override
+        public void onTransactions(List<Transaction> transactions) {
+            accountsRepository.updateAccountsForTransactions(transactions);
+        }
+
+        @Override
+        public void onClear() {
+            accountsRepository.clearAccounts();
+            reservations.clear();
+        }
+
+        @Override
+        public void onReserve(long reservationId, Transfer transfer) {
+            accountsRepository.updateAccountsForTransactions(Collections.singletonList(debit(transfer)));
+            reservations.put(reservationId, transfer);
+        }
+
+        @Override
+        public void onCommit(long reservationId, Transfer transfer) {
+            if (reservations.remove(reservationId) != null) {
+                accountsRepository.updateAccountsForTransactions(Collections.singletonList(credit(transfer)));
+            } else {
+                // reserved before the snapshot, which refunded it
+                accountsRepository.updateAccountsForTransactions(Arrays.asList(debit(transfer), credit(transfer)));
+            }
+        }
+
+        @Override
+        public void onRelease(long reservationId, Transfer transfer) {
+            // a release unknown here was reserved before the snapshot, which refunded it already
+            if (reservations.remove(reservationId) != null) {
+                accountsRepository.updateAccountsForTransactions(Collections.singletonList(refund(transfer)));
+            }
+        }
+    }
+
+    /**
+     * Applies the journal records to the balances of a snapshot.
+     */
+    static final class SnapshotHandler implements JournalCodec.Handler {
+
+        private final Map<String, BigDecimal> balances;
+
+        private final AccountsRepository accountsRepository;
+
+        private final Map<Long, Transfer> reservations = new HashMap<>();
+
+        /**
+         * @param balances
+         * @param accountsRepository checks the journaled accounts, so the snapshot skips the ones it refuses
+         */
+        SnapshotHandler(Map<String, BigDecimal> balances, AccountsRepository accountsRepository) {
+            this.balances = balances;
+            this.accountsRepository = accountsRepository;
+        }
+
+        /**
+         * Refunds the payers of the reservations still open, the snapshot holds no reservation.
+         */
+        void releaseReservations() {
+            for (Transfer transfer : reservations.values()) {
+                apply(refund(transfer));
+            }
+            reservations.clear();
+        }
+
+        @Override
+        public void onCreate(Account account) {
+            try {
+                accountsRepository.checkAccount(account);
+            } catch (AmountOutOfRangeException | IllegalArgumentException ex) {
+                return;
+            }
+            // like the repository, a second creation of an id is refused
+            balances.putIfAbsent(account.getAccountId(), account.getBalance());
+        }
+
+        @Override
+        public void onTransactions(List<Transaction> transactions) {
+            for (Transaction transaction : transactions) {
+                apply(transaction);
+            }
+        }
+
+        @Override
+        public void onClear() {
+            balances.clear();
+            reservations.clear();
+        }
+
+        @Override
+        public void onReserve(long reservationId, Transfer transfer) {
+            apply(debit(transfer));
+            reservations.put(reservationId, transfer);
+        }
+
+        @Override
+        public void onCommit(long reservationId, Transfer transfer) {
+            if (reservations.remove(reservationId) == null) {
+                apply(debit(transfer));
+            }
+            apply(credit(transfer));
+        }
+
+        @Override
+        public void onRelease(long reservationId, Transfer transfer) {
+            if (reservations.remove(reservationId) != null) {
+                apply(refund(transfer));
+            }
+        }
+
+        private void apply(Transaction transaction) {
+            balances.computeIfPresent(transaction.getAccountId(),
+                    (accountId, balance) -> balance.add(transaction.getAmount()));
+        }
+    }
+}
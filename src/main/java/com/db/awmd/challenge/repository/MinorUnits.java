@@ -0,0 +1,63 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.exception.AmountOutOfRangeException;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * This class converts amounts between {@link BigDecimal} and a scaled long of minor units,
+ * e.g. 12.34 at scale 2 is stored as 1234.
+ */
+public final class MinorUnits {
+
+    public static final int DEFAULT_SCALE = 2;
+
+    private MinorUnits() {
+    }
+
+    /**
+     * Converts the amount to minor units without any rounding.
+     *
+     * @param amount
+     * @param scale number of decimal places kept in the minor units
+     * @return the amount in minor units
+     * @throws AmountOutOfRangeException if the amount has more decimal places than the scale or does not fit a long
+     */
+    public static long toMinorUnits(BigDecimal amount, int scale) throws AmountOutOfRangeException {
+        try {
+            return amount.setScale(scale, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        } catch (ArithmeticException ex) {
+            throw new AmountOutOfRangeException("Amount " + amount + " can not be stored with scale " + scale);
+        }
+    }
+
+    /**
+     * Converts the minor units back to an amount. Trailing zeros are stripped, so a balance created as 1000 is
+     * returned as 1000 and not as 1000.00.
+     *
+     * @param units
+     * @param scale
+     * @return the amount
+     */
+    public static BigDecimal toBigDecimal(long units, int scale) {
+        BigDecimal amount = BigDecimal.valueOf(units, scale).stripTrailingZeros();
+        return amount.scale() < 0 ? amount.setScale(0) : amount;
+    }
+
+    /**
+     * Adds the minor units checking for overflow.
+     *
+     * @param balance
+     * @param units
+     * @return the sum
+     * @throws AmountOutOfRangeException if the sum does not fit a long
+     */
+    public static long add(long balance, long units) throws AmountOutOfRangeException {
+        try {
+            return Math.addExact(balance, units);
+        } catch (ArithmeticException ex) {
+            throw new AmountOutOfRangeException("Balance overflow when adding " + units + " minor units");
+        }
+    }
+}
@@ -0,0 +1,444 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+/**
+ * This repository is the primary of a replicated setup: it applies every change to the delegate repository and
+ * streams it to the {@link StandbyAccountsRepository} instances over TCP, encoded as the records of the journal with
+ * {@link JournalCodec}.
+ * An account is sent before it is created in the delegate, so no transfer into it can reach a standby first.
+ * A sender thread takes the records in the order they were applied, numbers them and writes all the records queued
+ * so far as one frame to every standby, without waiting for the acknowledgement of the previous frame. A standby
+ * acknowledges every frame it has applied with the sequence of its last record.
+ * - {@link AckLevel#ASYNC}: callers never wait for the standbys.
+ * - {@link AckLevel#ONE}: {@link #awaitDurable()}, account creation and clearing wait until at least one standby has
+ *   applied the change, and fail once no standby is connected anymore.
+ * A standby which fails is dropped; the standbys have to start from the same accounts as the primary.
+ *
+ * Frame: length of the rest (int), sequence of the first record (long), number of records (int), then the length
+ * (int) and the payload of every record.
+ */
+@Slf4j
+public class ReplicatedAccountsRepository implements AccountsRepository, Closeable {
+
+    /**
+     * When a change is acknowledged to the caller.
+     */
+    public enum AckLevel {
+        ASYNC, ONE
+    }
+
+    static final int FRAME_HEADER_SIZE = 4 + 8 + 4;
+
+    private static final int MAX_FRAME_SIZE = 1 << 20;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    @Getter
+    private final AccountsRepository delegate;
+
+    @Getter
+    private final AckLevel ackLevel;
+
+    private final List<Standby> standbys = new ArrayList<>();
+
+    private final Queue<Record> queue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Records sent and not acknowledged by any standby yet, in sequence order.
+     */
+    private final ArrayDeque<Record> unacknowledged = new ArrayDeque<>();
+
+    private final ThreadLocal<Record> lastRecord = new ThreadLocal<>();
+
+    private final AccountCreationLocks creationLocks = new AccountCreationLocks();
+
+    private final Thread sender;
+
+    private ByteBuffer frame = ByteBuffer.allocateDirect(MAX_FRAME_SIZE);
+
+    private long sequence;
+
+    private final AtomicInteger connected = new AtomicInteger();
+
+    private volatile boolean running = true;
+
+    /**
+     * Connects to the standbys and starts streaming the changes made from now on.
+     *
+     * @param delegate repository holding the accounts
+     * @param standbyAddresses addresses the standbys listen on
+     * @param ackLevel
+     * @throws UncheckedIOException if a standby can not be connected
+     */
+    public ReplicatedAccountsRepository(AccountsRepository delegate, List<InetSocketAddress> standbyAddresses,
+                                        AckLevel ackLevel) {
+        this.delegate = delegate;
+        this.ackLevel = ackLevel;
+        if (delegate.countAccounts() > 0) {
+            log.warn("Primary starts with {} accounts, the standbys must already have them",
+                    delegate.countAccounts());
+        }
+        try {
+            for (InetSocketAddress address : standbyAddresses) {
+                SocketChannel channel = SocketChannel.open(address);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                standbys.add(new Standby(address, channel));
+            }
+        } catch (IOException ex) {
+            closeStandbys();
+            throw new UncheckedIOException("Can not connect to the standbys " + standbyAddresses, ex);
+        }
+        this.connected.set(standbys.size());
+        for (Standby standby : standbys) {
+            standby.acknowledger.start();
+        }
+        this.sender = new Thread(this::send, "replication-sender");
+        this.sender.setDaemon(true);
+        this.sender.start();
+        log.info("Replicating accounts to {} with acknowledgement {}", standbyAddresses, ackLevel);
+    }
+
+    @Override
+    public void createAccount(Account account) throws DuplicateAccountIdException {
+        await(creationLocks.create(delegate, account, this::append));
+    }
+
+    /**
+     * Sends the accounts created and waits once for the last of them.
+     */
+    @Override
+    public void createAccounts(List<Account> accounts, BiConsumer<Account, RuntimeException> rejected) {
+        Record last = null;
+        for (Account account : accounts) {
+            try {
+                last = creationLocks.create(delegate, account, this::append);
+            } catch (RuntimeException ex) {
+                rejected.accept(account, ex);
+            }
+        }
+        if (last != null) {
+            await(last);
+        }
+    }
+
+    @Override
+    public void ensureCapacity(long expectedAccounts) {
+        delegate.ensureCapacity(expectedAccounts);
+    }
+
+    @Override
+    public Account getAccount(String accountId) {
+        return delegate.getAccount(accountId);
+    }
+
+    @Override
+    public void checkAccount(Account account) {
+        delegate.checkAccount(account);
+    }
+
+    @Override
+    public boolean isHotAccount(String accountId) {
+        return delegate.isHotAccount(accountId);
+    }
+
+    @Override
+    public void clearAccounts() {
+        delegate.clearAccounts();
+        await(append(JournalCodec.encodeClear()));
+    }
+
+    @Override
+    public long countAccounts() {
+        return delegate.countAccounts();
+    }
+
+    @Override
+    public boolean updateAccountsForTransactions(List<Transaction> transactions) {
+        byte[] record = JournalCodec.encodeTransactions(transactions);
+        boolean updated = delegate.updateAccountsForTransactions(transactions);
+        lastRecord.set(append(record));
+        return updated;
+    }
+
+    @Override
+    public void reserve(long reservationId, Transfer transfer) {
+        byte[] record = JournalCodec.encodeReservation(JournalCodec.RESERVE, reservationId, transfer);
+        delegate.reserve(reservationId, transfer);
+        lastRecord.set(append(record));
+    }
+
+    @Override
+    public void commitReservation(long reservationId, Transfer transfer) {
+        byte[] record = JournalCodec.encodeReservation(JournalCodec.COMMIT, reservationId, transfer);
+        delegate.commitReservation(reservationId, transfer);
+        lastRecord.set(append(record));
+    }
+
+    @Override
+    public void releaseReservation(long reservationId, Transfer transfer) {
+        byte[] record = JournalCodec.encodeReservation(JournalCodec.RELEASE, reservationId, transfer);
+        delegate.releaseReservation(reservationId, transfer);
+        lastRecord.set(append(record));
+    }
+
+    @Override
+    public void awaitDurable() {
+        delegate.awaitDurable();
+        Record record = lastRecord.get();
+        if (record != null) {
+            lastRecord.remove();
+            await(record);
+        }
+    }
+
+    /**
+     * @return number of standbys still connected
+     */
+    public int getConnectedStandbys() {
+        return connected.get();
+    }
+
+    /**
+     * Sends the queued changes, disconnects the standbys and closes the delegate.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        LockSupport.unpark(sender);
+        try {
+            sender.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeStandbys();
+        if (delegate instanceof Closeable) {
+            ((Closeable) delegate).close();
+        }
+    }
+
+    private Record append(byte[] payload) {
+        if (!running) {
+            throw new IllegalStateException("Replication is closed");
+        }
+        Record record = new Record(payload);
+        queue.offer(record);
+        return record;
+    }
+
+    private void await(Record record) {
+        if (ackLevel == AckLevel.ASYNC) {
+            return;
+        }
+        record.waiter = Thread.currentThread();
+        LockSupport.unpark(sender);
+        boolean interrupted = false;
+        while (!record.done) {
+            LockSupport.park(this);
+            interrupted |= Thread.interrupted();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (record.failure != null) {
+            throw new UncheckedIOException("Change is not acknowledged by any standby", record.failure);
+        }
+    }
+
+    private void send() {
+        List<Record> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            Record record;
+            int size = FRAME_HEADER_SIZE;
+            while ((record = queue.peek()) != null
+                    && (batch.isEmpty() || size + 4 + record.payload.length <= MAX_FRAME_SIZE)) {
+                queue.poll();
+                record.sequence = ++sequence;
+                size += 4 + record.payload.length;
+                batch.add(record);
+            }
+            if (batch.isEmpty()) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+            if (frame.capacity() < size) {
+                frame = ByteBuffer.allocateDirect(size);
+            }
+            frame.clear();
+            frame.putInt(size - 4);
+            frame.putLong(batch.get(0).sequence);
+            frame.putInt(batch.size());
+            for (Record sent : batch) {
+                frame.putInt(sent.payload.length);
+                frame.put(sent.payload);
+            }
+            frame.flip();
+            if (ackLevel == AckLevel.ONE) {
+                synchronized (unacknowledged) {
+                    unacknowledged.addAll(batch);
+                }
+            }
+            for (Standby standby : standbys) {
+                standby.write(frame.duplicate());
+            }
+            batch.clear();
+            if (connected.get() == 0) {
+                failUnacknowledged(new IOException("No standby is connected"));
+            }
+        }
+    }
+
+    /**
+     * Completes the records up to the sequence, acknowledged by one standby.
+     */
+    private void acknowledge(long acknowledged) {
+        synchronized (unacknowledged) {
+            Record record;
+            while ((record = unacknowledged.peek()) != null && record.sequence <= acknowledged) {
+                unacknowledged.poll();
+                record.complete(null);
+            }
+        }
+    }
+
+    private void failUnacknowledged(IOException failure) {
+        synchronized (unacknowledged) {
+            Record record;
+            while ((record = unacknowledged.poll()) != null) {
+                record.complete(failure);
+            }
+        }
+    }
+
+    private void closeStandbys() {
+        for (Standby standby : standbys) {
+            standby.close();
+        }
+    }
+
+    /**
+     * A change waiting to be acknowledged.
+     */
+    private static final class Record {
+
+        private final byte[] payload;
+
+        private volatile long sequence;
+
+        private volatile Thread waiter;
+
+        private volatile boolean done;
+
+        private volatile IOException failure;
+
+        private Record(byte[] payload) {
+            this.payload = payload;
+        }
+
+        private void complete(IOException failure) {
+            this.failure = failure;
+            this.done = true;
+            Thread thread = waiter;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    /**
+     * Connection to one standby, written by the sender and read by its own acknowledger thread.
+     */
+    private final class Standby {
+
+        private final InetSocketAddress address;
+
+        private final SocketChannel channel;
+
+        private final Thread acknowledger;
+
+        private volatile boolean failed;
+
+        private Standby(InetSocketAddress address, SocketChannel channel) {
+            this.address = address;
+            this.channel = channel;
+            this.acknowledger = new Thread(this::readAcknowledgements, "replication-ack-" + address.getPort());
+            this.acknowledger.setDaemon(true);
+        }
+
+        private void write(ByteBuffer buffer) {
+            if (failed) {
+                return;
+            }
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException ex) {
+                fail(ex);
+            }
+        }
+
+        private void readAcknowledgements() {
+            ByteBuffer acknowledgement = ByteBuffer.allocate(8);
+            try {
+                while (!failed) {
+                    acknowledgement.clear();
+                    while (acknowledgement.hasRemaining()) {
+                        if (channel.read(acknowledgement) < 0) {
+                            throw new EOFException("Standby closed the connection");
+                        }
+                    }
+                    acknowledgement.flip();
+                    acknowledge(acknowledgement.getLong());
+                }
+            } catch (IOException ex) {
+                if (running) {
+                    fail(ex);
+                }
+            }
+        }
+
+        private synchronized void fail(IOException ex) {
+            if (failed) {
+                return;
+            }
+            failed = true;
+            log.error("Standby {} dropped from replication", address, ex);
+            close();
+            if (connected.decrementAndGet() == 0) {
+                failUnacknowledged(new IOException("No standby is connected", ex));
+            }
+        }
+
+        private void close() {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                log.warn("Error in closing the connection to standby {}", address, ex);
+            }
+        }
+    }
+}
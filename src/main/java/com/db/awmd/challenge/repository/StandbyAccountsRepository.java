@@ -0,0 +1,197 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transaction;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * This repository is a read only copy of the accounts of a {@link ReplicatedAccountsRepository} primary. It listens
+ * on a port for the primary, applies the frames of changes to the delegate repository in sequence order and
+ * acknowledges every frame once applied. Reads are served from the delegate, changes by clients are refused.
+ * A frame which does not continue the sequence already applied drops the connection, the primary then has to be
+ * restarted together with its standbys. A change which can not be applied drops the connection as well and marks
+ * the standby as failed.
+ */
+@Slf4j
+public class StandbyAccountsRepository implements AccountsRepository, Closeable {
+
+    @Getter
+    private final AccountsRepository delegate;
+
+    private final ServerSocketChannel serverChannel;
+
+    private final Thread receiver;
+
+    private volatile SocketChannel channel;
+
+    private volatile long appliedSequence;
+
+    private volatile boolean running = true;
+
+    private volatile boolean failed;
+
+    /**
+     * Starts listening for the primary.
+     *
+     * @param delegate repository holding the accounts
+     * @param port port to listen on, 0 for any free port
+     * @throws IOException if the port can not be bound
+     */
+    public StandbyAccountsRepository(AccountsRepository delegate, int port) throws IOException {
+        this.delegate = delegate;
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress(port));
+        this.receiver = new Thread(this::receive, "replication-standby-" + getPort());
+        this.receiver.setDaemon(true);
+        this.receiver.start();
+        log.info("Standby listening for the primary on port {}", getPort());
+    }
+
+    /**
+     * @return port listened on for the primary
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * @return sequence of the last change applied
+     */
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    /**
+     * @return true if a change from the primary could not be applied, the accounts may then differ from the primary
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    @Override
+    public void createAccount(Account account) {
+        throw new UnsupportedOperationException("Standby is read only");
+    }
+
+    @Override
+    public void createAccounts(List<Account> accounts, BiConsumer<Account, RuntimeException> rejected) {
+        throw new UnsupportedOperationException("Standby is read only");
+    }
+
+    @Override
+    public Account getAccount(String accountId) {
+        return delegate.getAccount(accountId);
+    }
+
+    @Override
+    public boolean isHotAccount(String accountId) {
+        return delegate.isHotAccount(accountId);
+    }
+
+    @Override
+    public void clearAccounts() {
+        throw new UnsupportedOperationException("Standby is read only");
+    }
+
+    @Override
+    public long countAccounts() {
+        return delegate.countAccounts();
+    }
+
+    @Override
+    public boolean updateAccountsForTransactions(List<Transaction> transactions) {
+        throw new UnsupportedOperationException("Standby is read only");
+    }
+
+    /**
+     * Stops listening, disconnects the primary and closes the delegate.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverChannel.close();
+        SocketChannel connected = channel;
+        if (connected != null) {
+            connected.close();
+        }
+        try {
+            receiver.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (delegate instanceof Closeable) {
+            ((Closeable) delegate).close();
+        }
+    }
+
+    private void receive() {
+        JournalCodec.Handler handler = new JournaledAccountsRepository.ReplayHandler(delegate);
+        ByteBuffer header = ByteBuffer.allocate(ReplicatedAccountsRepository.FRAME_HEADER_SIZE);
+        ByteBuffer acknowledgement = ByteBuffer.allocate(8);
+        ByteBuffer frame = ByteBuffer.allocate(64 * 1024);
+        while (running) {
+            try (SocketChannel accepted = serverChannel.accept()) {
+                accepted.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel = accepted;
+                log.info("Primary connected from {}", accepted.getRemoteAddress());
+                while (running) {
+                    header.clear();
+                    readFully(accepted, header);
+                    int length = header.getInt() - (ReplicatedAccountsRepository.FRAME_HEADER_SIZE - 4);
+                    long firstSequence = header.getLong();
+                    int count = header.getInt();
+                    if (firstSequence != appliedSequence + 1) {
+                        throw new IOException("Frame starts at " + firstSequence + " after " + appliedSequence);
+                    }
+                    if (frame.capacity() < length) {
+                        frame = ByteBuffer.allocate(length);
+                    }
+                    frame.clear();
+                    frame.limit(length);
+                    readFully(accepted, frame);
+                    for (int i = 0; i < count; i++) {
+                        int end = frame.getInt() + frame.position();
+                        JournalCodec.decode((ByteBuffer) frame.slice().limit(end - frame.position()), handler);
+                        frame.position(end);
+                    }
+                    appliedSequence = firstSequence + count - 1;
+                    acknowledgement.clear();
+                    acknowledgement.putLong(appliedSequence).flip();
+                    while (acknowledgement.hasRemaining()) {
+                        accepted.write(acknowledgement);
+                    }
+                }
+            } catch (IOException ex) {
+                if (running) {
+                    log.error("Replication from the primary stopped at sequence {}", appliedSequence, ex);
+                }
+            } catch (RuntimeException ex) {
+                // the connection is dropped, the primary drops this standby and the next primary to connect starts
+                // a sequence which does not continue the applied one
+                failed = true;
+                log.error("Can not apply the changes after sequence {}, standby failed", appliedSequence, ex);
+            }
+        }
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Primary closed the connection");
+            }
+        }
+        buffer.flip();
+    }
+}
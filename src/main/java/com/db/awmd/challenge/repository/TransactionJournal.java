@@ -0,0 +1,395 @@
+package com.db.awmd.challenge.repository;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * This class is an append only log of records written through a {@link FileChannel}.
+ * Records are queued by the callers and written by a single journal thread, which writes everything queued in one go
+ * and syncs the whole group to disk at once (group commit). Every record is framed as
+ * [int payload length][int CRC32 of the payload][payload], so a torn write at the end of the file is detected and
+ * cut off when the journal is opened again.
+ * A group which can not be written or forced is cut off the file again and fails the journal: the records of that
+ * group and of every later one are failed, and no record is appended anymore, so the file never holds records after
+ * a damaged one.
+ */
+@Slf4j
+public class TransactionJournal implements Closeable {
+
+    /**
+     * When the written records are forced to disk.
+     * - PER_TRANSFER: every group is forced before its callers are released.
+     * - INTERVAL: callers are released once written, the file is forced at most every sync interval.
+     * - OS: callers are released once written, the operating system decides when to flush.
+     */
+    public enum SyncPolicy {
+        PER_TRANSFER, INTERVAL, OS
+    }
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Getter
+    private final Path path;
+
+    @Getter
+    private final SyncPolicy syncPolicy;
+
+    private final long syncIntervalNanos;
+
+    private final FileChannel channel;
+
+    private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>();
+
+    private final Thread writer;
+
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+
+    private long lastSyncNanos = System.nanoTime();
+
+    private boolean unsynced;
+
+    private volatile boolean running = true;
+
+    /**
+     * Error which failed the journal, null while it works.
+     */
+    private volatile IOException failure;
+
+    /**
+     * Opens the journal, replaying the existing records to the consumer before new records can be appended.
+     *
+     * @param path file of the journal, created if missing
+     * @param syncPolicy
+     * @param syncIntervalMillis interval of the {@link SyncPolicy#INTERVAL} policy
+     * @param replay receives the payload of every existing record, in order
+     * @throws UncheckedIOException if the file can not be opened or read
+     */
+    public TransactionJournal(Path path, SyncPolicy syncPolicy, long syncIntervalMillis, Consumer<ByteBuffer> replay) {
+        this(path, syncPolicy, syncIntervalMillis, 0, replay);
+    }
+
+    /**
+     * Opens the journal, replaying the records from the start position, e.g. the position a snapshot was taken at.
+     *
+     * @param path file of the journal, created if missing
+     * @param syncPolicy
+     * @param syncIntervalMillis interval of the {@link SyncPolicy#INTERVAL} policy
+     * @param startPosition position of the first record to replay
+     * @param replay receives the payload of every record after the start position, in order
+     * @throws UncheckedIOException if the file can not be opened or read, or is shorter than the start position
+     */
+    public TransactionJournal(Path path, SyncPolicy syncPolicy, long syncIntervalMillis, long startPosition,
+                              Consumer<ByteBuffer> replay) {
+        this(path, open(path), syncPolicy, syncIntervalMillis, startPosition, replay);
+    }
+
+    /**
+     * Opens the journal on a channel of its file.
+     *
+     * @param path
+     * @param channel readable and writable channel of the file
+     * @param syncPolicy
+     * @param syncIntervalMillis
+     * @param startPosition
+     * @param replay
+     */
+    TransactionJournal(Path path, FileChannel channel, SyncPolicy syncPolicy, long syncIntervalMillis,
+                       long startPosition, Consumer<ByteBuffer> replay) {
+        this.path = path;
+        this.channel = channel;
+        this.syncPolicy = syncPolicy;
+        this.syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis);
+        try {
+            if (channel.size() < startPosition) {
+                throw new IOException("Journal is shorter than the start position " + startPosition);
+            }
+            long end = replay(channel, startPosition, replay);
+            if (end < channel.size()) {
+                log.warn("Truncating torn journal tail of {} at {}", path, end);
+                channel.truncate(end);
+            }
+            channel.position(end);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Can not open journal " + path, ex);
+        }
+        this.writer = new Thread(this::writeLoop, "journal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    private static FileChannel open(Path path) {
+        try {
+            return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Can not open journal " + path, ex);
+        }
+    }
+
+    /**
+     * Reads the records of a journal file from the position, stopping at the end or at the first damaged record.
+     *
+     * @param channel
+     * @param position where the first record starts
+     * @param replay receives the payload of every record
+     * @return position after the last complete record
+     * @throws IOException
+     */
+    public static long replay(FileChannel channel, long position, Consumer<ByteBuffer> replay) throws IOException {
+        return replay(channel, position, channel.size(), replay);
+    }
+
+    /**
+     * Reads the records of a journal file between the positions, stopping at the first damaged record or the first
+     * record which does not end before the limit.
+     *
+     * @param channel
+     * @param position where the first record starts
+     * @param limit position no record is read past
+     * @param replay receives the payload of every record
+     * @return position after the last complete record
+     * @throws IOException
+     */
+    public static long replay(FileChannel channel, long position, long limit, Consumer<ByteBuffer> replay)
+            throws IOException {
+        long size = Math.min(limit, channel.size());
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            readFully(channel, header, position);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length <= 0 || position + HEADER_SIZE + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(channel, payload, position + HEADER_SIZE);
+            crc.reset();
+            crc.update(payload.array(), 0, length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            payload.flip();
+            replay.accept(payload);
+            position += HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    /**
+     * Queues the record for writing without waiting.
+     *
+     * @param payload encoded record, see {@link JournalCodec}
+     * @return ticket to wait on with {@link #await(Entry)}
+     * @throws UncheckedIOException if the journal failed
+     */
+    public Entry append(byte[] payload) {
+        if (!running) {
+            throw new IllegalStateException("Journal " + path + " is closed");
+        }
+        if (failure != null) {
+            throw new UncheckedIOException("Journal " + path + " failed", failure);
+        }
+        Entry entry = new Entry(payload);
+        queue.offer(entry);
+        return entry;
+    }
+
+    /**
+     * Waits until the record is written, and forced to disk for the {@link SyncPolicy#PER_TRANSFER} policy.
+     *
+     * @param entry
+     * @throws UncheckedIOException if the record could not be written
+     */
+    public void await(Entry entry) {
+        entry.waiter = Thread.currentThread();
+        LockSupport.unpark(writer);
+        boolean interrupted = false;
+        while (!entry.done) {
+            LockSupport.park(this);
+            interrupted |= Thread.interrupted();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (entry.failure != null) {
+            throw new UncheckedIOException("Can not write journal " + path, entry.failure);
+        }
+    }
+
+    /**
+     * Writes the queued records, forces the file and closes it.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.force(true);
+        channel.close();
+    }
+
+    /**
+     * Forces the records written so far to disk.
+     *
+     * @throws IOException
+     */
+    public void sync() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * @return current size of the journal file in bytes
+     */
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    private void writeLoop() {
+        List<Entry> group = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            Entry entry;
+            while ((entry = queue.poll()) != null) {
+                group.add(entry);
+            }
+            if (group.isEmpty()) {
+                syncIfDue();
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+            if (failure == null) {
+                writeGroup(group);
+            }
+            for (Entry written : group) {
+                written.failure = failure;
+                written.done = true;
+                Thread waiter = written.waiter;
+                if (waiter != null) {
+                    LockSupport.unpark(waiter);
+                }
+            }
+            group.clear();
+        }
+    }
+
+    /**
+     * Writes the group, or cuts the part written off the file and fails the journal.
+     */
+    private void writeGroup(List<Entry> group) {
+        long start = -1;
+        try {
+            start = channel.position();
+            write(group);
+            if (syncPolicy == SyncPolicy.PER_TRANSFER) {
+                channel.force(false);
+            } else {
+                unsynced = true;
+                syncIfDue();
+            }
+        } catch (IOException ex) {
+            log.error("Error in writing journal {}, no record is appended anymore", path, ex);
+            if (start >= 0) {
+                try {
+                    channel.truncate(start);
+                    channel.position(start);
+                } catch (IOException truncateEx) {
+                    log.error("Can not cut the failed records off journal {} at {}", path, start, truncateEx);
+                }
+            }
+            failure = ex;
+        }
+    }
+
+    private void write(List<Entry> group) throws IOException {
+        CRC32 crc = new CRC32();
+        buffer.clear();
+        for (Entry entry : group) {
+            int length = entry.payload.length;
+            if (buffer.remaining() < HEADER_SIZE + length) {
+                flush();
+                if (buffer.capacity() < HEADER_SIZE + length) {
+                    buffer = ByteBuffer.allocateDirect(HEADER_SIZE + length);
+                }
+            }
+            crc.reset();
+            crc.update(entry.payload, 0, length);
+            buffer.putInt(length);
+            buffer.putInt((int) crc.getValue());
+            buffer.put(entry.payload);
+        }
+        flush();
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void syncIfDue() {
+        if (syncPolicy != SyncPolicy.INTERVAL || !unsynced || System.nanoTime() - lastSyncNanos < syncIntervalNanos) {
+            return;
+        }
+        try {
+            channel.force(false);
+            unsynced = false;
+            lastSyncNanos = System.nanoTime();
+        } catch (IOException ex) {
+            // the records written since the last sync may be lost, later records must not follow them
+            log.error("Error in syncing journal {}, no record is appended anymore", path, ex);
+            failure = ex;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of journal");
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Record waiting to be written.
+     */
+    public static final class Entry {
+
+        private final byte[] payload;
+
+        private volatile Thread waiter;
+
+        private volatile boolean done;
+
+        private volatile IOException failure;
+
+        private Entry(byte[] payload) {
+            this.payload = payload;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.ImportSummary;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class creates the accounts streamed as CSV lines accountId,balance or as NDJSON, one account object per line.
+ * The records are parsed one by one without holding the input, validated like a single account and collected into
+ * chunks, which are created in parallel by a pool of import threads while the next chunk is read. A chunk is created
+ * with one call to the repository, which makes it durable once, and its duplicates come back as rejects instead of
+ * failing the import. At most twice as many chunks as threads are in flight, so the memory used does not depend on
+ * the size of the input. With the expected number of accounts the repository is sized ahead once.
+ */
+@Service
+@Slf4j
+public class AccountImporter {
+
+    /**
+     * Format of the input.
+     */
+    public enum Format {
+        CSV, NDJSON
+    }
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final AccountsService accountsService;
+
+    private final int chunkSize;
+
+    private final int parallelism;
+
+    private final int maxRejects;
+
+    /**
+     * @param accountsService
+     * @param chunkSize number of accounts created together
+     * @param parallelism number of import threads, 0 for one per core
+     * @param maxRejects number of rejected records listed in the summary
+     */
+    @Autowired
+    public AccountImporter(AccountsService accountsService,
+                           @Value("${accounts.import.chunk-size:10000}") int chunkSize,
+                           @Value("${accounts.import.parallelism:0}") int parallelism,
+                           @Value("${accounts.import.max-rejects:1000}") int maxRejects) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.accountsService = accountsService;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.maxRejects = maxRejects;
+    }
+
+    /**
+     * Creates the accounts of the input, up to the first record which can not be parsed.
+     *
+     * @param input
+     * @param format
+     * @param expectedAccounts number of accounts in the input, 0 if unknown
+     * @return summary of the import
+     */
+    public ImportSummary importAccounts(InputStream input, Format format, long expectedAccounts) {
+        long start = System.nanoTime();
+        if (expectedAccounts > 0) {
+            accountsService.getAccountsRepository()
+                    .ensureCapacity(accountsService.getAccountsRepository().countAccounts() + expectedAccounts);
+        }
+        Import run = new Import();
+        try {
+            if (format == Format.CSV) {
+                readCsv(input, run);
+            } else {
+                readNdjson(input, run);
+            }
+        } catch (IOException ex) {
+            log.warn("Import stopped: {}", ex.getMessage());
+            run.fail(ex.getMessage());
+        } finally {
+            run.finish();
+        }
+        ImportSummary summary = run.summary();
+        log.info("Imported {} of {} accounts in {} ms, {} rejected", summary.getCreated(), summary.getRead(),
+                (System.nanoTime() - start) / 1_000_000, summary.getRejected());
+        return summary;
+    }
+
+    private static void readCsv(InputStream input, Import run) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), 1 << 16);
+        String text;
+        long line = 0;
+        while ((text = reader.readLine()) != null) {
+            line++;
+            if (text.trim().isEmpty() || (line == 1 && text.regionMatches(true, 0, "accountId", 0, 9))) {
+                continue;
+            }
+            int comma = text.indexOf(',');
+            if (comma < 0 || text.indexOf(',', comma + 1) >= 0) {
+                run.malformed(line, "Expected accountId,balance");
+                continue;
+            }
+            String accountId = text.substring(0, comma).trim();
+            String balance = text.substring(comma + 1).trim();
+            run.add(line, accountId, balance.isEmpty() ? null : balance, null);
+        }
+    }
+
+    private static void readNdjson(InputStream input, Import run) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(input)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                long line = parser.getTokenLocation().getLineNr();
+                if (token != JsonToken.START_OBJECT) {
+                    throw new JsonParseException(parser, "Expected an account object");
+                }
+                String accountId = null;
+                String balanceText = null;
+                BigDecimal balance = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    if ("accountId".equals(field) && value == JsonToken.VALUE_STRING) {
+                        accountId = parser.getText();
+                    } else if ("balance".equals(field) && value.isNumeric()) {
+                        balance = parser.getDecimalValue();
+                    } else if ("balance".equals(field) && value == JsonToken.VALUE_STRING) {
+                        balanceText = parser.getText();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                run.add(line, accountId, balanceText, balance);
+            }
+        }
+    }
+
+    /**
+     * State of one import, shared by the reading thread and the import threads.
+     */
+    private final class Import {
+
+        private final AtomicInteger threads = new AtomicInteger();
+
+        private final ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "account-import-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        private final Semaphore inFlight = new Semaphore(parallelism * 2);
+
+        private final LongAdder created = new LongAdder();
+
+        private final LongAdder rejected = new LongAdder();
+
+        private final List<ImportSummary.Reject> rejects = new ArrayList<>();
+
+        private long read;
+
+        private Chunk chunk = new Chunk();
+
+        private volatile String error;
+
+        /**
+         * Validates the record like a single account and adds it to the current chunk.
+         */
+        private void add(long line, String accountId, String balanceText, BigDecimal balance) {
+            read++;
+            if (accountId == null || accountId.isEmpty()) {
+                reject(line, null, "accountId must not be empty");
+                return;
+            }
+            if (balance == null && balanceText != null) {
+                try {
+                    balance = new BigDecimal(balanceText);
+                } catch (NumberFormatException ex) {
+                    reject(line, accountId, "balance is not a number");
+                    return;
+                }
+            }
+            if (balance == null) {
+                reject(line, accountId, "balance must not be null");
+                return;
+            }
+            if (balance.signum() < 0) {
+                reject(line, accountId, "Initial balance must be positive.");
+                return;
+            }
+            if (!chunk.ids.add(accountId)) {
+                reject(line, accountId, "Account id " + accountId + " is repeated in the input");
+                return;
+            }
+            chunk.add(line, new Account(accountId, balance));
+            if (chunk.accounts.size() == chunkSize) {
+                submit();
+            }
+        }
+
+        private void malformed(long line, String reason) {
+            read++;
+            reject(line, null, reason);
+        }
+
+        private void reject(long line, String accountId, String reason) {
+            rejected.increment();
+            synchronized (rejects) {
+                if (rejects.size() < maxRejects) {
+                    rejects.add(new ImportSummary.Reject(line, accountId, reason));
+                }
+            }
+        }
+
+        private void fail(String message) {
+            if (error == null) {
+                error = message;
+            }
+        }
+
+        private void submit() {
+            Chunk submitted = chunk;
+            chunk = new Chunk();
+            inFlight.acquireUninterruptibly();
+            executor.execute(() -> {
+                try {
+                    AtomicInteger failed = new AtomicInteger();
+                    accountsService.createAccounts(submitted.accounts, (account, ex) -> {
+                        failed.incrementAndGet();
+                        reject(submitted.lineOf(account), account.getAccountId(), ex.getMessage());
+                    });
+                    created.add(submitted.accounts.size() - failed.get());
+                } catch (RuntimeException ex) {
+                    log.error("Error in importing the accounts from line {}", submitted.lines[0], ex);
+                    fail("Accounts from line " + submitted.lines[0] + " not imported: " + ex.getMessage());
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+
+        private void finish() {
+            if (!chunk.accounts.isEmpty()) {
+                submit();
+            }
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail("Import interrupted");
+            }
+        }
+
+        private ImportSummary summary() {
+            synchronized (rejects) {
+                return new ImportSummary(read, created.sum(), rejected.sum(), new ArrayList<>(rejects), error);
+            }
+        }
+    }
+
+    /**
+     * Accounts created together, with the line each was read from.
+     */
+    private final class Chunk {
+
+        private final List<Account> accounts = new ArrayList<>(chunkSize);
+
+        private final Set<String> ids = new HashSet<>();
+
+        private final long[] lines = new long[chunkSize];
+
+        private Map<Account, Long> lineByAccount;
+
+        private void add(long line, Account account) {
+            lines[accounts.size()] = line;
+            accounts.add(account);
+        }
+
+        /**
+         * Looks the line up by identity, built on the first reject only.
+         */
+        private synchronized long lineOf(Account account) {
+            if (lineByAccount == null) {
+                lineByAccount = new IdentityHashMap<>();
+                for (int i = 0; i < accounts.size(); i++) {
+                    lineByAccount.put(accounts.get(i), lines[i]);
+                }
+            }
+            return lineByAccount.getOrDefault(account, 0L);
+        }
+    }
+}
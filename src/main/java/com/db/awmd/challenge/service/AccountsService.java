@@ -7,6 +7,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
 /**
  *
  */
@@ -17,9 +25,17 @@ public class AccountsService {
   @Getter
   private final AccountsRepository accountsRepository;
 
-  @Autowired
+  @Getter
+  private final TransactionHistory transactionHistory;
+
   public AccountsService(AccountsRepository accountsRepository) {
+    this(accountsRepository, new TransactionHistory());
+  }
+
+  @Autowired
+  public AccountsService(AccountsRepository accountsRepository, TransactionHistory transactionHistory) {
     this.accountsRepository = accountsRepository;
+    this.transactionHistory = transactionHistory;
   }
 
   /**
@@ -29,6 +45,29 @@ public class AccountsService {
    */
   public void createAccount(Account account) {
     this.accountsRepository.createAccount(account);
+    // an id created again after the accounts were cleared starts with an empty history
+    this.transactionHistory.clear(account.getAccountId());
+  }
+
+  /**
+   * Creates the accounts of a bulk load, the accounts which can not be created are handed to the rejected consumer.
+   *
+   * @param accounts
+   * @param rejected receives every account not created and the reason
+   */
+  public void createAccounts(List<Account> accounts, BiConsumer<Account, RuntimeException> rejected) {
+    Set<Account> notCreated = Collections.newSetFromMap(new IdentityHashMap<>());
+    this.accountsRepository.createAccounts(accounts, (account, ex) -> {
+      notCreated.add(account);
+      rejected.accept(account, ex);
+    });
+    List<String> created = new ArrayList<>(accounts.size() - notCreated.size());
+    for (Account account : accounts) {
+      if (!notCreated.contains(account)) {
+        created.add(account.getAccountId());
+      }
+    }
+    this.transactionHistory.clear(created);
   }
 
   /**
@@ -41,4 +80,20 @@ public class AccountsService {
     return this.accountsRepository.getAccount(accountId);
   }
 
+  /**
+   * Visits a page of the transactions of the account, newest first.
+   *
+   * @param accountId
+   * @param cursor cursor returned with the previous page, null for the first page
+   * @param limit maximum number of transactions
+   * @param visitor
+   * @return cursor of the next page, null if it is the last page
+   * @throws IOException thrown by the visitor
+   */
+  public Long getTransactions(String accountId, Long cursor, int limit, TransactionHistory.Visitor visitor)
+      throws IOException {
+    long next = this.transactionHistory.read(accountId, cursor == null ? Long.MAX_VALUE : cursor, limit, visitor);
+    return next < 0 ? null : next;
+  }
+
 }
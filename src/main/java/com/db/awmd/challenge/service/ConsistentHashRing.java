@@ -0,0 +1,74 @@
+package com.db.awmd.challenge.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * This class maps account ids to nodes on a ring of 64 bit hashes. Every node is placed at a number of virtual points
+ * and an id belongs to the first point at or after its hash, so the nodes own similar shares of the ids and adding or
+ * removing a node only moves the ids next to its points. A ring is immutable, a change of the nodes builds a new ring.
+ */
+public final class ConsistentHashRing<T> {
+
+    private final TreeMap<Long, T> points = new TreeMap<>();
+
+    private final List<T> nodes;
+
+    /**
+     * @param nodes
+     * @param nameOf name of a node, hashed to place its points
+     * @param virtualNodes number of points per node
+     */
+    public ConsistentHashRing(Collection<T> nodes, Function<T, String> nameOf, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("Ring needs at least one node");
+        }
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("Number of virtual nodes must be positive");
+        }
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+        for (T node : nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                points.put(hash(nameOf.apply(node) + "#" + i), node);
+            }
+        }
+    }
+
+    /**
+     * Returns the node owning the key.
+     *
+     * @param key
+     * @return node
+     */
+    public T nodeFor(String key) {
+        Map.Entry<Long, T> point = points.ceilingEntry(hash(key));
+        return point != null ? point.getValue() : points.firstEntry().getValue();
+    }
+
+    public List<T> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * FNV-1a over the UTF-8 bytes, finished with the murmur3 mixer so short similar ids spread over the whole ring.
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,164 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.TransferRejection;
+import com.db.awmd.challenge.domain.TransferResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * This class remembers the result of recently submitted transfers by their idempotency key, so a retried transfer
+ * returns the original result instead of moving the money again. Every key is remembered with its request, a key
+ * used again for a different request is rejected with {@link TransferRejection#IDEMPOTENCY_KEY_REUSED}.
+ * Keys are spread over independently locked segments; each segment evicts its entries after the time to live and
+ * its oldest entries when it is full. A duplicate arriving while the original is still running waits for its result.
+ */
+@Component
+public class IdempotencyCache {
+
+    private final Segment[] segments;
+
+    private final int mask;
+
+    private final int maxEntriesPerSegment;
+
+    private final long timeToLiveNanos;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    public IdempotencyCache() {
+        this(100_000, 600, 64);
+    }
+
+    /**
+     * @param maxEntries maximum number of remembered keys
+     * @param timeToLiveSeconds how long a key is remembered
+     * @param stripes number of independently locked segments, rounded up to a power of two
+     */
+    @Autowired
+    public IdempotencyCache(@Value("${transfer.idempotency.max-entries:100000}") int maxEntries,
+                            @Value("${transfer.idempotency.ttl-seconds:600}") long timeToLiveSeconds,
+                            @Value("${transfer.idempotency.stripes:64}") int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes));
+        if (size < stripes) {
+            size <<= 1;
+        }
+        this.segments = new Segment[size];
+        for (int i = 0; i < size; i++) {
+            this.segments[i] = new Segment();
+        }
+        this.mask = size - 1;
+        this.maxEntriesPerSegment = Math.max(1, maxEntries / size);
+        this.timeToLiveNanos = TimeUnit.SECONDS.toNanos(timeToLiveSeconds);
+    }
+
+    /**
+     * Returns the remembered result of the key, or runs the transfer and remembers its result.
+     * If the transfer throws, the key is forgotten so the transfer can be retried.
+     *
+     * @param key idempotency key of the transfer
+     * @param request the transfer requested, compared with equals to the request the key was remembered with
+     * @param transfer runs the transfer
+     * @return {@link com.db.awmd.challenge.domain.TransferResult}, rejected if the key was used for another request
+     */
+    public TransferResult execute(String key, Object request, Supplier<TransferResult> transfer) {
+        int h = key.hashCode();
+        Segment segment = segments[(h ^ (h >>> 16)) & mask];
+        long now = System.nanoTime();
+        Entry existing;
+        Entry created = null;
+        synchronized (segment) {
+            evictExpired(segment, now);
+            existing = segment.get(key);
+            if (existing == null) {
+                created = new Entry(now, request);
+                segment.put(key, created);
+                if (segment.size() > maxEntriesPerSegment) {
+                    Iterator<Entry> oldest = segment.values().iterator();
+                    oldest.next();
+                    oldest.remove();
+                    evictions.increment();
+                }
+            }
+        }
+        if (existing != null) {
+            hits.increment();
+            if (!existing.request.equals(request)) {
+                return TransferResult.rejected(TransferRejection.IDEMPOTENCY_KEY_REUSED,
+                        "Idempotency key " + key + " was used for a different transfer");
+            }
+            return existing.result.join();
+        }
+
+        misses.increment();
+        try {
+            TransferResult result = transfer.get();
+            created.result.complete(result);
+            return result;
+        } catch (RuntimeException ex) {
+            synchronized (segment) {
+                segment.remove(key, created);
+            }
+            created.result.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private void evictExpired(Segment segment, long now) {
+        Iterator<Entry> iterator = segment.values().iterator();
+        while (iterator.hasNext()) {
+            Entry oldest = iterator.next();
+            if (now - oldest.createdNanos < timeToLiveNanos) {
+                return;
+            }
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Keys of one stripe in insertion order, the oldest first.
+     */
+    private static final class Segment extends LinkedHashMap<String, Entry> {
+    }
+
+    /**
+     * Result of a remembered key, completed once the original transfer finished.
+     */
+    private static final class Entry {
+
+        private final long createdNanos;
+
+        private final Object request;
+
+        private final CompletableFuture<TransferResult> result = new CompletableFuture<>();
+
+        private Entry(long createdNanos, Object request) {
+            this.createdNanos = createdNanos;
+            this.request = request;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.db.awmd.challenge.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class is a bounded ring buffer for many producers and a single consumer. Every slot has a sequence number:
+ * a producer claims a position by compare and swap on the tail, stores its element and then advances the sequence of
+ * the slot, which is what the consumer waits for. Neither side takes a lock and the ring allocates nothing after it
+ * was created.
+ *
+ * @param <E> type of the elements
+ */
+public class MpscRing<E> {
+
+    private final Object[] elements;
+
+    private final AtomicLongArray sequences;
+
+    private final int mask;
+
+    private final AtomicLong tail = new AtomicLong();
+
+    private long head;
+
+    /**
+     * @param capacity number of elements, rounded up to the next power of two
+     */
+    public MpscRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity of the ring must be positive");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.elements = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Adds the element, from any thread.
+     *
+     * @param element
+     * @return false if the ring is full
+     */
+    public boolean offer(E element) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements[index] = element;
+                    // a volatile store, so a consumer about to park either sees the element or is seen parking
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest element, only from the consumer thread.
+     *
+     * @return the element, null if the ring is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        int index = (int) head & mask;
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        E element = (E) elements[index];
+        elements[index] = null;
+        sequences.lazySet(index, head + elements.length);
+        head++;
+        return element;
+    }
+
+    /**
+     * Only meaningful in the consumer thread.
+     *
+     * @return true if there is no element to poll
+     */
+    public boolean isEmpty() {
+        return sequences.get((int) head & mask) != head + 1;
+    }
+
+    public int capacity() {
+        return elements.length;
+    }
+}
@@ -0,0 +1,412 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class takes the notifications off the transfer path. Notifications are put into a bounded lock-free queue and
+ * delivered to the {@link NotificationService} by dedicated worker threads, which drain the queue in batches and
+ * merge the notifications of the same account within a batch into one message.
+ * When the dispatcher is not asynchronous the notifications are delivered in the calling thread.
+ */
+@Service
+@Slf4j
+public class NotificationDispatcher {
+
+    /**
+     * What happens to a new notification when the queue is full.
+     * - BLOCK: the publishing thread waits until there is room.
+     * - DROP_OLDEST: the oldest queued notification is discarded.
+     * - SPILL_TO_DISK: the notification is appended to the spill file and delivered once the queue is empty.
+     */
+    public enum OverflowPolicy {
+        BLOCK, DROP_OLDEST, SPILL_TO_DISK
+    }
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    @Getter
+    private final NotificationService notificationService;
+
+    @Getter
+    private final boolean async;
+
+    private final int capacity;
+
+    private final int batchSize;
+
+    @Getter
+    private final OverflowPolicy overflowPolicy;
+
+    private final Path spillFile;
+
+    /**
+     * Spill file being delivered, new notifications spill into the spill file meanwhile.
+     */
+    private final Path drainingFile;
+
+    private final ConcurrentLinkedQueue<Notification> queue = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final LongAdder delivered = new LongAdder();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder spilled = new LongAdder();
+
+    private final Object spillLock = new Object();
+
+    private BufferedWriter spillWriter;
+
+    private int spillPending;
+
+    private boolean drainingFilePending;
+
+    private boolean draining;
+
+    /**
+     * Lines of the draining file already delivered, only used by the worker draining it.
+     */
+    private long drainedLines;
+
+    private volatile long lagNanos;
+
+    private volatile boolean running = true;
+
+    private final Thread[] workers;
+
+    @Autowired
+    public NotificationDispatcher(NotificationService notificationService,
+                                  @Value("${notification.async:true}") boolean async,
+                                  @Value("${notification.queue-capacity:65536}") int capacity,
+                                  @Value("${notification.batch-size:256}") int batchSize,
+                                  @Value("${notification.workers:2}") int workers,
+                                  @Value("${notification.overflow-policy:BLOCK}") OverflowPolicy overflowPolicy,
+                                  @Value("${notification.spill-file:${java.io.tmpdir}/notifications.spill}")
+                                          String spillFile) {
+        this.notificationService = notificationService;
+        this.async = async;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.overflowPolicy = overflowPolicy;
+        this.spillFile = Paths.get(spillFile);
+        this.drainingFile = Paths.get(spillFile + ".draining");
+        // notifications spilled before a restart are delivered first
+        this.spillPending = async && Files.exists(this.spillFile) ? 1 : 0;
+        this.drainingFilePending = async && Files.exists(this.drainingFile);
+        this.workers = new Thread[async ? workers : 0];
+        for (int i = 0; i < this.workers.length; i++) {
+            this.workers[i] = new Thread(this::drainLoop, "notification-worker-" + i);
+            this.workers[i].setDaemon(true);
+            this.workers[i].start();
+        }
+    }
+
+    /**
+     * Returns a dispatcher which delivers every notification directly in the calling thread.
+     *
+     * @param notificationService
+     * @return NotificationDispatcher
+     */
+    public static NotificationDispatcher direct(NotificationService notificationService) {
+        return new NotificationDispatcher(notificationService, false, 0, 1, 0, OverflowPolicy.BLOCK,
+                System.getProperty("java.io.tmpdir") + "/notifications.spill");
+    }
+
+    /**
+     * Publishes the notification for the owner of the account.
+     *
+     * @param account {@link com.db.awmd.challenge.domain.Account}
+     * @param transferDescription
+     */
+    public void dispatch(Account account, String transferDescription) {
+        if (!async) {
+            notificationService.notifyAboutTransfer(account, transferDescription);
+            delivered.increment();
+            return;
+        }
+        Notification notification = new Notification(account, transferDescription, System.nanoTime());
+        while (!reserve()) {
+            switch (overflowPolicy) {
+                case DROP_OLDEST:
+                    if (queue.poll() != null) {
+                        queued.decrementAndGet();
+                        dropped.increment();
+                    }
+                    break;
+                case SPILL_TO_DISK:
+                    spill(notification);
+                    return;
+                default:
+                    LockSupport.parkNanos(FULL_PARK_NANOS);
+            }
+        }
+        queue.offer(notification);
+    }
+
+    /**
+     * @return number of notifications waiting in the queue
+     */
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    /**
+     * @return time in milliseconds the last delivered batch waited in the queue
+     */
+    public long getLagMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(lagNanos);
+    }
+
+    public long getDeliveredCount() {
+        return delivered.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getSpilledCount() {
+        return spilled.sum();
+    }
+
+    /**
+     * Stops the workers after the queued notifications have been delivered.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    private boolean reserve() {
+        int current;
+        do {
+            current = queued.get();
+            if (current >= capacity) {
+                return false;
+            }
+        } while (!queued.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    private void drainLoop() {
+        List<Notification> batch = new ArrayList<>(batchSize);
+        while (running || queued.get() > 0) {
+            Notification notification;
+            while (batch.size() < batchSize && (notification = queue.poll()) != null) {
+                queued.decrementAndGet();
+                batch.add(notification);
+            }
+            if (!batch.isEmpty()) {
+                deliver(batch);
+                batch.clear();
+            } else if (!drainSpill()) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        drainSpill();
+    }
+
+    private void deliver(List<Notification> batch) {
+        lagNanos = System.nanoTime() - batch.get(0).enqueuedNanos;
+        Map<String, Notification> byAccount = new LinkedHashMap<>();
+        for (Notification notification : batch) {
+            byAccount.merge(notification.account.getAccountId(), notification, Notification::coalesce);
+        }
+        for (Notification notification : byAccount.values()) {
+            try {
+                notificationService.notifyAboutTransfer(notification.account, notification.description);
+            } catch (RuntimeException ex) {
+                log.error("Error in sending notification to owner of {}", notification.account.getAccountId(), ex);
+            }
+        }
+        delivered.add(batch.size());
+    }
+
+    private void spill(Notification notification) {
+        synchronized (spillLock) {
+            try {
+                if (spillWriter == null) {
+                    spillWriter = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                }
+                spillWriter.write(escape(notification.account.getAccountId()) + '\t'
+                        + notification.account.getBalance() + '\t' + escape(notification.description));
+                spillWriter.newLine();
+                // written through at once, so a crash loses no spilled notification kept in the buffer
+                spillWriter.flush();
+                spillPending++;
+                spilled.increment();
+            } catch (IOException ex) {
+                log.error("Error in spilling notification for {}, notification dropped",
+                        notification.account.getAccountId(), ex);
+                dropped.increment();
+            }
+        }
+    }
+
+    /**
+     * Delivers the spilled notifications, only once the queue is empty. The spill file is renamed under the lock,
+     * so new notifications spill into a new file, and read and delivered outside of it, so a slow notification
+     * service never holds up the transfers spilling. The lines delivered are counted, a read failing part way
+     * continues after them the next time. A line which is no notification is logged and skipped.
+     *
+     * @return true if spilled notifications were delivered
+     */
+    private boolean drainSpill() {
+        synchronized (spillLock) {
+            if (draining || queued.get() > 0 || (spillPending == 0 && !drainingFilePending)) {
+                return false;
+            }
+            if (!drainingFilePending) {
+                try {
+                    if (spillWriter != null) {
+                        spillWriter.close();
+                        spillWriter = null;
+                    }
+                    Files.move(spillFile, drainingFile, StandardCopyOption.REPLACE_EXISTING);
+                    drainingFilePending = true;
+                    drainedLines = 0;
+                } catch (IOException ex) {
+                    log.error("Error in moving spilled notifications from {}", spillFile, ex);
+                    return false;
+                } finally {
+                    spillPending = 0;
+                }
+            }
+            draining = true;
+        }
+        boolean drained = false;
+        try {
+            List<Notification> batch = new ArrayList<>(batchSize);
+            try (BufferedReader reader = Files.newBufferedReader(drainingFile, StandardCharsets.UTF_8)) {
+                String line;
+                long skipped = 0;
+                int batchLines = 0;
+                while ((line = reader.readLine()) != null) {
+                    if (skipped++ < drainedLines) {
+                        continue;
+                    }
+                    batchLines++;
+                    Notification notification = parseSpilled(line);
+                    if (notification != null) {
+                        batch.add(notification);
+                    }
+                    if (batch.size() == batchSize) {
+                        deliver(batch);
+                        drainedLines += batchLines;
+                        batchLines = 0;
+                        batch.clear();
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    deliver(batch);
+                }
+                drainedLines += batchLines;
+            }
+            Files.delete(drainingFile);
+            drained = true;
+        } catch (IOException ex) {
+            log.error("Error in reading spilled notifications from {} after {} lines", drainingFile, drainedLines,
+                    ex);
+        } finally {
+            synchronized (spillLock) {
+                drainingFilePending = !drained;
+                draining = false;
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * @param line spilled notification
+     * @return the notification, null if the line is no notification
+     */
+    private Notification parseSpilled(String line) {
+        String[] fields = line.split("\t", -1);
+        try {
+            if (fields.length != 3) {
+                throw new IllegalArgumentException(fields.length + " fields");
+            }
+            Account account = new Account(unescape(fields[0]),
+                    "null".equals(fields[1]) ? null : new BigDecimal(fields[1]));
+            return new Notification(account, unescape(fields[2]), System.nanoTime());
+        } catch (IllegalArgumentException ex) {
+            log.warn("Skipping spilled notification in {} which can not be read: {}", drainingFile, ex.getMessage());
+            dropped.increment();
+            return null;
+        }
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String value) {
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                builder.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Queued notification for the owner of one account.
+     */
+    private static final class Notification {
+
+        private final Account account;
+
+        private final String description;
+
+        private final long enqueuedNanos;
+
+        private Notification(Account account, String description, long enqueuedNanos) {
+            this.account = account;
+            this.description = description;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+
+        private static Notification coalesce(Notification first, Notification second) {
+            return new Notification(second.account, first.description + "\n" + second.description,
+                    first.enqueuedNanos);
+        }
+    }
+}
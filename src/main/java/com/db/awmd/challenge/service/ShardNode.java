@@ -0,0 +1,320 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferRejection;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.exception.AmountOutOfRangeException;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.ShardUnavailableException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongFunction;
+
+/**
+ * This class is one node of a {@link ShardRouter}: it holds the accounts hashed to it in its own repository and
+ * applies the transfers between them with its own {@link TransferService}.
+ * For a transfer with an account on another node it takes part in the two-phase protocol of the router:
+ * - prepare: reserves the debit, the money leaves the payer at once, or checks the payee of the credit
+ * - commit: applies the credit, or keeps the debit
+ * - abort: gives the reserved debit back, or drops the credit
+ * A reservation not decided within the timeout of the router is resolved with the decision of the router, which is
+ * abort for a transfer it does not know. An account with open reservations is never moved to another node.
+ * The repository has no removal, so an account moved away stays behind with a zero balance and is no longer served.
+ */
+@Slf4j
+public class ShardNode {
+
+    /**
+     * Outcome of a transfer as known by the router.
+     */
+    public enum Decision {
+        COMMIT, ABORT, PENDING
+    }
+
+    @Getter
+    private final String name;
+
+    @Getter
+    private final AccountsRepository accountsRepository;
+
+    @Getter
+    private final TransferService transferService;
+
+    private final StripedAccountLocks accountLocks = new StripedAccountLocks();
+
+    private final Set<String> accountIds = ConcurrentHashMap.newKeySet();
+
+    private final Map<Long, Reservation> reservations = new ConcurrentHashMap<>();
+
+    private final Map<String, Integer> reservedAccounts = new ConcurrentHashMap<>();
+
+    private volatile boolean available = true;
+
+    public ShardNode(String name, AccountsRepository accountsRepository, NotificationDispatcher notificationDispatcher) {
+        this.name = name;
+        this.accountsRepository = accountsRepository;
+        this.transferService = new TransferService(accountsRepository, notificationDispatcher, accountLocks,
+                new IdempotencyCache(), new TransferMetrics());
+    }
+
+    /**
+     * Makes the node refuse every call like a node which is down, or serve them again.
+     *
+     * @param available
+     */
+    public void setAvailable(boolean available) {
+        this.available = available;
+    }
+
+    /**
+     * Creates the account, or takes back an account which was moved away from this node before.
+     *
+     * @param account
+     * @throws DuplicateAccountIdException if the node holds the account already
+     */
+    public void createAccount(Account account) {
+        checkAvailable();
+        String accountId = account.getAccountId();
+        accountLocks.lock(accountId, accountId);
+        try {
+            if (accountIds.contains(accountId)) {
+                throw new DuplicateAccountIdException("Account id " + accountId + " already exists!");
+            }
+            if (accountsRepository.getAccount(accountId) != null) {
+                accountsRepository.updateAccountsForTransactions(
+                        Collections.singletonList(new Transaction(accountId, account.getBalance())));
+            } else {
+                accountsRepository.createAccount(account);
+            }
+            accountIds.add(accountId);
+        } finally {
+            accountLocks.unlock(accountId, accountId);
+        }
+        accountsRepository.awaitDurable();
+    }
+
+    public Account getAccount(String accountId) {
+        checkAvailable();
+        return accountIds.contains(accountId) ? accountsRepository.getAccount(accountId) : null;
+    }
+
+    /**
+     * @param accountId
+     * @return true if the account is held by this node
+     */
+    public boolean owns(String accountId) {
+        return accountIds.contains(accountId);
+    }
+
+    /**
+     * @return ids of the accounts held by this node
+     */
+    public Set<String> getAccountIds() {
+        return Collections.unmodifiableSet(accountIds);
+    }
+
+    /**
+     * Applies a transfer between two accounts of this node.
+     *
+     * @param transfer
+     * @return result of the transfer
+     */
+    public TransferResult transfer(Transfer transfer) {
+        checkAvailable();
+        if (!owns(transfer.getAccountFromId()) || !owns(transfer.getAccountToId())) {
+            return TransferResult.rejected(TransferRejection.NO_ACCOUNT, "Account is not held by node " + name);
+        }
+        return transferService.tryTransfer(transfer);
+    }
+
+    /**
+     * Reserves the part of a transfer on an account of this node, a negative amount is a debit which leaves the
+     * account at once, a positive amount a credit applied on commit.
+     *
+     * @param transactionId id of the transfer given by the router
+     * @param accountId
+     * @param amount
+     * @param counterpartId account on the other side of the transfer
+     * @return {@link TransferResult#OK} if reserved, the rejection otherwise
+     */
+    public TransferResult prepare(long transactionId, String accountId, BigDecimal amount, String counterpartId) {
+        checkAvailable();
+        accountLocks.lock(accountId, accountId);
+        try {
+            Account account = getAccount(accountId);
+            if (account == null) {
+                return TransferResult.rejected(TransferRejection.NO_ACCOUNT,
+                        "Account " + accountId + " do not exists");
+            }
+            if (amount.signum() < 0) {
+                if (account.getBalance().add(amount).signum() < 0) {
+                    return TransferResult.rejected(TransferRejection.INSUFFICIENT_MONEY,
+                            "Insufficient money to transfer");
+                }
+                try {
+                    accountsRepository.updateAccountsForTransactions(
+                            Collections.singletonList(new Transaction(accountId, amount)));
+                } catch (AmountOutOfRangeException ex) {
+                    return TransferResult.rejected(TransferRejection.AMOUNT_OUT_OF_RANGE, ex.getMessage());
+                }
+            }
+            reservations.put(transactionId, new Reservation(accountId, amount, counterpartId));
+            reservedAccounts.merge(accountId, 1, Integer::sum);
+        } finally {
+            accountLocks.unlock(accountId, accountId);
+        }
+        accountsRepository.awaitDurable();
+        return TransferResult.OK;
+    }
+
+    /**
+     * Completes the reserved part of the transfer, nothing if it is already decided.
+     *
+     * @param transactionId
+     */
+    public void commit(long transactionId) {
+        checkAvailable();
+        Reservation reservation = reservations.remove(transactionId);
+        if (reservation == null) {
+            return;
+        }
+        String accountId = reservation.accountId;
+        accountLocks.lock(accountId, accountId);
+        try {
+            if (reservation.amount.signum() > 0) {
+                accountsRepository.updateAccountsForTransactions(
+                        Collections.singletonList(new Transaction(accountId, reservation.amount)));
+            }
+            transferService.getTransactionHistory().record(accountId, reservation.counterpartId, reservation.amount);
+            release(accountId);
+        } finally {
+            accountLocks.unlock(accountId, accountId);
+        }
+        accountsRepository.awaitDurable();
+        Account account = accountsRepository.getAccount(accountId);
+        transferService.getNotificationDispatcher().dispatch(account, reservation.amount.signum() < 0
+                ? "Amount " + reservation.amount.negate() + " is transferred to account ID " + reservation.counterpartId
+                : "Amount " + reservation.amount + " is transferred from account ID " + reservation.counterpartId);
+    }
+
+    /**
+     * Gives back the reserved part of the transfer, nothing if it is already decided.
+     *
+     * @param transactionId
+     */
+    public void abort(long transactionId) {
+        checkAvailable();
+        Reservation reservation = reservations.remove(transactionId);
+        if (reservation == null) {
+            return;
+        }
+        String accountId = reservation.accountId;
+        accountLocks.lock(accountId, accountId);
+        try {
+            if (reservation.amount.signum() < 0) {
+                accountsRepository.updateAccountsForTransactions(
+                        Collections.singletonList(new Transaction(accountId, reservation.amount.negate())));
+            }
+            release(accountId);
+        } finally {
+            accountLocks.unlock(accountId, accountId);
+        }
+        accountsRepository.awaitDurable();
+    }
+
+    /**
+     * Resolves the reservations older than the timeout with the decision of the router.
+     *
+     * @param timeoutMillis
+     * @param decisionOf decision of the router for a transaction id
+     */
+    public void resolveExpired(long timeoutMillis, LongFunction<Decision> decisionOf) {
+        checkAvailable();
+        long expired = System.currentTimeMillis() - timeoutMillis;
+        for (Map.Entry<Long, Reservation> entry : reservations.entrySet()) {
+            if (entry.getValue().createdMillis > expired) {
+                continue;
+            }
+            Decision decision = decisionOf.apply(entry.getKey());
+            log.warn("Resolving expired reservation {} on node {} with {}", entry.getKey(), name, decision);
+            if (decision == Decision.COMMIT) {
+                commit(entry.getKey());
+            } else if (decision == Decision.ABORT) {
+                abort(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * @param accountId
+     * @return true if a transfer reserved on the account is not decided yet
+     */
+    public boolean isReserved(String accountId) {
+        return reservedAccounts.containsKey(accountId);
+    }
+
+    /**
+     * Hands the account over for a move to another node: the balance is taken out and the account is no longer
+     * served here.
+     *
+     * @param accountId
+     * @return the account with its balance, null if it is not held here or has open reservations
+     */
+    public Account handOver(String accountId) {
+        checkAvailable();
+        accountLocks.lock(accountId, accountId);
+        try {
+            if (!accountIds.contains(accountId) || isReserved(accountId)) {
+                return null;
+            }
+            Account account = accountsRepository.getAccount(accountId);
+            accountsRepository.updateAccountsForTransactions(
+                    Collections.singletonList(new Transaction(accountId, account.getBalance().negate())));
+            accountIds.remove(accountId);
+            return account;
+        } finally {
+            accountLocks.unlock(accountId, accountId);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private void release(String accountId) {
+        reservedAccounts.computeIfPresent(accountId, (id, count) -> count == 1 ? null : count - 1);
+    }
+
+    private void checkAvailable() {
+        if (!available) {
+            throw new ShardUnavailableException("Node " + name + " is unavailable");
+        }
+    }
+
+    private static final class Reservation {
+
+        private final String accountId;
+
+        private final BigDecimal amount;
+
+        private final String counterpartId;
+
+        private final long createdMillis = System.currentTimeMillis();
+
+        private Reservation(String accountId, BigDecimal amount, String counterpartId) {
+            this.accountId = accountId;
+            this.amount = amount;
+            this.counterpartId = counterpartId;
+        }
+    }
+}
@@ -0,0 +1,467 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferRejection;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.ShardUnavailableException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class spreads the accounts over {@link ShardNode}s by a {@link ConsistentHashRing} of their ids, in front of
+ * the accounts and transfer services of the nodes.
+ * A transfer between two accounts of one node is applied by that node. A transfer across nodes runs two phases:
+ * both nodes prepare their part, then the router records the decision to commit and both nodes commit. A node which
+ * can not be reached before the decision aborts the transfer, a commit which can not be delivered is retried by
+ * {@link #recover()} until it is. Reservations left undecided, e.g. by a node missing the abort, are resolved by the
+ * nodes after the reservation timeout with the decision of the router, abort for a transfer it does not know.
+ * The decisions are kept in memory only, a restarted router lets the nodes abort what it had not finished.
+ * Adding or removing a node rebalances while the router keeps serving: until every account is moved, an account is
+ * looked up on its old node and, once moved, on its new one. Every account is moved holding the write lock of its
+ * routing stripe, which requests on the account hold for reading. An account handed over by its old node is kept by
+ * the router until the new node, or the old one again, has taken it, so a node failing in the middle of a move does not
+ * lose it; meanwhile it is read from the router and its transfers are rejected as unavailable.
+ */
+@Slf4j
+public class ShardRouter implements Closeable {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private static final int ROUTING_STRIPES = 1024;
+
+    private static final long REBALANCE_RETRY_MILLIS = 10;
+
+    private final int virtualNodes;
+
+    private final long reservationTimeoutMillis;
+
+    private final ReentrantReadWriteLock[] routingLocks = new ReentrantReadWriteLock[ROUTING_STRIPES];
+
+    private final AtomicLong transactionIds = new AtomicLong();
+
+    /**
+     * PENDING while preparing, COMMIT until every node has committed, absent once finished or aborted.
+     */
+    private final Map<Long, ShardNode.Decision> decisions = new ConcurrentHashMap<>();
+
+    private final Map<Long, ShardNode[]> unfinishedCommits = new ConcurrentHashMap<>();
+
+    /**
+     * Accounts handed over by their old node and not taken by a node yet, by id.
+     */
+    private final Map<String, Account> movingAccounts = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService recoveryScheduler;
+
+    private volatile ConsistentHashRing<ShardNode> ring;
+
+    /**
+     * Ring being rebalanced to, null when not rebalancing.
+     */
+    private volatile ConsistentHashRing<ShardNode> target;
+
+    /**
+     * Starts the router with the nodes, which are empty or hold the accounts hashed to them.
+     *
+     * @param nodes
+     * @param virtualNodes number of points of every node on the ring
+     * @param reservationTimeoutMillis time after which the nodes resolve an undecided reservation, recovery runs at
+     *                                 half this interval
+     */
+    public ShardRouter(List<ShardNode> nodes, int virtualNodes, long reservationTimeoutMillis) {
+        this.virtualNodes = virtualNodes;
+        this.reservationTimeoutMillis = reservationTimeoutMillis;
+        this.ring = new ConsistentHashRing<>(nodes, ShardNode::getName, virtualNodes);
+        for (int i = 0; i < ROUTING_STRIPES; i++) {
+            routingLocks[i] = new ReentrantReadWriteLock();
+        }
+        this.recoveryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shard-router-recovery");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, reservationTimeoutMillis / 2);
+        this.recoveryScheduler.scheduleWithFixedDelay(this::recover, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return nodes of the ring, the nodes being rebalanced to while rebalancing
+     */
+    public List<ShardNode> getNodes() {
+        ConsistentHashRing<ShardNode> rebalancing = target;
+        return rebalancing != null ? rebalancing.getNodes() : ring.getNodes();
+    }
+
+    /**
+     * Creates the account on the node it hashes to.
+     *
+     * @param account
+     * @throws DuplicateAccountIdException if the account exists
+     * @throws ShardUnavailableException if the node is unavailable
+     */
+    public void createAccount(Account account) {
+        String accountId = account.getAccountId();
+        ReentrantReadWriteLock.ReadLock lock = routingLock(accountId).readLock();
+        lock.lock();
+        try {
+            if (movingAccounts.containsKey(accountId)) {
+                throw new DuplicateAccountIdException("Account id " + accountId + " already exists!");
+            }
+            ConsistentHashRing<ShardNode> rebalancing = target;
+            ShardNode current = ring.nodeFor(accountId);
+            if (rebalancing == null) {
+                current.createAccount(account);
+                return;
+            }
+            if (current.owns(accountId)) {
+                throw new DuplicateAccountIdException("Account id " + accountId + " already exists!");
+            }
+            rebalancing.nodeFor(accountId).createAccount(account);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param accountId
+     * @return the account, null if it does not exist
+     * @throws ShardUnavailableException if the node holding it is unavailable
+     */
+    public Account getAccount(String accountId) {
+        ReentrantReadWriteLock.ReadLock lock = routingLock(accountId).readLock();
+        lock.lock();
+        try {
+            Account moving = movingAccounts.get(accountId);
+            if (moving != null) {
+                return new Account(accountId, moving.getBalance());
+            }
+            return nodeOf(accountId).getAccount(accountId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the node holding the account, the node it hashes to if it does not exist.
+     *
+     * @param accountId
+     * @return node
+     */
+    public ShardNode nodeOf(String accountId) {
+        // target before ring, the ring is switched to the target before the target is cleared
+        ConsistentHashRing<ShardNode> rebalancing = target;
+        ShardNode node = ring.nodeFor(accountId);
+        if (rebalancing != null && !node.owns(accountId)) {
+            node = rebalancing.nodeFor(accountId);
+        }
+        return node;
+    }
+
+    /**
+     * Applies the transfer on the node of both accounts, or across their nodes in two phases.
+     *
+     * @param transfer
+     * @return result of the transfer
+     */
+    public TransferResult tryTransfer(Transfer transfer) {
+        String fromId = transfer.getAccountFromId();
+        String toId = transfer.getAccountToId();
+        if (fromId == null || toId == null || transfer.getAmount() == null) {
+            return TransferResult.rejected(TransferRejection.INVALID, "Transfer misses an account id or the amount");
+        }
+        if (fromId.equals(toId)) {
+            return TransferResult.rejected(TransferRejection.SAME_ACCOUNT, "Can not transfer amount to same account");
+        }
+        if (transfer.getAmount().signum() <= 0) {
+            return TransferResult.rejected(TransferRejection.NOT_POSITIVE_AMOUNT, "Cannot transfer negative amount");
+        }
+        int fromStripe = stripeOf(fromId);
+        int toStripe = stripeOf(toId);
+        ReentrantReadWriteLock.ReadLock first = routingLocks[Math.min(fromStripe, toStripe)].readLock();
+        ReentrantReadWriteLock.ReadLock second = routingLocks[Math.max(fromStripe, toStripe)].readLock();
+        first.lock();
+        if (second != first) {
+            second.lock();
+        }
+        try {
+            if (movingAccounts.containsKey(fromId) || movingAccounts.containsKey(toId)) {
+                return TransferResult.rejected(TransferRejection.UNAVAILABLE, "Account is being moved to another node");
+            }
+            ShardNode fromNode = nodeOf(fromId);
+            ShardNode toNode = nodeOf(toId);
+            if (fromNode == toNode) {
+                return fromNode.transfer(transfer);
+            }
+            return transferAcross(transfer, fromNode, toNode);
+        } catch (ShardUnavailableException ex) {
+            return TransferResult.rejected(TransferRejection.UNAVAILABLE, ex.getMessage());
+        } finally {
+            if (second != first) {
+                second.unlock();
+            }
+            first.unlock();
+        }
+    }
+
+    /**
+     * @param transactionId
+     * @return decision of the router for the transfer, ABORT if it does not know it
+     */
+    public ShardNode.Decision decisionOf(long transactionId) {
+        return decisions.getOrDefault(transactionId, ShardNode.Decision.ABORT);
+    }
+
+    /**
+     * Delivers the commits which could not be delivered and lets the nodes resolve their expired reservations.
+     * Runs periodically, nodes which are unavailable are left for the next run.
+     */
+    public void recover() {
+        for (Map.Entry<Long, ShardNode[]> entry : unfinishedCommits.entrySet()) {
+            if (commitAll(entry.getKey(), entry.getValue())) {
+                unfinishedCommits.remove(entry.getKey());
+                decisions.remove(entry.getKey());
+            }
+        }
+        Set<ShardNode> nodes = new LinkedHashSet<>(ring.getNodes());
+        ConsistentHashRing<ShardNode> rebalancing = target;
+        if (rebalancing != null) {
+            nodes.addAll(rebalancing.getNodes());
+        }
+        for (ShardNode node : nodes) {
+            try {
+                node.resolveExpired(reservationTimeoutMillis, this::decisionOf);
+            } catch (ShardUnavailableException ex) {
+                log.debug("Node {} unavailable for recovery", node);
+            } catch (RuntimeException ex) {
+                log.error("Error in resolving the reservations of node {}", node, ex);
+            }
+        }
+    }
+
+    /**
+     * Adds the node and moves the accounts which hash to it.
+     *
+     * @param node
+     * @throws IllegalStateException if an earlier rebalancing is not finished or the accounts can not all be moved
+     */
+    public synchronized void addNode(ShardNode node) {
+        List<ShardNode> nodes = new ArrayList<>(ring.getNodes());
+        nodes.add(node);
+        startRebalancing(nodes);
+    }
+
+    /**
+     * Moves the accounts of the node to the other nodes and removes it.
+     *
+     * @param node
+     * @throws IllegalStateException if an earlier rebalancing is not finished or the accounts can not all be moved
+     */
+    public synchronized void removeNode(ShardNode node) {
+        List<ShardNode> nodes = new ArrayList<>(ring.getNodes());
+        if (!nodes.remove(node)) {
+            throw new IllegalArgumentException("Node " + node + " is not in the ring");
+        }
+        startRebalancing(nodes);
+    }
+
+    /**
+     * Moves the accounts which are not on the node they hash to, retrying accounts with undecided transfers and on
+     * unavailable nodes until the timeout.
+     *
+     * @param timeoutMillis
+     * @throws IllegalStateException if accounts are left to move, the rebalancing can be resumed
+     */
+    public synchronized void rebalance(long timeoutMillis) {
+        ConsistentHashRing<ShardNode> rebalancing = target;
+        if (rebalancing == null) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            int left = 0;
+            int moved = 0;
+            for (String accountId : new ArrayList<>(movingAccounts.keySet())) {
+                if (place(accountId, rebalancing.nodeFor(accountId))) {
+                    moved++;
+                } else {
+                    left++;
+                }
+            }
+            for (ShardNode node : ring.getNodes()) {
+                for (String accountId : new ArrayList<>(node.getAccountIds())) {
+                    ShardNode destination = rebalancing.nodeFor(accountId);
+                    if (destination == node) {
+                        continue;
+                    }
+                    if (move(accountId, node, destination)) {
+                        moved++;
+                    } else {
+                        left++;
+                    }
+                }
+            }
+            log.info("Moved {} accounts to {}, {} left", moved, rebalancing.getNodes(), left);
+            if (left == 0) {
+                ring = rebalancing;
+                target = null;
+                return;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException(left + " accounts are left to move");
+            }
+            recover();
+            try {
+                Thread.sleep(REBALANCE_RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Rebalancing interrupted with " + left + " accounts left to move");
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        recoveryScheduler.shutdownNow();
+    }
+
+    private void startRebalancing(List<ShardNode> nodes) {
+        if (target != null) {
+            throw new IllegalStateException("Rebalancing to " + target.getNodes() + " is not finished");
+        }
+        target = new ConsistentHashRing<>(nodes, ShardNode::getName, virtualNodes);
+        rebalance(reservationTimeoutMillis * 10);
+    }
+
+    private boolean move(String accountId, ShardNode source, ShardNode destination) {
+        ReentrantReadWriteLock.WriteLock lock = routingLock(accountId).writeLock();
+        lock.lock();
+        try {
+            Account account = source.handOver(accountId);
+            if (account == null) {
+                return !source.owns(accountId);
+            }
+            movingAccounts.put(accountId, account);
+            if (place(accountId, destination)) {
+                return true;
+            }
+            // back to the old node, the account stays with the router if that fails too
+            place(accountId, source);
+            return false;
+        } catch (ShardUnavailableException ex) {
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Creates a handed over account on the node, the account stays with the router if the node does not take it.
+     *
+     * @return true if the node holds the account
+     */
+    private boolean place(String accountId, ShardNode node) {
+        ReentrantReadWriteLock.WriteLock lock = routingLock(accountId).writeLock();
+        lock.lock();
+        try {
+            Account account = movingAccounts.get(accountId);
+            if (account == null) {
+                return true;
+            }
+            try {
+                node.createAccount(account);
+            } catch (ShardUnavailableException ex) {
+                log.warn("Node {} unavailable to take account {}", node, accountId);
+            } catch (RuntimeException ex) {
+                // the node may hold the account already, e.g. if only making it durable failed
+                log.error("Error in moving account {} to node {}", accountId, node, ex);
+            }
+            if (node.owns(accountId)) {
+                movingAccounts.remove(accountId);
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private TransferResult transferAcross(Transfer transfer, ShardNode fromNode, ShardNode toNode) {
+        long transactionId = transactionIds.incrementAndGet();
+        String fromId = transfer.getAccountFromId();
+        String toId = transfer.getAccountToId();
+        decisions.put(transactionId, ShardNode.Decision.PENDING);
+        try {
+            TransferResult debit = fromNode.prepare(transactionId, fromId, transfer.getAmount().negate(), toId);
+            if (!debit.isOk()) {
+                decisions.remove(transactionId);
+                return debit;
+            }
+            TransferResult credit = toNode.prepare(transactionId, toId, transfer.getAmount(), fromId);
+            if (!credit.isOk()) {
+                decisions.remove(transactionId);
+                fromNode.abort(transactionId);
+                return credit;
+            }
+        } catch (ShardUnavailableException ex) {
+            decisions.remove(transactionId);
+            abortQuietly(transactionId, fromNode);
+            abortQuietly(transactionId, toNode);
+            throw ex;
+        }
+        decisions.put(transactionId, ShardNode.Decision.COMMIT);
+        ShardNode[] participants = {fromNode, toNode};
+        if (commitAll(transactionId, participants)) {
+            decisions.remove(transactionId);
+        } else {
+            unfinishedCommits.put(transactionId, participants);
+        }
+        return TransferResult.OK;
+    }
+
+    private boolean commitAll(long transactionId, ShardNode[] participants) {
+        boolean committed = true;
+        for (ShardNode node : participants) {
+            try {
+                node.commit(transactionId);
+            } catch (ShardUnavailableException ex) {
+                log.warn("Commit of transfer {} on node {} is left for recovery", transactionId, node);
+                committed = false;
+            }
+        }
+        return committed;
+    }
+
+    /**
+     * Aborts on a node which may be unavailable, the node then aborts by itself after the reservation timeout.
+     */
+    private static void abortQuietly(long transactionId, ShardNode node) {
+        try {
+            node.abort(transactionId);
+        } catch (ShardUnavailableException ex) {
+            log.warn("Abort of transfer {} on node {} is left to its reservation timeout", transactionId, node);
+        }
+    }
+
+    private ReentrantReadWriteLock routingLock(String accountId) {
+        return routingLocks[stripeOf(accountId)];
+    }
+
+    private static int stripeOf(String accountId) {
+        int h = accountId.hashCode();
+        return (h ^ (h >>> 16)) & (ROUTING_STRIPES - 1);
+    }
+}
@@ -0,0 +1,423 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferRejection;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.exception.AmountOutOfRangeException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class applies transfers on shard threads instead of locking accounts. Accounts are hash partitioned across the
+ * shards and only the thread of a shard changes the balances of its accounts, so it validates and updates them
+ * without any lock. Every shard reads its work from an {@link MpscRing}.
+ * - Both accounts on one shard: the transfer is validated and applied by that shard in one update.
+ * - Accounts on two shards: the shard of the payer validates the transfer and reserves the amount by debiting it,
+ *   then passes the transfer to the shard of the payee, which commits it by crediting the amount. If the credit fails
+ *   the transfer goes back to the payer's shard, which releases the reservation.
+ * While a transfer is between two shards its amount is in neither balance. The steps go through
+ * {@link AccountsRepository#reserve}, {@link AccountsRepository#commitReservation} and
+ * {@link AccountsRepository#releaseReservation}, so a journal recovering from a crash between two steps refunds the
+ * payer instead of losing the amount. A shard waits for the updates of a batch to be durable once, before it
+ * completes the transfers or passes them on. If that wait fails, every transfer of the batch fails with it and the
+ * executor refuses further transfers; a reservation failed this way is refunded when the journal recovers.
+ */
+@Slf4j
+public class ShardedTransferExecutor {
+
+    /**
+     * Validates a transfer with both accounts read by the shard of the payer.
+     */
+    public interface Validation {
+
+        TransferResult validate(Account fromAccount, Account toAccount, BigDecimal amount);
+    }
+
+    private static final int BATCH_SIZE = 256;
+
+    private static final int IDLE_SPINS = 64;
+
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    /**
+     * Ids of the reservations, unique in the process even if several executors share a repository.
+     */
+    private static final AtomicLong RESERVATIONS = new AtomicLong();
+
+    private final AccountsRepository accountsRepository;
+
+    private final Validation validation;
+
+    private final TransactionHistory transactionHistory;
+
+    private final Shard[] shards;
+
+    /**
+     * Transfers submitted and not completed yet, so a shutdown waits for the ones between two shards.
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private volatile boolean running = true;
+
+    /**
+     * Error of the repository which failed the executor, null while it works.
+     */
+    private volatile RuntimeException failure;
+
+    /**
+     * Starts the shard threads.
+     *
+     * @param accountsRepository
+     * @param validation checks the transfer once both accounts exist
+     * @param transactionHistory records every balance change on the shard making it
+     * @param shards number of shard threads
+     * @param capacity number of transfers queued per shard
+     */
+    public ShardedTransferExecutor(AccountsRepository accountsRepository, Validation validation,
+                                   TransactionHistory transactionHistory, int shards, int capacity) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("Number of shards must be positive");
+        }
+        this.accountsRepository = accountsRepository;
+        this.validation = validation;
+        this.transactionHistory = transactionHistory;
+        this.shards = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new Shard(i, capacity);
+        }
+        for (Shard shard : this.shards) {
+            shard.thread.start();
+        }
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Returns the shard owning the account.
+     *
+     * @param accountId
+     * @return shard index
+     */
+    public int shardOf(String accountId) {
+        int h = accountId.hashCode();
+        return ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % shards.length;
+    }
+
+    /**
+     * Queues the transfer on the shard of the payer, waiting while that shard is full.
+     *
+     * @param transfer {@link com.db.awmd.challenge.domain.Transfer}
+     * @return the task, completed with the result once the transfer is applied or rejected
+     * @throws IllegalStateException if the executor is shut down or failed
+     */
+    public Task submit(Transfer transfer) {
+        if (!running) {
+            throw new IllegalStateException("Sharded transfer executor is shut down");
+        }
+        checkFailure();
+        Task task = new Task(transfer);
+        pending.incrementAndGet();
+        Shard shard = shards[shardOf(transfer.getAccountFromId())];
+        while (!shard.ring.offer(task)) {
+            if (failure != null) {
+                pending.decrementAndGet();
+                checkFailure();
+            }
+            LockSupport.unpark(shard.thread);
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+        }
+        shard.wakeUp();
+        return task;
+    }
+
+    private void checkFailure() {
+        RuntimeException failed = failure;
+        if (failed != null) {
+            throw new IllegalStateException("Sharded transfer executor failed", failed);
+        }
+    }
+
+    /**
+     * Stops the shard threads once they have applied the transfers queued so far.
+     *
+     * @throws InterruptedException
+     */
+    public void shutdown() throws InterruptedException {
+        running = false;
+        for (Shard shard : shards) {
+            LockSupport.unpark(shard.thread);
+        }
+        for (Shard shard : shards) {
+            shard.thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    /**
+     * A transfer on its way through the shards.
+     */
+    public static final class Task extends CompletableFuture<TransferResult> {
+
+        private enum Step {
+            RESERVE, COMMIT, RELEASE
+        }
+
+        @Getter
+        private final Transfer transfer;
+
+        /**
+         * Accounts as read before the transfer, set once it is valid.
+         */
+        @Getter
+        private Account fromAccount;
+
+        @Getter
+        private Account toAccount;
+
+        private Step step = Step.RESERVE;
+
+        private long reservationId;
+
+        private TransferResult result;
+
+        private Task(Transfer transfer) {
+            this.transfer = transfer;
+        }
+    }
+
+    private final class Shard implements Runnable {
+
+        private final int index;
+
+        private final MpscRing<Task> ring;
+
+        private final Thread thread;
+
+        private final List<Task> completed = new ArrayList<>(BATCH_SIZE);
+
+        private final List<Task> forwarded = new ArrayList<>(BATCH_SIZE);
+
+        private final ArrayDeque<Task>[] backlog;
+
+        private volatile boolean parked;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Shard(int index, int capacity) {
+            this.index = index;
+            this.ring = new MpscRing<>(capacity);
+            this.backlog = new ArrayDeque[shards.length];
+            this.thread = new Thread(this, "transfer-shard-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        private void wakeUp() {
+            if (parked) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        @Override
+        public void run() {
+            int idle = 0;
+            while (running || pending.get() > 0) {
+                boolean flushed = flushBacklog();
+                int processed = 0;
+                Task task;
+                while (processed < BATCH_SIZE && (task = ring.poll()) != null) {
+                    process(task);
+                    processed++;
+                }
+                if (processed > 0) {
+                    finishBatch();
+                    idle = 0;
+                } else if (!flushed && ++idle > IDLE_SPINS) {
+                    parked = true;
+                    if (ring.isEmpty() && !hasBacklog() && running) {
+                        LockSupport.park(this);
+                    }
+                    parked = false;
+                    idle = 0;
+                } else if (!flushed) {
+                    Thread.yield();
+                }
+            }
+        }
+
+        private void process(Task task) {
+            try {
+                switch (task.step) {
+                    case RESERVE:
+                        reserve(task);
+                        break;
+                    case COMMIT:
+                        commit(task);
+                        break;
+                    default:
+                        release(task);
+                        break;
+                }
+            } catch (RuntimeException ex) {
+                log.error("Error in applying transfer {}", task.transfer, ex);
+                pending.decrementAndGet();
+                task.completeExceptionally(ex);
+            }
+        }
+
+        private void reserve(Task task) {
+            Transfer transfer = task.transfer;
+            Account fromAccount = accountsRepository.getAccount(transfer.getAccountFromId());
+            Account toAccount = accountsRepository.getAccount(transfer.getAccountToId());
+            if (fromAccount == null) {
+                complete(task, TransferResult.rejected(TransferRejection.NO_ACCOUNT,
+                        "Account " + transfer.getAccountFromId() + " do not exists"));
+                return;
+            }
+            if (toAccount == null) {
+                complete(task, TransferResult.rejected(TransferRejection.NO_ACCOUNT,
+                        "Account " + transfer.getAccountToId() + " do not exists"));
+                return;
+            }
+            TransferResult result = validation.validate(fromAccount, toAccount, transfer.getAmount());
+            if (!result.isOk()) {
+                complete(task, result);
+                return;
+            }
+            task.fromAccount = fromAccount;
+            task.toAccount = toAccount;
+            try {
+                if (shardOf(transfer.getAccountToId()) == index) {
+                    accountsRepository.updateAccountsForTransactions(Arrays.asList(
+                            new Transaction(transfer.getAccountFromId(), transfer.getAmount().negate()),
+                            new Transaction(transfer.getAccountToId(), transfer.getAmount())));
+                    transactionHistory.recordTransfer(transfer.getAccountFromId(), transfer.getAccountToId(),
+                            transfer.getAmount());
+                    complete(task, TransferResult.OK);
+                } else {
+                    task.reservationId = RESERVATIONS.incrementAndGet();
+                    accountsRepository.reserve(task.reservationId, transfer);
+                    transactionHistory.record(transfer.getAccountFromId(), transfer.getAccountToId(),
+                            transfer.getAmount().negate());
+                    task.step = Task.Step.COMMIT;
+                    forwarded.add(task);
+                }
+            } catch (AmountOutOfRangeException ex) {
+                complete(task, TransferResult.rejected(TransferRejection.AMOUNT_OUT_OF_RANGE, ex.getMessage()));
+            }
+        }
+
+        private void commit(Task task) {
+            Transfer transfer = task.transfer;
+            try {
+                accountsRepository.commitReservation(task.reservationId, transfer);
+                transactionHistory.record(transfer.getAccountToId(), transfer.getAccountFromId(), transfer.getAmount());
+                complete(task, TransferResult.OK);
+            } catch (AmountOutOfRangeException ex) {
+                task.result = TransferResult.rejected(TransferRejection.AMOUNT_OUT_OF_RANGE, ex.getMessage());
+                task.step = Task.Step.RELEASE;
+                forwarded.add(task);
+            }
+        }
+
+        private void release(Task task) {
+            Transfer transfer = task.transfer;
+            accountsRepository.releaseReservation(task.reservationId, transfer);
+            // the payer's history shows the reservation and its refund
+            transactionHistory.record(transfer.getAccountFromId(), transfer.getAccountToId(), transfer.getAmount());
+            complete(task, task.result);
+        }
+
+        private void complete(Task task, TransferResult result) {
+            task.result = result;
+            completed.add(task);
+        }
+
+        /**
+         * Makes the updates of the batch durable, then completes its transfers and passes on the others. If they can
+         * not be made durable, the transfers of the batch fail and so does the executor.
+         */
+        private void finishBatch() {
+            try {
+                accountsRepository.awaitDurable();
+            } catch (RuntimeException ex) {
+                log.error("Error in making transfers durable, no transfer is accepted anymore", ex);
+                failure = ex;
+                fail(completed, ex);
+                fail(forwarded, ex);
+                return;
+            }
+            for (Task task : completed) {
+                pending.decrementAndGet();
+                task.complete(task.result);
+            }
+            completed.clear();
+            for (Task task : forwarded) {
+                String accountId = task.step == Task.Step.COMMIT
+                        ? task.transfer.getAccountToId() : task.transfer.getAccountFromId();
+                forward(shards[shardOf(accountId)], task);
+            }
+            forwarded.clear();
+        }
+
+        private void fail(List<Task> tasks, RuntimeException ex) {
+            for (Task task : tasks) {
+                pending.decrementAndGet();
+                task.completeExceptionally(ex);
+            }
+            tasks.clear();
+        }
+
+        private void forward(Shard target, Task task) {
+            ArrayDeque<Task> tasks = backlog[target.index];
+            // a full ring never blocks a shard, that could deadlock two shards sending to each other
+            if ((tasks == null || tasks.isEmpty()) && target.ring.offer(task)) {
+                target.wakeUp();
+                return;
+            }
+            if (tasks == null) {
+                tasks = backlog[target.index] = new ArrayDeque<>();
+            }
+            tasks.add(task);
+        }
+
+        private boolean flushBacklog() {
+            boolean flushed = false;
+            for (int i = 0; i < backlog.length; i++) {
+                ArrayDeque<Task> tasks = backlog[i];
+                boolean offered = false;
+                while (tasks != null && !tasks.isEmpty() && shards[i].ring.offer(tasks.peek())) {
+                    tasks.poll();
+                    offered = true;
+                }
+                if (offered) {
+                    shards[i].wakeUp();
+                    flushed = true;
+                }
+            }
+            return flushed;
+        }
+
+        private boolean hasBacklog() {
+            for (ArrayDeque<Task> pending : backlog) {
+                if (pending != null && !pending.isEmpty()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.db.awmd.challenge.service;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class holds a fixed array of locks which are shared by the accounts hashing to the same stripe.
+ * Locks for several accounts are always taken in ascending stripe order, so two transfers can never wait on each
+ * other in a cycle, while transfers touching different stripes run fully in parallel.
+ */
+public class StripedAccountLocks {
+
+    public static final int DEFAULT_STRIPES = 1024;
+
+    private final ReentrantLock[] locks;
+
+    private final int mask;
+
+    public StripedAccountLocks() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes number of locks, rounded up to the next power of two
+     */
+    public StripedAccountLocks(int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Number of lock stripes must be positive");
+        }
+        int size = Integer.highestOneBit(stripes);
+        if (size < stripes) {
+            size <<= 1;
+        }
+        this.locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.locks[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Returns the stripe index guarding the given account id.
+     *
+     * @param accountId
+     * @return stripe index
+     */
+    public int stripeOf(String accountId) {
+        int h = accountId.hashCode();
+        // spread the higher bits, same as HashMap does, so similar ids do not pile up on one stripe
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Locks the stripes of both accounts in ascending stripe order. Must be paired with
+     * {@link #unlock(String, String)} in a finally block.
+     *
+     * @param firstAccountId
+     * @param secondAccountId
+     */
+    public void lock(String firstAccountId, String secondAccountId) {
+        int first = stripeOf(firstAccountId);
+        int second = stripeOf(secondAccountId);
+        if (first == second) {
+            locks[first].lock();
+        } else if (first < second) {
+            locks[first].lock();
+            locks[second].lock();
+        } else {
+            locks[second].lock();
+            locks[first].lock();
+        }
+    }
+
+    /**
+     * Releases the stripes taken by {@link #lock(String, String)}.
+     *
+     * @param firstAccountId
+     * @param secondAccountId
+     */
+    public void unlock(String firstAccountId, String secondAccountId) {
+        int first = stripeOf(firstAccountId);
+        int second = stripeOf(secondAccountId);
+        locks[first].unlock();
+        if (first != second) {
+            locks[second].unlock();
+        }
+    }
+
+    /**
+     * Locks the stripes of all the accounts in ascending stripe order, every stripe once. Must be paired with
+     * {@link #unlock(int[])} in a finally block.
+     *
+     * @param accountIds
+     * @return the stripes locked
+     */
+    public int[] lock(Collection<String> accountIds) {
+        int[] stripes = new int[accountIds.size()];
+        int count = 0;
+        for (String accountId : accountIds) {
+            stripes[count++] = stripeOf(accountId);
+        }
+        Arrays.sort(stripes);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || stripes[distinct - 1] != stripes[i]) {
+                stripes[distinct++] = stripes[i];
+            }
+        }
+        int[] locked = Arrays.copyOf(stripes, distinct);
+        for (int stripe : locked) {
+            locks[stripe].lock();
+        }
+        return locked;
+    }
+
+    /**
+     * Releases the stripes taken by {@link #lock(Collection)}.
+     *
+     * @param stripes
+     */
+    public void unlock(int[] stripes) {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            locks[stripes[i]].unlock();
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.exception.AmountOutOfRangeException;
+import com.db.awmd.challenge.repository.AccountIdIndex;
+import com.db.awmd.challenge.repository.MinorUnits;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class keeps the transactions of every account, append only, in chunks of parallel arrays:
+ * - timestamp in epoch milliseconds
+ * - slot of the counterpart account in an {@link AccountIdIndex}
+ * - amount in minor units and its scale
+ * Every transaction of an account has a sequence number, 0 for its first one, which is the cursor for reading the
+ * history page by page, newest first. Chunks start small and double up to {@link #MAX_CHUNK_SIZE} entries. The oldest
+ * chunk of an account is dropped once the account keeps max-entries without it, or once all its entries are older
+ * than the retention.
+ * The history is off by default: max-entries per account times the number of accounts is no bound at scale.
+ */
+@Component
+@Slf4j
+public class TransactionHistory {
+
+    /**
+     * Receives the entries of a page, without any object built per entry besides the counterpart id.
+     */
+    public interface Visitor {
+
+        void visit(long sequence, long timestamp, String counterpartId, long amountUnits, int amountScale)
+                throws IOException;
+    }
+
+    static final int MIN_CHUNK_SIZE = 8;
+
+    static final int MAX_CHUNK_SIZE = 256;
+
+    private static final int PAGE_SHIFT = 12;
+
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+    private final int maxEntries;
+
+    private final long retentionMillis;
+
+    private final int scale;
+
+    private final AccountIdIndex accountIds = new AccountIdIndex();
+
+    private volatile AccountHistory[][] pages = new AccountHistory[0][];
+
+    /**
+     * Keeps no history.
+     */
+    public TransactionHistory() {
+        this(0, 0, MinorUnits.DEFAULT_SCALE);
+    }
+
+    /**
+     * @param maxEntries transactions kept per account at least, 0 keeps no history
+     * @param retentionSeconds age after which transactions are dropped, 0 keeps them regardless of age
+     * @param scale number of decimal places of the minor units, amounts with more are kept at their own scale
+     */
+    @Autowired
+    public TransactionHistory(@Value("${accounts.history.max-entries:0}") int maxEntries,
+                              @Value("${accounts.history.retention-seconds:0}") long retentionSeconds,
+                              @Value("${accounts.repository.scale:2}") int scale) {
+        this.maxEntries = maxEntries;
+        this.retentionMillis = TimeUnit.SECONDS.toMillis(retentionSeconds);
+        this.scale = scale;
+    }
+
+    /**
+     * Records both sides of a transfer.
+     *
+     * @param accountFromId
+     * @param accountToId
+     * @param amount
+     */
+    public void recordTransfer(String accountFromId, String accountToId, BigDecimal amount) {
+        record(accountFromId, accountToId, amount.negate());
+        record(accountToId, accountFromId, amount);
+    }
+
+    /**
+     * Records one transaction of an account.
+     *
+     * @param accountId
+     * @param counterpartId account on the other side
+     * @param amount added to the account, negative for a debit
+     */
+    public void record(String accountId, String counterpartId, BigDecimal amount) {
+        if (maxEntries <= 0) {
+            return;
+        }
+        int amountScale = Math.max(scale, amount.scale());
+        long units;
+        try {
+            if (amountScale > Byte.MAX_VALUE) {
+                throw new AmountOutOfRangeException("Scale of " + amount + " is too large");
+            }
+            units = MinorUnits.toMinorUnits(amount, amountScale);
+        } catch (AmountOutOfRangeException ex) {
+            log.warn("Transaction of {} not kept in the history: {}", accountId, ex.getMessage());
+            return;
+        }
+        historyOf(slotOf(accountId)).append(System.currentTimeMillis(), slotOf(counterpartId), units,
+                (byte) amountScale);
+    }
+
+    /**
+     * Forgets the transactions of the account, for an account created again after the accounts were cleared.
+     *
+     * @param accountId
+     */
+    public synchronized void clear(String accountId) {
+        int slot = accountIds.slotOf(accountId);
+        if (slot >= 0 && (slot >>> PAGE_SHIFT) < pages.length) {
+            pages[slot >>> PAGE_SHIFT][slot & (PAGE_SIZE - 1)] = null;
+        }
+    }
+
+    /**
+     * Forgets the transactions of the accounts, taking the lock once for all of them.
+     *
+     * @param accountIds
+     */
+    public synchronized void clear(Collection<String> accountIds) {
+        for (String accountId : accountIds) {
+            clear(accountId);
+        }
+    }
+
+    /**
+     * Visits the transactions of the account older than the cursor, newest first.
+     *
+     * @param accountId
+     * @param before sequence of the newest transaction not to visit, {@link Long#MAX_VALUE} to start at the newest
+     * @param limit maximum number of transactions to visit
+     * @param visitor
+     * @return cursor of the next page, -1 if there are no older transactions
+     * @throws IOException thrown by the visitor
+     */
+    public long read(String accountId, long before, int limit, Visitor visitor) throws IOException {
+        int slot = accountIds.slotOf(accountId);
+        AccountHistory history = slot < 0 ? null : existingHistoryOf(slot);
+        if (history == null) {
+            return -1;
+        }
+        Chunk[] chunks;
+        long end;
+        synchronized (history) {
+            history.expire(System.currentTimeMillis());
+            chunks = history.chunks.toArray(new Chunk[0]);
+            end = history.next;
+        }
+        long sequence = Math.min(before, end) - 1;
+        int visited = 0;
+        for (int i = chunks.length - 1; i >= 0 && visited < limit; i--) {
+            Chunk chunk = chunks[i];
+            for (; sequence >= chunk.base && visited < limit; sequence--) {
+                int index = (int) (sequence - chunk.base);
+                visitor.visit(sequence, chunk.timestamps[index], accountIds.idOf(chunk.counterparts[index]),
+                        chunk.amounts[index], chunk.scales[index]);
+                visited++;
+            }
+        }
+        return chunks.length > 0 && sequence >= chunks[0].base ? sequence + 1 : -1;
+    }
+
+    private int slotOf(String accountId) {
+        int slot = accountIds.slotOf(accountId);
+        if (slot < 0) {
+            slot = accountIds.add(accountId, added -> { });
+        }
+        return slot >= 0 ? slot : accountIds.slotOf(accountId);
+    }
+
+    private AccountHistory existingHistoryOf(int slot) {
+        AccountHistory[][] current = pages;
+        int page = slot >>> PAGE_SHIFT;
+        return page < current.length ? current[page][slot & (PAGE_SIZE - 1)] : null;
+    }
+
+    private AccountHistory historyOf(int slot) {
+        AccountHistory history = existingHistoryOf(slot);
+        return history != null ? history : createHistory(slot);
+    }
+
+    private synchronized AccountHistory createHistory(int slot) {
+        int page = slot >>> PAGE_SHIFT;
+        AccountHistory[][] current = pages;
+        if (page >= current.length) {
+            AccountHistory[][] grown = new AccountHistory[page + 1][];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            for (int i = current.length; i < grown.length; i++) {
+                grown[i] = new AccountHistory[PAGE_SIZE];
+            }
+            current = grown;
+        }
+        AccountHistory history = current[page][slot & (PAGE_SIZE - 1)];
+        if (history == null) {
+            history = new AccountHistory();
+            current[page][slot & (PAGE_SIZE - 1)] = history;
+        }
+        // publishes the new history with the volatile write
+        pages = current;
+        return history;
+    }
+
+    /**
+     * Entries of one account, from sequence base on.
+     */
+    private static final class Chunk {
+
+        private final long base;
+
+        private final long[] timestamps;
+
+        private final int[] counterparts;
+
+        private final long[] amounts;
+
+        private final byte[] scales;
+
+        private Chunk(long base, int size) {
+            this.base = base;
+            this.timestamps = new long[size];
+            this.counterparts = new int[size];
+            this.amounts = new long[size];
+            this.scales = new byte[size];
+        }
+    }
+
+    private final class AccountHistory {
+
+        private final ArrayDeque<Chunk> chunks = new ArrayDeque<>();
+
+        private long next;
+
+        private synchronized void append(long timestamp, int counterpart, long units, byte amountScale) {
+            Chunk last = chunks.peekLast();
+            if (last == null || next - last.base == last.timestamps.length) {
+                int size = last == null ? MIN_CHUNK_SIZE : Math.min(MAX_CHUNK_SIZE, last.timestamps.length * 2);
+                last = new Chunk(next, size);
+                chunks.addLast(last);
+                expire(timestamp);
+            }
+            int index = (int) (next - last.base);
+            last.timestamps[index] = timestamp;
+            last.counterparts[index] = counterpart;
+            last.amounts[index] = units;
+            last.scales[index] = amountScale;
+            next++;
+        }
+
+        /**
+         * Drops the oldest chunks which are not needed for max entries or are past the retention, never the newest.
+         */
+        private void expire(long now) {
+            while (chunks.size() > 1) {
+                Iterator<Chunk> iterator = chunks.iterator();
+                Chunk oldest = iterator.next();
+                Chunk second = iterator.next();
+                boolean full = next - second.base >= maxEntries;
+                boolean expired = retentionMillis > 0
+                        && oldest.timestamps[oldest.timestamps.length - 1] < now - retentionMillis;
+                if (!full && !expired) {
+                    return;
+                }
+                chunks.pollFirst();
+            }
+        }
+    }
+}
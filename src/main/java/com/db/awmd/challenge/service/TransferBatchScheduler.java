@@ -0,0 +1,141 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferRejection;
+import com.db.awmd.challenge.domain.TransferResult;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+
+/**
+ * This class runs a batch of transfers in conflict free waves. A transfer is put in the wave after the last wave
+ * which touches one of its accounts, so the transfers of a wave never share an account and run in parallel on the
+ * fork join pool without contending, while the transfers of one account are applied in submission order.
+ */
+@Slf4j
+public class TransferBatchScheduler {
+
+    /**
+     * Waves smaller than this are run in the calling thread.
+     */
+    private static final int PARALLEL_THRESHOLD = 64;
+
+    private final ForkJoinPool pool;
+
+    public TransferBatchScheduler(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Runs the transfers and returns the result of every transfer, in the order of the batch.
+     * Transfers without both account ids or amount are rejected with {@link TransferRejection#INVALID}, a transfer
+     * whose executor throws is rejected with {@link TransferRejection#FAILED} and the others still run.
+     *
+     * @param transfers {@link com.db.awmd.challenge.domain.Transfer}
+     * @param executor applies one transfer
+     * @return {@link com.db.awmd.challenge.domain.TransferResult} of every transfer
+     */
+    public TransferResult[] run(List<Transfer> transfers, Function<Transfer, TransferResult> executor) {
+        int size = transfers.size();
+        TransferResult[] results = new TransferResult[size];
+        int[] waveOf = new int[size];
+        int waves = 0;
+        Map<String, Integer> lastWave = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            Transfer transfer = transfers.get(i);
+            if (transfer == null || transfer.getAccountFromId() == null || transfer.getAccountToId() == null
+                    || transfer.getAmount() == null) {
+                results[i] = TransferResult.rejected(TransferRejection.INVALID, "Invalid transfer " + transfer);
+                waveOf[i] = -1;
+                continue;
+            }
+            int wave = 1 + Math.max(lastWave.getOrDefault(transfer.getAccountFromId(), -1),
+                    lastWave.getOrDefault(transfer.getAccountToId(), -1));
+            lastWave.put(transfer.getAccountFromId(), wave);
+            lastWave.put(transfer.getAccountToId(), wave);
+            waveOf[i] = wave;
+            waves = Math.max(waves, wave + 1);
+        }
+
+        // bucket the transfer indexes by wave, keeping the submission order inside a wave
+        int[] waveStart = new int[waves + 1];
+        for (int wave : waveOf) {
+            if (wave >= 0) {
+                waveStart[wave + 1]++;
+            }
+        }
+        for (int w = 0; w < waves; w++) {
+            waveStart[w + 1] += waveStart[w];
+        }
+        int[] order = new int[waveStart[waves]];
+        int[] fill = Arrays.copyOf(waveStart, waves);
+        for (int i = 0; i < size; i++) {
+            if (waveOf[i] >= 0) {
+                order[fill[waveOf[i]]++] = i;
+            }
+        }
+
+        for (int w = 0; w < waves; w++) {
+            WaveTask task = new WaveTask(transfers, executor, results, order, waveStart[w], waveStart[w + 1]);
+            if (waveStart[w + 1] - waveStart[w] < PARALLEL_THRESHOLD) {
+                task.compute();
+            } else {
+                pool.invoke(task);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Applies a range of one wave, splitting it in halves until it is small enough.
+     */
+    private static final class WaveTask extends RecursiveAction {
+
+        private final List<Transfer> transfers;
+
+        private final Function<Transfer, TransferResult> executor;
+
+        private final TransferResult[] results;
+
+        private final int[] order;
+
+        private final int from;
+
+        private final int to;
+
+        private WaveTask(List<Transfer> transfers, Function<Transfer, TransferResult> executor,
+                         TransferResult[] results, int[] order, int from, int to) {
+            this.transfers = transfers;
+            this.executor = executor;
+            this.results = results;
+            this.order = order;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    int index = order[i];
+                    try {
+                        results[index] = executor.apply(transfers.get(index));
+                    } catch (RuntimeException ex) {
+                        log.error("Error in transfer {}", transfers.get(index), ex);
+                        results[index] = TransferResult.rejected(TransferRejection.FAILED, ex.getMessage());
+                    }
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new WaveTask(transfers, executor, results, order, from, middle),
+                    new WaveTask(transfers, executor, results, order, middle, to));
+        }
+    }
+}
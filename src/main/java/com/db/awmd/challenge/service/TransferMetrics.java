@@ -0,0 +1,145 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.TransferRejection;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class holds the meters of the transfers. All meters are registered up front and recorded with durations
+ * measured by the caller, so recording a transfer does not allocate.
+ * - transfer.duration, transfer.lock.wait, transfer.validation, transfer.update, transfer.notification: timers with
+ *   percentile histograms
+ * - transfer.outcomes: counter tagged with the outcome, "OK" or the {@link TransferRejection}
+ * - accounts.count, notification.queue.depth, notification.lag: gauges
+ * - notification.delivered, dropped, spilled: counters read from the {@link NotificationDispatcher}
+ * - transfer.idempotency.hits, misses, evictions: counters read from the {@link IdempotencyCache}
+ */
+@Component
+public class TransferMetrics {
+
+    private final MeterRegistry registry;
+
+    private final Timer transferTimer;
+
+    private final Timer lockWaitTimer;
+
+    private final Timer validationTimer;
+
+    private final Timer updateTimer;
+
+    private final Timer notificationTimer;
+
+    private final Counter okCounter;
+
+    private final Counter[] rejectionCounters = new Counter[TransferRejection.values().length];
+
+    /**
+     * Creates metrics which are not published anywhere.
+     */
+    public TransferMetrics() {
+        this(new CompositeMeterRegistry());
+    }
+
+    public TransferMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.transferTimer = timer("transfer.duration", "Time of a whole transfer");
+        this.lockWaitTimer = timer("transfer.lock.wait", "Time waiting for the locks of both accounts");
+        this.validationTimer = timer("transfer.validation", "Time validating a transfer");
+        this.updateTimer = timer("transfer.update", "Time updating the balances in the repository");
+        this.notificationTimer = timer("transfer.notification", "Time dispatching the notifications of a transfer");
+        this.okCounter = outcomeCounter("OK");
+        for (TransferRejection rejection : TransferRejection.values()) {
+            rejectionCounters[rejection.ordinal()] = outcomeCounter(rejection.name());
+        }
+    }
+
+    @Autowired
+    public TransferMetrics(MeterRegistry registry, AccountsRepository accountsRepository,
+                           NotificationDispatcher notificationDispatcher, IdempotencyCache idempotencyCache) {
+        this(registry);
+        Gauge.builder("accounts.count", accountsRepository, AccountsRepository::countAccounts)
+                .description("Number of accounts")
+                .register(registry);
+        Gauge.builder("notification.queue.depth", notificationDispatcher, NotificationDispatcher::getQueueDepth)
+                .description("Notifications waiting to be delivered")
+                .register(registry);
+        Gauge.builder("notification.lag", notificationDispatcher, NotificationDispatcher::getLagMillis)
+                .description("Milliseconds the last delivered notifications waited in the queue")
+                .baseUnit("milliseconds")
+                .register(registry);
+        FunctionCounter.builder("notification.delivered", notificationDispatcher,
+                NotificationDispatcher::getDeliveredCount)
+                .description("Notifications delivered")
+                .register(registry);
+        FunctionCounter.builder("notification.dropped", notificationDispatcher, NotificationDispatcher::getDroppedCount)
+                .description("Notifications dropped, including unreadable spilled ones")
+                .register(registry);
+        FunctionCounter.builder("notification.spilled", notificationDispatcher, NotificationDispatcher::getSpilledCount)
+                .description("Notifications spilled to disk while the queue was full")
+                .register(registry);
+        FunctionCounter.builder("transfer.idempotency.hits", idempotencyCache, IdempotencyCache::getHitCount)
+                .description("Transfers answered from the idempotency cache")
+                .register(registry);
+        FunctionCounter.builder("transfer.idempotency.misses", idempotencyCache, IdempotencyCache::getMissCount)
+                .description("Transfers with an idempotency key not seen before")
+                .register(registry);
+        FunctionCounter.builder("transfer.idempotency.evictions", idempotencyCache,
+                IdempotencyCache::getEvictionCount)
+                .description("Idempotency keys evicted by size or age")
+                .register(registry);
+    }
+
+    public void recordLockWait(long nanos) {
+        lockWaitTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordValidation(long nanos) {
+        validationTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordUpdate(long nanos) {
+        updateTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordNotification(long nanos) {
+        notificationTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records the duration and outcome of a whole transfer.
+     *
+     * @param nanos duration of the transfer
+     * @param rejection reason the transfer was rejected, null if it was applied
+     */
+    public void recordTransfer(long nanos, TransferRejection rejection) {
+        transferTimer.record(nanos, TimeUnit.NANOSECONDS);
+        if (rejection == null) {
+            okCounter.increment();
+        } else {
+            rejectionCounters[rejection.ordinal()].increment();
+        }
+    }
+
+    private Timer timer(String name, String description) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private Counter outcomeCounter(String outcome) {
+        return Counter.builder("transfer.outcomes")
+                .description("Transfers by outcome")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+}
@@ -0,0 +1,444 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferRejection;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.exception.AmountOutOfRangeException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.JournalCodec;
+import com.db.awmd.challenge.repository.JournaledAccountsRepository;
+import com.db.awmd.challenge.repository.TransactionJournal;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class applies transfers in a pipeline of four stages over one preallocated ring of entries, in the manner of
+ * the LMAX disruptor. Callers claim a sequence, fill the entry of that sequence and publish it. Every stage runs on its
+ * own thread, follows the stage before it and handles all entries available at once as a batch:
+ * - validate: looks up both accounts
+ * - apply: validates the transfer against the current balances and updates them, it is the only thread changing
+ *   balances so it takes no locks. A repository which is not journaled, like a replicated one, is awaited here once
+ *   per batch
+ * - journal: appends the updates to the journal of a {@link JournaledAccountsRepository} and waits for the batch to be
+ *   durable once
+ * - notify: dispatches the notifications and completes the futures of the callers
+ * Entries are reused once the last stage has passed them, so the pipeline itself allocates nothing per transfer
+ * besides the caller's future, the transactions and the journal record.
+ */
+@Slf4j
+public class TransferPipeline {
+
+    private static final int IDLE_SPINS = 64;
+
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(20);
+
+    private final AccountsRepository accountsRepository;
+
+    private final TransactionJournal journal;
+
+    private final ShardedTransferExecutor.Validation validation;
+
+    private final TransactionHistory transactionHistory;
+
+    private final NotificationDispatcher notificationDispatcher;
+
+    private final Entry[] entries;
+
+    private final int mask;
+
+    private final AtomicLong claimed = new AtomicLong(-1);
+
+    private final AtomicLongArray published;
+
+    private final Stage[] stages;
+
+    private volatile boolean running = true;
+
+    /**
+     * Starts the stage threads.
+     *
+     * @param accountsRepository repository of the accounts, its journal is written by the journal stage
+     * @param validation validates a transfer against the current balances
+     * @param transactionHistory records the transfers in the order the apply stage makes them
+     * @param notificationDispatcher
+     * @param size number of entries, rounded up to the next power of two
+     */
+    public TransferPipeline(AccountsRepository accountsRepository, ShardedTransferExecutor.Validation validation,
+                            TransactionHistory transactionHistory, NotificationDispatcher notificationDispatcher,
+                            int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Size of the pipeline must be positive");
+        }
+        int capacity = Integer.highestOneBit(size);
+        if (capacity < size) {
+            capacity <<= 1;
+        }
+        if (accountsRepository instanceof JournaledAccountsRepository) {
+            this.accountsRepository = ((JournaledAccountsRepository) accountsRepository).getDelegate();
+            this.journal = ((JournaledAccountsRepository) accountsRepository).getJournal();
+        } else {
+            this.accountsRepository = accountsRepository;
+            this.journal = null;
+        }
+        this.validation = validation;
+        this.transactionHistory = transactionHistory;
+        this.notificationDispatcher = notificationDispatcher;
+        this.entries = new Entry[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            entries[i] = new Entry();
+            published.set(i, -1);
+        }
+        this.mask = capacity - 1;
+        Stage validate = new ValidateStage();
+        Stage apply = new ApplyStage(validate);
+        Stage journaling = new JournalStage(apply);
+        this.stages = new Stage[] {validate, apply, journaling, new NotifyStage(journaling)};
+        for (Stage stage : stages) {
+            stage.thread.start();
+        }
+    }
+
+    /**
+     * Publishes the transfer into the pipeline, waiting while the pipeline is full.
+     *
+     * @param transfer {@link com.db.awmd.challenge.domain.Transfer}
+     * @return future completed with the result once the transfer is applied, journaled and notified
+     * @throws IllegalStateException if the pipeline is shut down
+     */
+    public CompletableFuture<TransferResult> publish(Transfer transfer) {
+        if (!running) {
+            throw new IllegalStateException("Transfer pipeline is shut down");
+        }
+        long sequence = claimed.incrementAndGet();
+        Stage last = stages[stages.length - 1];
+        while (sequence - entries.length > last.cursor.get()) {
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+        }
+        Entry entry = entries[(int) sequence & mask];
+        CompletableFuture<TransferResult> future = new CompletableFuture<>();
+        entry.transfer = transfer;
+        entry.future = future;
+        published.set((int) sequence & mask, sequence);
+        stages[0].wakeUp();
+        return future;
+    }
+
+    /**
+     * Stops the stages once they have handled the transfers published so far.
+     *
+     * @throws InterruptedException
+     */
+    public void shutdown() throws InterruptedException {
+        running = false;
+        for (Stage stage : stages) {
+            LockSupport.unpark(stage.thread);
+        }
+        for (Stage stage : stages) {
+            stage.thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    /**
+     * A transfer in the pipeline, reused for every lap of the ring.
+     */
+    private static final class Entry {
+
+        private Transfer transfer;
+
+        private CompletableFuture<TransferResult> future;
+
+        private Account fromAccount;
+
+        private Account toAccount;
+
+        private List<Transaction> transactions;
+
+        private byte[] record;
+
+        private TransactionJournal.Entry journalEntry;
+
+        private TransferResult result;
+
+        private RuntimeException failure;
+
+        private void clear() {
+            transfer = null;
+            future = null;
+            fromAccount = null;
+            toAccount = null;
+            transactions = null;
+            record = null;
+            journalEntry = null;
+            result = null;
+            failure = null;
+        }
+    }
+
+    private abstract class Stage implements Runnable {
+
+        private final AtomicLong cursor = new AtomicLong(-1);
+
+        private final Stage previous;
+
+        private final Thread thread;
+
+        private Stage next;
+
+        private volatile boolean parked;
+
+        private Stage(String name, Stage previous) {
+            this.previous = previous;
+            if (previous != null) {
+                previous.next = this;
+            }
+            this.thread = new Thread(this, "transfer-pipeline-" + name);
+            this.thread.setDaemon(true);
+        }
+
+        /**
+         * Handles an entry which has not failed in an earlier stage.
+         *
+         * @param entry
+         */
+        abstract void handle(Entry entry);
+
+        /**
+         * Called once the entries from first to last are handled, before the next stage may see them.
+         *
+         * @param first sequence of the first entry of the batch
+         * @param last sequence of the last entry of the batch
+         */
+        void endBatch(long first, long last) {
+        }
+
+        private void wakeUp() {
+            if (parked) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        private long available(long sequence) {
+            if (previous != null) {
+                return previous.cursor.get();
+            }
+            long available = sequence - 1;
+            while (published.get((int) (available + 1) & mask) == available + 1) {
+                available++;
+            }
+            return available;
+        }
+
+        private boolean finished() {
+            return !running && (previous == null || !previous.thread.isAlive());
+        }
+
+        @Override
+        public void run() {
+            long sequence = 0;
+            int idle = 0;
+            while (true) {
+                long available = available(sequence);
+                if (available >= sequence) {
+                    for (long current = sequence; current <= available; current++) {
+                        Entry entry = entries[(int) current & mask];
+                        if (entry.failure != null) {
+                            continue;
+                        }
+                        try {
+                            handle(entry);
+                        } catch (RuntimeException ex) {
+                            log.error("Error in transfer pipeline for {}", entry.transfer, ex);
+                            entry.failure = ex;
+                        }
+                    }
+                    endBatch(sequence, available);
+                    sequence = available + 1;
+                    cursor.set(available);
+                    if (next != null) {
+                        next.wakeUp();
+                    }
+                    idle = 0;
+                } else if (finished()) {
+                    return;
+                } else if (++idle > IDLE_SPINS) {
+                    parked = true;
+                    if (available(sequence) < sequence && running) {
+                        LockSupport.park(this);
+                    }
+                    parked = false;
+                    idle = 0;
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+    }
+
+    /**
+     * Looks up both accounts, so the apply stage finds them resolved.
+     */
+    private final class ValidateStage extends Stage {
+
+        private ValidateStage() {
+            super("validate", null);
+        }
+
+        @Override
+        void handle(Entry entry) {
+            Transfer transfer = entry.transfer;
+            entry.fromAccount = accountsRepository.getAccount(transfer.getAccountFromId());
+            entry.toAccount = accountsRepository.getAccount(transfer.getAccountToId());
+            if (entry.fromAccount == null) {
+                entry.result = TransferResult.rejected(TransferRejection.NO_ACCOUNT,
+                        "Account " + transfer.getAccountFromId() + " do not exists");
+            } else if (entry.toAccount == null) {
+                entry.result = TransferResult.rejected(TransferRejection.NO_ACCOUNT,
+                        "Account " + transfer.getAccountToId() + " do not exists");
+            }
+        }
+    }
+
+    private final class ApplyStage extends Stage {
+
+        private ApplyStage(Stage previous) {
+            super("apply", previous);
+        }
+
+        @Override
+        void handle(Entry entry) {
+            if (entry.result != null) {
+                return;
+            }
+            Transfer transfer = entry.transfer;
+            // the validate stage may have read the balance before earlier transfers were applied
+            entry.fromAccount = accountsRepository.getAccount(transfer.getAccountFromId());
+            TransferResult result = validation.validate(entry.fromAccount, entry.toAccount, transfer.getAmount());
+            if (!result.isOk()) {
+                entry.result = result;
+                return;
+            }
+            List<Transaction> transactions = Arrays.asList(
+                    new Transaction(transfer.getAccountFromId(), transfer.getAmount().negate()),
+                    new Transaction(transfer.getAccountToId(), transfer.getAmount()));
+            try {
+                // encoded before the update, so a transfer the journal can not hold changes no balance
+                byte[] record = journal != null ? JournalCodec.encodeTransactions(transactions) : null;
+                accountsRepository.updateAccountsForTransactions(transactions);
+                transactionHistory.recordTransfer(transfer.getAccountFromId(), transfer.getAccountToId(),
+                        transfer.getAmount());
+                entry.transactions = transactions;
+                entry.record = record;
+                entry.result = TransferResult.OK;
+            } catch (AmountOutOfRangeException ex) {
+                entry.result = TransferResult.rejected(TransferRejection.AMOUNT_OUT_OF_RANGE, ex.getMessage());
+            }
+        }
+
+        /**
+         * Waits once per batch for a repository which makes its changes durable itself, like a replicated one.
+         */
+        @Override
+        void endBatch(long first, long last) {
+            if (journal != null) {
+                return;
+            }
+            try {
+                accountsRepository.awaitDurable();
+            } catch (RuntimeException ex) {
+                log.error("Error in making transfers durable", ex);
+                for (long failed = first; failed <= last; failed++) {
+                    Entry applied = entries[(int) failed & mask];
+                    if (applied.transactions != null) {
+                        applied.failure = ex;
+                    }
+                }
+            }
+        }
+    }
+
+    private final class JournalStage extends Stage {
+
+        private JournalStage(Stage previous) {
+            super("journal", previous);
+        }
+
+        @Override
+        void handle(Entry entry) {
+            if (journal != null && entry.transactions != null) {
+                entry.journalEntry = journal.append(entry.record);
+            }
+        }
+
+        /**
+         * Waits for the last record of the batch only, the journal writes its records in order.
+         */
+        @Override
+        void endBatch(long first, long last) {
+            for (long sequence = last; sequence >= first; sequence--) {
+                Entry entry = entries[(int) sequence & mask];
+                if (entry.journalEntry == null) {
+                    continue;
+                }
+                try {
+                    journal.await(entry.journalEntry);
+                } catch (RuntimeException ex) {
+                    log.error("Error in journaling transfers", ex);
+                    for (long failed = first; failed <= last; failed++) {
+                        Entry journaled = entries[(int) failed & mask];
+                        if (journaled.journalEntry != null) {
+                            journaled.failure = ex;
+                        }
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    private final class NotifyStage extends Stage {
+
+        private NotifyStage(Stage previous) {
+            super("notify", previous);
+        }
+
+        @Override
+        void handle(Entry entry) {
+            TransferResult result = entry.result;
+            if (result.isOk()) {
+                notificationDispatcher.dispatch(entry.fromAccount, "Amount " + entry.transfer.getAmount()
+                        + " is transferred to account ID " + entry.toAccount.getAccountId());
+                notificationDispatcher.dispatch(entry.toAccount, "Amount " + entry.transfer.getAmount()
+                        + " is transferred from account ID " + entry.fromAccount.getAccountId());
+            }
+        }
+
+        /**
+         * Completes the futures and frees the entries for the next lap of the ring.
+         */
+        @Override
+        void endBatch(long first, long last) {
+            for (long sequence = first; sequence <= last; sequence++) {
+                Entry entry = entries[(int) sequence & mask];
+                CompletableFuture<TransferResult> future = entry.future;
+                RuntimeException failure = entry.failure;
+                TransferResult result = entry.result;
+                entry.clear();
+                if (failure != null) {
+                    future.completeExceptionally(failure);
+                } else {
+                    future.complete(result);
+                }
+            }
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package com.db.awmd.challenge.service;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.MultiLegTransfer;
 import com.db.awmd.challenge.domain.Transaction;
 import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferRejection;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.exception.AmountOutOfRangeException;
 import com.db.awmd.challenge.exception.InsufficientMoneyTransactionException;
 import com.db.awmd.challenge.exception.NegativeAmountTransactionException;
 import com.db.awmd.challenge.exception.NoAccountExistsException;
@@ -11,107 +15,522 @@ import com.db.awmd.challenge.repository.AccountsRepository;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
- * This class is actual service which manages the transactions checking validations and throwing appropriate exceptions.
+ * This class is actual service which manages the transactions checking validations and returning the rejections.
  */
 
 @Service
 @Slf4j
 public class TransferService {
 
+    /**
+     * How transfers are applied.
+     * - LOCKING: in the calling thread, holding the striped locks of both accounts.
+     * - SHARDED: by the {@link ShardedTransferExecutor}, the calling thread waits for the result.
+     * - PIPELINE: by the stages of the {@link TransferPipeline}, the calling thread waits for the result.
+     */
+    public enum Mode {
+        LOCKING, SHARDED, PIPELINE
+    }
+
+    /**
+     * Default largest number of debits and credits of a multi-leg transfer.
+     */
+    public static final int DEFAULT_MAX_LEGS = 1000;
+
     @Getter
     private final AccountsRepository accountsRepository;
 
     @Getter
-    private final NotificationService notificationService;
+    private final NotificationDispatcher notificationDispatcher;
+
+    private final StripedAccountLocks accountLocks;
+
+    @Getter
+    private final IdempotencyCache idempotencyCache;
+
+    @Getter
+    private final TransferMetrics metrics;
+
+    @Getter
+    private final TransactionHistory transactionHistory;
+
+    private final TransferBatchScheduler batchScheduler = new TransferBatchScheduler(ForkJoinPool.commonPool());
+
+    private ShardedTransferExecutor shardedExecutor;
+
+    private TransferPipeline pipeline;
+
+    @Getter
+    private int maxLegs = DEFAULT_MAX_LEGS;
 
     @Autowired
+    public TransferService(AccountsRepository accountsRepository, NotificationDispatcher notificationDispatcher,
+                           IdempotencyCache idempotencyCache, TransferMetrics metrics,
+                           TransactionHistory transactionHistory,
+                           @Value("${transfer.mode:LOCKING}") Mode mode,
+                           @Value("${transfer.shards:0}") int shards,
+                           @Value("${transfer.shard-capacity:4096}") int shardCapacity,
+                           @Value("${transfer.pipeline-size:65536}") int pipelineSize,
+                           @Value("${transfer.multi-leg.max-legs:" + DEFAULT_MAX_LEGS + "}") int maxLegs) {
+        this(accountsRepository, notificationDispatcher, new StripedAccountLocks(), idempotencyCache, metrics,
+                transactionHistory);
+        setMaxLegs(maxLegs);
+        if (mode == Mode.SHARDED) {
+            useShards(shards > 0 ? shards : Runtime.getRuntime().availableProcessors(), shardCapacity);
+        } else if (mode == Mode.PIPELINE) {
+            usePipeline(pipelineSize);
+        }
+    }
+
+    public TransferService(AccountsRepository accountsRepository, NotificationDispatcher notificationDispatcher) {
+        this(accountsRepository, notificationDispatcher, new StripedAccountLocks(), new IdempotencyCache(),
+                new TransferMetrics());
+    }
+
+    /**
+     * Creates the service with notifications delivered directly in the transferring thread.
+     */
     public TransferService(AccountsRepository accountsRepository, NotificationService notificationService) {
+        this(accountsRepository, NotificationDispatcher.direct(notificationService));
+    }
+
+    public TransferService(AccountsRepository accountsRepository, NotificationDispatcher notificationDispatcher,
+                           StripedAccountLocks accountLocks, IdempotencyCache idempotencyCache,
+                           TransferMetrics metrics) {
+        this(accountsRepository, notificationDispatcher, accountLocks, idempotencyCache, metrics,
+                new TransactionHistory());
+    }
+
+    public TransferService(AccountsRepository accountsRepository, NotificationDispatcher notificationDispatcher,
+                           StripedAccountLocks accountLocks, IdempotencyCache idempotencyCache,
+                           TransferMetrics metrics, TransactionHistory transactionHistory) {
         this.accountsRepository = accountsRepository;
-        this.notificationService = notificationService;
+        this.notificationDispatcher = notificationDispatcher;
+        this.accountLocks = accountLocks;
+        this.idempotencyCache = idempotencyCache;
+        this.metrics = metrics;
+        this.transactionHistory = transactionHistory;
     }
 
     /**
-     * This method does transfers in batch.
+     * Limits the number of debits and credits of a multi-leg transfer, larger transfers are rejected as invalid.
+     *
+     * @param maxLegs
+     */
+    public void setMaxLegs(int maxLegs) {
+        if (maxLegs < 2) {
+            throw new IllegalArgumentException("A multi-leg transfer needs at least 2 legs");
+        }
+        this.maxLegs = maxLegs;
+    }
+
+    /**
+     * Applies the transfers from now on with a {@link ShardedTransferExecutor} of the given number of shards.
+     *
+     * @param shards number of shard threads
+     * @param capacity number of transfers queued per shard
+     */
+    public void useShards(int shards, int capacity) {
+        this.shardedExecutor = new ShardedTransferExecutor(accountsRepository, this::validateTransfer,
+                transactionHistory, shards, capacity);
+        log.info("Applying transfers on {} shards", shards);
+    }
+
+    /**
+     * Applies the transfers from now on with a {@link TransferPipeline} of the given size.
+     *
+     * @param size number of transfers in the pipeline
+     */
+    public void usePipeline(int size) {
+        this.pipeline = new TransferPipeline(accountsRepository, this::validateTransfer, transactionHistory,
+                notificationDispatcher, size);
+        log.info("Applying transfers in a pipeline of {}", size);
+    }
+
+    public Mode getMode() {
+        if (pipeline != null) {
+            return Mode.PIPELINE;
+        }
+        return shardedExecutor == null ? Mode.LOCKING : Mode.SHARDED;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (shardedExecutor != null) {
+            shardedExecutor.shutdown();
+        }
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+    }
+
+    public NotificationService getNotificationService() {
+        return notificationDispatcher.getNotificationService();
+    }
+
+    /**
+     * This method does transfers in batch. Transfers on different accounts run in parallel, the transfers of one
+     * account are applied in the order of the batch. A rejected transfer does not stop the others.
      *
      * @param transfers {@link com.db.awmd.challenge.domain.Transfer}
+     * @return {@link com.db.awmd.challenge.domain.TransferResult} of every transfer, in the order of the batch
      */
-    public void transfer(List<Transfer> transfers) {
-        transfers.parallelStream().forEach(this::transfer);
+    public List<TransferResult> transfer(List<Transfer> transfers) {
+        return Arrays.asList(batchScheduler.run(transfers, this::tryTransfer));
     }
 
     /**
-     * This method actually transfers the amount from one account to another.
-     * This method also checks validations and throws appropriate errors.
+     * This method transfers the amount from one account to another and returns the result. Rejected transfers are
+     * returned as a {@link TransferRejection} instead of being thrown, so a rejection costs no more than a success.
+     * Validation and update run while holding the locks of both accounts, so concurrent transfers can not overdraft.
+     * A transfer with an idempotency key already seen is not applied again, the result of the first one is returned;
+     * a different transfer with that key is rejected.
      *
      * @param transfer {@link com.db.awmd.challenge.domain.Transfer}
+     * @return {@link com.db.awmd.challenge.domain.TransferResult}
+     */
+    public TransferResult tryTransfer(Transfer transfer) {
+        if (transfer.getIdempotencyKey() == null) {
+            return applyTransfer(transfer);
+        }
+        return idempotencyCache.execute(transfer.getIdempotencyKey(), transfer, () -> applyTransfer(transfer));
+    }
+
+    /**
+     * This method transfers the amount like {@link #tryTransfer(Transfer)} without blocking the calling thread. In the
+     * pipeline mode the transfer is published into the pipeline directly, otherwise it runs on the executor.
+     *
+     * @param transfer {@link com.db.awmd.challenge.domain.Transfer}
+     * @param executor runs the transfer unless it goes into the pipeline
+     * @return future of the {@link com.db.awmd.challenge.domain.TransferResult}
+     */
+    public CompletableFuture<TransferResult> tryTransferAsync(Transfer transfer, Executor executor) {
+        if (pipeline == null || transfer.getIdempotencyKey() != null) {
+            return CompletableFuture.supplyAsync(() -> tryTransfer(transfer), executor);
+        }
+        long start = System.nanoTime();
+        return pipeline.publish(transfer).whenComplete((result, failure) -> {
+            if (result != null) {
+                metrics.recordTransfer(System.nanoTime() - start, result.getRejection());
+            }
+        });
+    }
+
+    /**
+     * This method actually transfers the amount from one account to another, like {@link #tryTransfer(Transfer)},
+     * and throws the appropriate error when the transfer is rejected.
+     *
+     * @param transfer {@link com.db.awmd.challenge.domain.Transfer}
+     * @throws {@link com.db.awmd.challenge.exception.NoAccountExistsException}
+     * @throws {@link com.db.awmd.challenge.exception.SameAccountTransactionException}
+     * @throws {@link com.db.awmd.challenge.exception.InsufficientMoneyTransactionException}
+     * @throws {@link com.db.awmd.challenge.exception.NegativeAmountTransactionException}
+     * @throws {@link com.db.awmd.challenge.exception.AmountOutOfRangeException}
      */
     public void transfer(Transfer transfer) {
+        TransferResult result = tryTransfer(transfer);
+        if (!result.isOk()) {
+            throw toException(result);
+        }
+    }
 
-        Account fromAccount = accountsRepository.getAccount(transfer.getAccountFromId());
-        Account toAccount = accountsRepository.getAccount(transfer.getAccountToId());
-        BigDecimal amount  = transfer.getAmount();
+    /**
+     * This method applies all debits and credits of the multi-leg transfer at once, or none of them. The legs are
+     * validated and applied holding the locks of all their accounts, taken once in stripe order, and written to the
+     * repository as one update, so a journal keeps them as one record. Only the LOCKING mode applies them, and only
+     * up to {@link #getMaxLegs()} legs.
+     *
+     * @param transfer {@link com.db.awmd.challenge.domain.MultiLegTransfer}
+     * @return {@link com.db.awmd.challenge.domain.TransferResult}
+     */
+    public TransferResult tryTransfer(MultiLegTransfer transfer) {
+        if (transfer.getIdempotencyKey() == null) {
+            return applyMultiLegTransfer(transfer);
+        }
+        return idempotencyCache.execute(transfer.getIdempotencyKey(), transfer,
+                () -> applyMultiLegTransfer(transfer));
+    }
 
-        if(null == fromAccount) {
-            throw new NoAccountExistsException("Account " + transfer.getAccountFromId() + " do not exists");
+    private TransferResult applyMultiLegTransfer(MultiLegTransfer transfer) {
+        long start = System.nanoTime();
+        TransferResult result;
+        if (getMode() != Mode.LOCKING) {
+            // the shard and pipeline threads change balances without the locks
+            result = TransferResult.rejected(TransferRejection.INVALID,
+                    "Multi-leg transfers are only applied in the " + Mode.LOCKING + " mode");
+        } else {
+            result = applyMultiLegTransfer(transfer, start);
         }
+        metrics.recordTransfer(System.nanoTime() - start, result.getRejection());
+        return result;
+    }
 
-        if(null == toAccount) {
-            throw new NoAccountExistsException("Account " + transfer.getAccountToId() + " do not exists");
+    private TransferResult applyMultiLegTransfer(MultiLegTransfer transfer, long start) {
+        int legCount = transfer.getDebits().size() + transfer.getCredits().size();
+        if (legCount > maxLegs) {
+            return TransferResult.rejected(TransferRejection.INVALID,
+                    "Multi-leg transfer of " + legCount + " legs exceeds the maximum of " + maxLegs);
+        }
+        Map<String, BigDecimal> debits = new LinkedHashMap<>();
+        Map<String, BigDecimal> credits = new LinkedHashMap<>();
+        TransferResult validation = sumLegs(transfer.getDebits(), debits);
+        if (validation.isOk()) {
+            validation = sumLegs(transfer.getCredits(), credits);
+        }
+        if (!validation.isOk()) {
+            return validation;
+        }
+        BigDecimal debited = debits.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+        BigDecimal credited = credits.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+        if (debited.compareTo(credited) != 0) {
+            return TransferResult.rejected(TransferRejection.INVALID,
+                    "Debits of " + debited + " do not match credits of " + credited);
+        }
+        List<String> lockedIds = new ArrayList<>(debits.size() + credits.size());
+        for (String accountId : debits.keySet()) {
+            if (credits.containsKey(accountId)) {
+                return TransferResult.rejected(TransferRejection.SAME_ACCOUNT,
+                        "Can not transfer amount to same account " + accountId);
+            }
+            lockedIds.add(accountId);
+        }
+        for (String accountId : credits.keySet()) {
+            if (!accountsRepository.isHotAccount(accountId)) {
+                lockedIds.add(accountId);
+            }
         }
 
-        this.validateTransfer(fromAccount, toAccount, amount);
+        Map<String, Account> accounts = new HashMap<>();
+        List<Transaction> transactions = new ArrayList<>(debits.size() + credits.size());
+        int[] stripes = accountLocks.lock(lockedIds);
+        long locked = System.nanoTime();
+        metrics.recordLockWait(locked - start);
+        try {
+            for (Map<String, BigDecimal> legs : Arrays.asList(debits, credits)) {
+                for (String accountId : legs.keySet()) {
+                    Account account = accountsRepository.getAccount(accountId);
+                    if (account == null) {
+                        return TransferResult.rejected(TransferRejection.NO_ACCOUNT,
+                                "Account " + accountId + " do not exists");
+                    }
+                    accounts.put(accountId, account);
+                }
+            }
+            for (Map.Entry<String, BigDecimal> debit : debits.entrySet()) {
+                if (accounts.get(debit.getKey()).getBalance().compareTo(debit.getValue()) < 0) {
+                    return TransferResult.rejected(TransferRejection.INSUFFICIENT_MONEY,
+                            "Insufficient money to transfer from account " + debit.getKey());
+                }
+                transactions.add(new Transaction(debit.getKey(), debit.getValue().negate()));
+            }
+            for (Map.Entry<String, BigDecimal> credit : credits.entrySet()) {
+                transactions.add(new Transaction(credit.getKey(), credit.getValue()));
+            }
+            metrics.recordValidation(System.nanoTime() - locked);
 
-        log.debug("Updating accounts for transaction in accounts {} and {}", fromAccount, toAccount);
-        accountsRepository.updateAccountsForTransactions(Arrays.asList(
-                // Reduce amount from account
-                new Transaction(transfer.getAccountFromId(), transfer.getAmount().negate()),
-                // Add amount to account
-                new Transaction(transfer.getAccountToId(), transfer.getAmount())));
+            long updating = System.nanoTime();
+            try {
+                accountsRepository.updateAccountsForTransactions(transactions);
+                // the counterpart of every leg in the history is the first account on the other side
+                String firstDebitId = debits.keySet().iterator().next();
+                String firstCreditId = credits.keySet().iterator().next();
+                for (Transaction transaction : transactions) {
+                    transactionHistory.record(transaction.getAccountId(),
+                            transaction.getAmount().signum() < 0 ? firstCreditId : firstDebitId,
+                            transaction.getAmount());
+                }
+            } catch (AmountOutOfRangeException ex) {
+                return TransferResult.rejected(TransferRejection.AMOUNT_OUT_OF_RANGE, ex.getMessage());
+            } finally {
+                metrics.recordUpdate(System.nanoTime() - updating);
+            }
+        } finally {
+            accountLocks.unlock(stripes);
+        }
+        accountsRepository.awaitDurable();
+
+        long notifying = System.nanoTime();
+        for (Transaction transaction : transactions) {
+            BigDecimal amount = transaction.getAmount();
+            notificationDispatcher.dispatch(accounts.get(transaction.getAccountId()), amount.signum() < 0
+                    ? "Amount " + amount.negate() + " is transferred to " + credits.size() + " account(s)"
+                    : "Amount " + amount + " is transferred from " + debits.size() + " account(s)");
+        }
+        metrics.recordNotification(System.nanoTime() - notifying);
+        return TransferResult.OK;
+    }
 
+    /**
+     * Adds up the amounts of the legs per account.
+     *
+     * @param legs
+     * @param totals receives the total of every account, in the order the accounts first appear
+     * @return {@link TransferResult#OK} if every leg is valid, the rejection otherwise
+     */
+    private static TransferResult sumLegs(List<MultiLegTransfer.Leg> legs, Map<String, BigDecimal> totals) {
+        for (MultiLegTransfer.Leg leg : legs) {
+            if (leg.getAccountId() == null || leg.getAmount() == null) {
+                return TransferResult.rejected(TransferRejection.INVALID, "Leg " + leg + " misses a field");
+            }
+            if (leg.getAmount().signum() <= 0) {
+                return TransferResult.rejected(TransferRejection.NOT_POSITIVE_AMOUNT,
+                        "Cannot transfer negative amount in leg " + leg);
+            }
+            totals.merge(leg.getAccountId(), leg.getAmount(), BigDecimal::add);
+        }
+        return TransferResult.OK;
+    }
+
+    private TransferResult applyTransfer(Transfer transfer) {
+        long start = System.nanoTime();
+        TransferResult result;
+        if (pipeline != null) {
+            result = pipeline.publish(transfer).join();
+        } else if (shardedExecutor != null) {
+            result = applySharded(transfer);
+        } else {
+            result = applyTransfer(transfer, start);
+        }
+        metrics.recordTransfer(System.nanoTime() - start, result.getRejection());
+        return result;
+    }
+
+    private TransferResult applyTransfer(Transfer transfer, long start) {
+
+        Account fromAccount;
+        Account toAccount;
+        BigDecimal amount  = transfer.getAmount();
+
+        // a hot payee takes credits without a lock, only the payer's balance must not change during the validation
+        String lockedToId = accountsRepository.isHotAccount(transfer.getAccountToId())
+                ? transfer.getAccountFromId() : transfer.getAccountToId();
+        accountLocks.lock(transfer.getAccountFromId(), lockedToId);
+        long locked = System.nanoTime();
+        metrics.recordLockWait(locked - start);
+        try {
+            fromAccount = accountsRepository.getAccount(transfer.getAccountFromId());
+            toAccount = accountsRepository.getAccount(transfer.getAccountToId());
+
+            if(null == fromAccount) {
+                return TransferResult.rejected(TransferRejection.NO_ACCOUNT,
+                        "Account " + transfer.getAccountFromId() + " do not exists");
+            }
+
+            if(null == toAccount) {
+                return TransferResult.rejected(TransferRejection.NO_ACCOUNT,
+                        "Account " + transfer.getAccountToId() + " do not exists");
+            }
+
+            TransferResult validation = this.validateTransfer(fromAccount, toAccount, amount);
+            metrics.recordValidation(System.nanoTime() - locked);
+            if (!validation.isOk()) {
+                return validation;
+            }
+
+            log.debug("Updating accounts for transaction in accounts {} and {}", fromAccount, toAccount);
+            long updating = System.nanoTime();
+            try {
+                accountsRepository.updateAccountsForTransactions(Arrays.asList(
+                        // Reduce amount from account
+                        new Transaction(transfer.getAccountFromId(), transfer.getAmount().negate()),
+                        // Add amount to account
+                        new Transaction(transfer.getAccountToId(), transfer.getAmount())));
+                // inside the locks, so the history of an account is in the order of its balance changes
+                transactionHistory.recordTransfer(transfer.getAccountFromId(), transfer.getAccountToId(), amount);
+            } catch (AmountOutOfRangeException ex) {
+                // thrown by the fixed point repositories, before any balance is changed
+                return TransferResult.rejected(TransferRejection.AMOUNT_OUT_OF_RANGE, ex.getMessage());
+            } finally {
+                metrics.recordUpdate(System.nanoTime() - updating);
+            }
+        } finally {
+            accountLocks.unlock(transfer.getAccountFromId(), lockedToId);
+        }
+        // wait for the journal outside of the locks, so transfers on the same accounts share the disk sync
+        accountsRepository.awaitDurable();
+
+        notifyTransfer(fromAccount, toAccount, amount);
+        return TransferResult.OK;
+    }
+
+    private TransferResult applySharded(Transfer transfer) {
+        ShardedTransferExecutor.Task task = shardedExecutor.submit(transfer);
+        TransferResult result = task.join();
+        if (result.isOk()) {
+            notifyTransfer(task.getFromAccount(), task.getToAccount(), transfer.getAmount());
+        }
+        return result;
+    }
+
+    private void notifyTransfer(Account fromAccount, Account toAccount, BigDecimal amount) {
         log.debug("Sending notification for transaction to accounts {} and {}", fromAccount, toAccount);
-        notificationService.notifyAboutTransfer(fromAccount,
+        long notifying = System.nanoTime();
+        notificationDispatcher.dispatch(fromAccount,
                 "Amount "+ amount + " is transferred to account ID " + toAccount.getAccountId());
-        notificationService.notifyAboutTransfer(toAccount,
+        notificationDispatcher.dispatch(toAccount,
                 "Amount " + amount + " is transferred from account ID " + fromAccount.getAccountId());
+        metrics.recordNotification(System.nanoTime() - notifying);
     }
 
     /**
-     * This method returns true if the transaction is valid.
+     * This method validates the transaction.
      * For valid transaction the amount should be positive and the account for transfers must not be same.
      *
      * @param fromAccount
      * @param toAccount
      * @param amount
-     * @return boolean: if the transfer is valid or not
-     * @throws {@link com.db.awmd.challenge.exception.SameAccountTransactionException}
-     * @throws {@link com.db.awmd.challenge.exception.InsufficientMoneyTransactionException}
-     * @throws {@link com.db.awmd.challenge.exception.NegativeAmountTransactionException}
+     * @return {@link TransferResult#OK} if the transfer is valid, the rejection otherwise
      */
-    protected boolean validateTransfer(Account fromAccount, Account toAccount, BigDecimal amount)
-            throws SameAccountTransactionException, InsufficientMoneyTransactionException, NegativeAmountTransactionException{
+    protected TransferResult validateTransfer(Account fromAccount, Account toAccount, BigDecimal amount) {
 
         log.debug("Validating accounts for transaction {} and {}", fromAccount, toAccount);
 
         // Should not be same account
         if(fromAccount.getAccountId().equals(toAccount.getAccountId())) {
-            throw new SameAccountTransactionException("Can not transfer amount to same account");
+            return TransferResult.rejected(TransferRejection.SAME_ACCOUNT, "Can not transfer amount to same account");
         }
         // Should not overdraft
         if(!(fromAccount.getBalance().subtract(amount).compareTo(BigDecimal.ZERO) >= 0)){
-            throw new InsufficientMoneyTransactionException("Insufficient money to transfer");
+            return TransferResult.rejected(TransferRejection.INSUFFICIENT_MONEY, "Insufficient money to transfer");
         }
         // amount should be positive
         if(!(amount.compareTo(BigDecimal.ZERO) > 0)){
-            throw new NegativeAmountTransactionException("Cannot transfer negative amount");
+            return TransferResult.rejected(TransferRejection.NOT_POSITIVE_AMOUNT, "Cannot transfer negative amount");
         }
 
-        return true;
+        return TransferResult.OK;
+    }
+
+    private static RuntimeException toException(TransferResult result) {
+        switch (result.getRejection()) {
+            case NO_ACCOUNT:
+                return new NoAccountExistsException(result.getMessage());
+            case INSUFFICIENT_MONEY:
+                return new InsufficientMoneyTransactionException(result.getMessage());
+            case SAME_ACCOUNT:
+                return new SameAccountTransactionException(result.getMessage());
+            case NOT_POSITIVE_AMOUNT:
+                return new NegativeAmountTransactionException(result.getMessage());
+            case AMOUNT_OUT_OF_RANGE:
+                return new AmountOutOfRangeException(result.getMessage());
+            default:
+                return new IllegalArgumentException(result.getMessage());
+        }
     }
 }
@@ -0,0 +1,87 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.Account;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class keeps the JSON of every account read, so a read of an account whose balance has not changed since is
+ * answered with the same bytes instead of serialising the account again. An entry is valid as long as the balance it
+ * was written for equals the balance just read, so the cache needs no invalidation by the writers and never serves
+ * a balance other than the one read. The repository returns every account as a consistent snapshot, which is what
+ * the cached JSON is compared with. Once max-entries accounts are cached, further accounts are serialised every time.
+ */
+@Component
+public class AccountJsonCache {
+
+    private final ObjectMapper objectMapper;
+
+    private final int maxEntries;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param objectMapper
+     * @param maxEntries maximum number of cached accounts
+     */
+    @Autowired
+    public AccountJsonCache(ObjectMapper objectMapper,
+                            @Value("${accounts.json-cache.max-entries:100000}") int maxEntries) {
+        this.objectMapper = objectMapper;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Returns the JSON of the account.
+     *
+     * @param account snapshot of the account read from the repository
+     * @return UTF-8 JSON of the account
+     * @throws JsonProcessingException
+     */
+    public byte[] toJson(Account account) throws JsonProcessingException {
+        Entry entry = entries.get(account.getAccountId());
+        // equals and not compareTo, 10.5 and 10.50 are written differently
+        if (entry != null && entry.balance.equals(account.getBalance())) {
+            hits.increment();
+            return entry.json;
+        }
+        misses.increment();
+        byte[] json = objectMapper.writeValueAsBytes(account);
+        if (entry != null || entries.size() < maxEntries) {
+            entries.put(account.getAccountId(), new Entry(account.getBalance(), json));
+        }
+        return json;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private static final class Entry {
+
+        private final BigDecimal balance;
+
+        private final byte[] json;
+
+        private Entry(BigDecimal balance, byte[] json) {
+            this.balance = balance;
+            this.json = json;
+        }
+    }
+}
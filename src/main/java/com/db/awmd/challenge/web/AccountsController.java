@@ -1,8 +1,15 @@
 package com.db.awmd.challenge.web;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.ImportSummary;
+import com.db.awmd.challenge.exception.AmountOutOfRangeException;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.repository.MinorUnits;
+import com.db.awmd.challenge.service.AccountImporter;
 import com.db.awmd.challenge.service.AccountsService;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -10,7 +17,9 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import javax.validation.Valid;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 
 /**
  * This is REST api implmentation class for Accounts which calls the service layer to create and get the accounts data.
@@ -21,11 +30,25 @@ import javax.validation.Valid;
 @Slf4j
 public class AccountsController {
 
+  /**
+   * Largest page of transactions.
+   */
+  static final int MAX_TRANSACTIONS_LIMIT = 1000;
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
   private final AccountsService accountsService;
 
+  private final AccountJsonCache accountJsonCache;
+
+  private final AccountImporter accountImporter;
+
   @Autowired
-  public AccountsController(AccountsService accountsService) {
+  public AccountsController(AccountsService accountsService, AccountJsonCache accountJsonCache,
+                            AccountImporter accountImporter) {
     this.accountsService = accountsService;
+    this.accountJsonCache = accountJsonCache;
+    this.accountImporter = accountImporter;
   }
 
   /**
@@ -35,12 +58,12 @@ public class AccountsController {
    * @return HTTP RESPONSE
    */
   @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
-  public ResponseEntity<Object> createAccount(@RequestBody @Valid Account account) {
+  public ResponseEntity<Object> createAccount(@RequestBody Account account) {
     log.info("Creating account {}", account);
 
     try {
     this.accountsService.createAccount(account);
-    } catch (DuplicateAccountIdException daie) {
+    } catch (DuplicateAccountIdException | AmountOutOfRangeException | IllegalArgumentException daie) {
         log.error("Error in creating account {}", daie.getMessage(),daie);
       return new ResponseEntity<>(daie.getMessage(), HttpStatus.BAD_REQUEST);
     }
@@ -48,16 +71,88 @@ public class AccountsController {
     return new ResponseEntity<>(HttpStatus.CREATED);
   }
 
+  /**
+   * This method creates the accounts streamed in the body, as CSV lines accountId,balance or as NDJSON with one
+   * account per line. Invalid and duplicate accounts are listed in the summary instead of failing the import.
+   *
+   * @param expected number of accounts in the body, to size the repository ahead
+   * @param request
+   * @return summary of the import
+   * @throws IOException
+   */
+  @PostMapping(path = "/import", consumes = {"text/csv", "application/x-ndjson"})
+  public ResponseEntity<ImportSummary> importAccounts(@RequestParam(defaultValue = "0") long expected,
+                                                      HttpServletRequest request) throws IOException {
+    AccountImporter.Format format = MediaType.parseMediaType(request.getContentType())
+        .isCompatibleWith(MediaType.parseMediaType("text/csv"))
+        ? AccountImporter.Format.CSV : AccountImporter.Format.NDJSON;
+    log.info("Importing accounts from {}", format);
+    return ResponseEntity.ok(this.accountImporter.importAccounts(request.getInputStream(), format, expected));
+  }
+
   /**
    * This method is REST implementation of GET method which returns the accounts details for given account id
    *
    * @param accountId
-   * @return
+   * @return JSON of the account, cached until its balance changes, empty if there is no such account
+   * @throws JsonProcessingException
    */
   @GetMapping(path = "/{accountId}")
-  public Account getAccount(@PathVariable String accountId) {
-    log.info("Retrieving account for id {}", accountId);
-    return this.accountsService.getAccount(accountId);
+  public ResponseEntity<byte[]> getAccount(@PathVariable String accountId) throws JsonProcessingException {
+    log.debug("Retrieving account for id {}", accountId);
+    Account account = this.accountsService.getAccount(accountId);
+    if (account == null) {
+      return ResponseEntity.ok().build();
+    }
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(this.accountJsonCache.toJson(account));
+  }
+
+  /**
+   * This method returns a page of the transactions of the account, newest first. The JSON is written straight from
+   * the history to the response, without building a list of the transactions.
+   *
+   * @param accountId
+   * @param cursor nextCursor of the previous page, none for the first page
+   * @param limit maximum number of transactions in the page
+   * @param response
+   * @throws IOException
+   */
+  @GetMapping(path = "/{accountId}/transactions")
+  public void getTransactions(@PathVariable String accountId, @RequestParam(required = false) Long cursor,
+                              @RequestParam(defaultValue = "100") int limit, HttpServletResponse response)
+      throws IOException {
+    log.debug("Retrieving transactions for id {} before {}", accountId, cursor);
+    if (limit < 1 || limit > MAX_TRANSACTIONS_LIMIT || (cursor != null && cursor < 0)) {
+      response.sendError(HttpStatus.BAD_REQUEST.value(),
+          "Limit must be between 1 and " + MAX_TRANSACTIONS_LIMIT + " and cursor must not be negative");
+      return;
+    }
+    if (this.accountsService.getAccount(accountId) == null) {
+      response.sendError(HttpStatus.NOT_FOUND.value(), "Account " + accountId + " do not exists");
+      return;
+    }
+    response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+    try (JsonGenerator generator = JSON_FACTORY.createGenerator(response.getOutputStream())) {
+      generator.writeStartObject();
+      generator.writeStringField("accountId", accountId);
+      generator.writeArrayFieldStart("transactions");
+      Long next = this.accountsService.getTransactions(accountId, cursor, limit,
+          (sequence, timestamp, counterpartId, amountUnits, amountScale) -> {
+            generator.writeStartObject();
+            generator.writeNumberField("sequence", sequence);
+            generator.writeNumberField("timestamp", timestamp);
+            generator.writeStringField("counterpartId", counterpartId);
+            generator.writeNumberField("amount", MinorUnits.toBigDecimal(amountUnits, amountScale));
+            generator.writeEndObject();
+          });
+      generator.writeEndArray();
+      if (next == null) {
+        generator.writeNullField("nextCursor");
+      } else {
+        generator.writeNumberField("nextCursor", next);
+      }
+      generator.writeEndObject();
+    }
   }
 
 }
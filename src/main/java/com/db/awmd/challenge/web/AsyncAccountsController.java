@@ -0,0 +1,92 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.AmountOutOfRangeException;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.service.AccountsService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * This class is the non blocking variant of {@link AccountsController}, running the calls to the service layer on the
+ * request executor.
+ */
+
+@RestController
+@RequestMapping("/v2/accounts")
+@Slf4j
+public class AsyncAccountsController {
+
+    private final AccountsService accountsService;
+
+    private final ExecutorService requestExecutor;
+
+    private final AccountJsonCache accountJsonCache;
+
+    @Autowired
+    public AsyncAccountsController(AccountsService accountsService,
+                                   @Qualifier("requestExecutor") ExecutorService requestExecutor,
+                                   AccountJsonCache accountJsonCache) {
+        this.accountsService = accountsService;
+        this.requestExecutor = requestExecutor;
+        this.accountJsonCache = accountJsonCache;
+    }
+
+    /**
+     * This method is REST implementation of POST method. This method creates accounts in the database.
+     *
+     * @param account
+     * @return HTTP RESPONSE, completed once the account is created
+     */
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<Object>> createAccount(@RequestBody Account account) {
+        log.debug("Creating account {}", account);
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                accountsService.createAccount(account);
+                return new ResponseEntity<>(HttpStatus.CREATED);
+            } catch (DuplicateAccountIdException | AmountOutOfRangeException | IllegalArgumentException ex) {
+                log.info("Account rejected {}", ex.getMessage());
+                return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
+            }
+        }, requestExecutor);
+    }
+
+    /**
+     * This method is REST implementation of GET method which returns the accounts details for given account id
+     *
+     * @param accountId
+     * @return JSON of the account as {@link AccountsController#getAccount(String)}, completed once it is read
+     */
+    @GetMapping(path = "/{accountId}")
+    public CompletableFuture<ResponseEntity<byte[]>> getAccount(@PathVariable String accountId) {
+        log.debug("Retrieving account for id {}", accountId);
+        return CompletableFuture.supplyAsync(() -> {
+            Account account = accountsService.getAccount(accountId);
+            if (account == null) {
+                return ResponseEntity.ok().build();
+            }
+            try {
+                return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8)
+                        .body(accountJsonCache.toJson(account));
+            } catch (JsonProcessingException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }, requestExecutor);
+    }
+}
@@ -0,0 +1,59 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.service.TransferService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * This class is the non blocking variant of {@link TransferController}. The transfer runs on the request executor,
+ * or goes straight into the pipeline in the pipeline mode, and the servlet request is completed asynchronously, so the
+ * request thread is free as soon as the body is read.
+ */
+
+@RestController
+@RequestMapping("/v2/transfer")
+@Slf4j
+public class AsyncTransferController {
+
+    private final TransferService transferService;
+
+    private final ExecutorService requestExecutor;
+
+    @Autowired
+    public AsyncTransferController(TransferService transferService,
+                                   @Qualifier("requestExecutor") ExecutorService requestExecutor) {
+        this.transferService = transferService;
+        this.requestExecutor = requestExecutor;
+    }
+
+    /**
+     * This method is REST implementation of POST method, which transfers the amount from one account to another
+     * @param transfer {@link com.db.awmd.challenge.domain.Transfer}
+     * @return HTTP RESPONSE, completed once the transfer is done
+     */
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<Object>> transfer(@RequestBody Transfer transfer) {
+        log.debug("Making transfer {}", transfer);
+        return transferService.tryTransferAsync(transfer, requestExecutor)
+                .thenApply(result -> {
+                    if (!result.isOk()) {
+                        log.info("Transfer rejected {}: {}", result.getRejection(), result.getMessage());
+                        return new ResponseEntity<>(result.getMessage(),
+                                TransferController.toHttpStatus(result.getStatus()));
+                    }
+                    return new ResponseEntity<>(HttpStatus.OK);
+                });
+    }
+}
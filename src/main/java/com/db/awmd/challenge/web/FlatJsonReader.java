@@ -0,0 +1,507 @@
+package com.db.awmd.challenge.web;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class reads a JSON object of scalar fields straight from the bytes of a request body. It makes no tokens and
+ * no strings while parsing: the value of every field it was created for is kept as its position in the body, and
+ * only decoded when it is asked for. Other fields are skipped, nested values included. A reader is reused for every
+ * body parsed by one thread, so it is not thread safe.
+ */
+final class FlatJsonReader {
+
+    static final byte MISSING = 0;
+
+    static final byte STRING = 1;
+
+    static final byte NUMBER = 2;
+
+    static final byte NULL = 3;
+
+    static final byte OTHER = 4;
+
+    private static final byte[] NULL_LITERAL = {'n', 'u', 'l', 'l'};
+
+    private static final byte[] TRUE_LITERAL = {'t', 'r', 'u', 'e'};
+
+    private static final byte[] FALSE_LITERAL = {'f', 'a', 'l', 's', 'e'};
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final byte[][] names;
+
+    private final byte[] types;
+
+    private final int[] starts;
+
+    private final int[] ends;
+
+    private final boolean[] escaped;
+
+    private final boolean[] ascii;
+
+    private final StringCache stringCache = new StringCache();
+
+    private byte[] body;
+
+    private int position;
+
+    private int end;
+
+    private long unscaled;
+
+    private int scale;
+
+    /**
+     * @param names names of the fields kept, in the order of their index
+     */
+    FlatJsonReader(String... names) {
+        this.names = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            this.names[i] = names[i].getBytes(StandardCharsets.UTF_8);
+        }
+        this.types = new byte[names.length];
+        this.starts = new int[names.length];
+        this.ends = new int[names.length];
+        this.escaped = new boolean[names.length];
+        this.ascii = new boolean[names.length];
+    }
+
+    /**
+     * Parses the object, the last value of a repeated field is kept.
+     *
+     * @param body
+     * @param length number of bytes of the body
+     * @return null if the body is one object, what is wrong with it otherwise
+     */
+    String read(byte[] body, int length) {
+        this.body = body;
+        this.position = 0;
+        this.end = length;
+        for (int i = 0; i < types.length; i++) {
+            types[i] = MISSING;
+        }
+        if (next() != '{') {
+            return "Expected a JSON object";
+        }
+        position++;
+        int token = next();
+        if (token == '}') {
+            position++;
+        }
+        while (token != '}') {
+            if (token != '"') {
+                return "Expected a field name";
+            }
+            int nameStart = ++position;
+            if (!skipString()) {
+                return "Unterminated field name";
+            }
+            int field = fieldOf(nameStart, position - 1);
+            if (next() != ':') {
+                return "Expected ':' after a field name";
+            }
+            position++;
+            String error = readValue(field);
+            if (error != null) {
+                return error;
+            }
+            token = next();
+            position++;
+            if (token == ',') {
+                token = next();
+                if (token == '}') {
+                    return "Expected a field after ','";
+                }
+            } else if (token != '}') {
+                return "Expected ',' or '}' after a value";
+            }
+        }
+        return next() == -1 ? null : "Unexpected content after the object";
+    }
+
+    /**
+     * @param field
+     * @return type of the value of the field, {@link #MISSING} if the object has no such field
+     */
+    byte type(int field) {
+        return types[field];
+    }
+
+    /**
+     * @param field
+     * @return true if the value of the field has no character, like the string ""
+     */
+    boolean isEmpty(int field) {
+        return starts[field] == ends[field];
+    }
+
+    /**
+     * Decodes a string or number field as a string. Strings of ASCII characters without escapes are taken from a
+     * cache of the strings read recently by this reader, the other ones are decoded every time.
+     *
+     * @param field
+     * @return the string
+     */
+    String string(int field) {
+        int start = starts[field];
+        int length = ends[field] - start;
+        if (escaped[field]) {
+            return unescape(new String(body, start, length, StandardCharsets.UTF_8));
+        }
+        if (!ascii[field]) {
+            return new String(body, start, length, StandardCharsets.UTF_8);
+        }
+        return stringCache.get(body, start, length);
+    }
+
+    /**
+     * Parses a number field, or a string field holding a number, without making a {@link BigDecimal} if it has at
+     * most 18 digits and no exponent. The value is then {@link #unscaled()} / 10^{@link #scale()}.
+     *
+     * @param field
+     * @return 1 if the value is in unscaled and scale, 0 if it needs {@link #bigDecimal(int)}, -1 if it is no number
+     */
+    int decimal(int field) {
+        if (escaped[field]) {
+            return -1;
+        }
+        int index = starts[field];
+        int limit = ends[field];
+        boolean negative = index < limit && body[index] == '-';
+        if (negative) {
+            index++;
+        }
+        long value = 0;
+        int digits = 0;
+        int fraction = -1;
+        for (; index < limit; index++) {
+            byte b = body[index];
+            if (b >= '0' && b <= '9') {
+                if (++digits > 18) {
+                    return 0;
+                }
+                value = value * 10 + (b - '0');
+                if (fraction >= 0) {
+                    fraction++;
+                }
+            } else if (b == '.' && fraction < 0 && digits > 0) {
+                fraction = 0;
+            } else if (b == 'e' || b == 'E') {
+                return 0;
+            } else {
+                return -1;
+            }
+        }
+        if (digits == 0 || fraction == 0) {
+            return -1;
+        }
+        unscaled = negative ? -value : value;
+        scale = fraction < 0 ? 0 : fraction;
+        return 1;
+    }
+
+    long unscaled() {
+        return unscaled;
+    }
+
+    int scale() {
+        return scale;
+    }
+
+    /**
+     * @param field
+     * @return the number of the field, null if it is no number
+     */
+    BigDecimal bigDecimal(int field) {
+        if (escaped[field]) {
+            return null;
+        }
+        try {
+            return new BigDecimal(new String(body, starts[field], ends[field] - starts[field],
+                    StandardCharsets.ISO_8859_1));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @param unscaled
+     * @param scale
+     * @param minimum
+     * @return true if unscaled / 10^scale is at least the minimum, the scale is at most 18
+     */
+    static boolean isAtLeast(long unscaled, int scale, long minimum) {
+        long whole = unscaled / POWERS_OF_TEN[scale];
+        long remainder = unscaled % POWERS_OF_TEN[scale];
+        return whole > minimum || (whole == minimum && remainder >= 0);
+    }
+
+    private String readValue(int field) {
+        int token = next();
+        int start = position;
+        byte type;
+        boolean hasEscape = false;
+        boolean isAscii = true;
+        if (token == '"') {
+            start = ++position;
+            while (position < end && body[position] != '"') {
+                byte b = body[position++];
+                if (b == '\\') {
+                    hasEscape = true;
+                    position++;
+                } else if (b < 0) {
+                    isAscii = false;
+                } else if (b < 0x20) {
+                    return "Control character in a string";
+                }
+            }
+            if (position >= end) {
+                return "Unterminated string";
+            }
+            type = STRING;
+            ends(field, position++);
+        } else if (token == '-' || (token >= '0' && token <= '9')) {
+            if (!skipNumber()) {
+                return "Invalid number";
+            }
+            type = NUMBER;
+            ends(field, position);
+        } else if (token == 'n' || token == 't' || token == 'f') {
+            byte[] literal = token == 'n' ? NULL_LITERAL : token == 't' ? TRUE_LITERAL : FALSE_LITERAL;
+            if (!matches(literal)) {
+                return "Invalid literal";
+            }
+            position += literal.length;
+            type = token == 'n' ? NULL : OTHER;
+        } else if (token == '{' || token == '[') {
+            if (!skipNested()) {
+                return "Unterminated object or array";
+            }
+            type = OTHER;
+        } else {
+            return "Expected a value";
+        }
+        if (field >= 0) {
+            types[field] = type;
+            starts[field] = start;
+            escaped[field] = hasEscape;
+            ascii[field] = isAscii;
+        }
+        return null;
+    }
+
+    private void ends(int field, int index) {
+        if (field >= 0) {
+            ends[field] = index;
+        }
+    }
+
+    /**
+     * Skips a number as JSON allows it: no leading zeros, digits after a decimal point and in an exponent.
+     */
+    private boolean skipNumber() {
+        if (body[position] == '-') {
+            position++;
+        }
+        int start = position;
+        skipDigits();
+        if (position == start || (position - start > 1 && body[start] == '0')) {
+            return false;
+        }
+        if (position < end && body[position] == '.') {
+            start = ++position;
+            skipDigits();
+            if (position == start) {
+                return false;
+            }
+        }
+        if (position < end && (body[position] == 'e' || body[position] == 'E')) {
+            position++;
+            if (position < end && (body[position] == '+' || body[position] == '-')) {
+                position++;
+            }
+            start = position;
+            skipDigits();
+            return position > start;
+        }
+        return true;
+    }
+
+    private void skipDigits() {
+        while (position < end && body[position] >= '0' && body[position] <= '9') {
+            position++;
+        }
+    }
+
+    private boolean matches(byte[] literal) {
+        if (end - position < literal.length) {
+            return false;
+        }
+        for (int i = 0; i < literal.length; i++) {
+            if (body[position + i] != literal[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Skips the rest of a string, the position is after the closing quote.
+     */
+    private boolean skipString() {
+        while (position < end) {
+            byte b = body[position++];
+            if (b == '"') {
+                return true;
+            }
+            if (b == '\\') {
+                position++;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Skips an object or array with what it holds, the position is after its closing bracket.
+     */
+    private boolean skipNested() {
+        int depth = 0;
+        while (position < end) {
+            byte b = body[position++];
+            if (b == '"') {
+                if (!skipString()) {
+                    return false;
+                }
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if ((b == '}' || b == ']') && --depth == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Skips white space.
+     *
+     * @return the next byte, -1 at the end of the body
+     */
+    private int next() {
+        while (position < end) {
+            byte b = body[position];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return b;
+            }
+            position++;
+        }
+        return -1;
+    }
+
+    private int fieldOf(int start, int end) {
+        for (int field = 0; field < names.length; field++) {
+            byte[] name = names[field];
+            if (name.length != end - start) {
+                continue;
+            }
+            int i = 0;
+            while (i < name.length && name[i] == body[start + i]) {
+                i++;
+            }
+            if (i == name.length) {
+                return field;
+            }
+        }
+        return -1;
+    }
+
+    private static String unescape(String text) {
+        StringBuilder builder = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != '\\' || i + 1 == text.length()) {
+                builder.append(c);
+                continue;
+            }
+            char escape = text.charAt(++i);
+            switch (escape) {
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'u':
+                    int code = 0;
+                    for (int digit = 0; digit < 4; digit++) {
+                        int value = i + 1 < text.length() ? Character.digit(text.charAt(i + 1), 16) : -1;
+                        if (value < 0) {
+                            break;
+                        }
+                        code = code * 16 + value;
+                        i++;
+                    }
+                    builder.append((char) code);
+                    break;
+                default:
+                    builder.append(escape);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Strings decoded recently, found by the hash of their bytes. A slot holds the last string hashed to it, so
+     * account ids read again and again are decoded once.
+     */
+    private static final class StringCache {
+
+        private static final int SIZE = 1024;
+
+        private final String[] strings = new String[SIZE];
+
+        private String get(byte[] bytes, int start, int length) {
+            int hash = 0x811c9dc5;
+            for (int i = start; i < start + length; i++) {
+                hash = (hash ^ bytes[i]) * 0x01000193;
+            }
+            int slot = (hash ^ (hash >>> 16)) & (SIZE - 1);
+            String cached = strings[slot];
+            if (cached != null && equals(cached, bytes, start, length)) {
+                return cached;
+            }
+            String string = new String(bytes, start, length, StandardCharsets.ISO_8859_1);
+            strings[slot] = string;
+            return string;
+        }
+
+        private static boolean equals(String string, byte[] bytes, int start, int length) {
+            if (string.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (string.charAt(i) != bytes[start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.exception.InvalidPayloadException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+/**
+ * This class answers a request whose body is refused by the {@link JsonPayloadConverter} with a bad request and the
+ * field and message of the broken constraint as JSON.
+ */
+@ControllerAdvice
+@Slf4j
+public class InvalidPayloadHandler {
+
+    @ExceptionHandler(InvalidPayloadException.class)
+    public ResponseEntity<byte[]> invalidPayload(InvalidPayloadException ex) {
+        log.info("Invalid request body, {}: {}", ex.getField(), ex.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .body(JsonPayloadConverter.errorJson(ex.getField(), ex.getMessage()));
+    }
+}
@@ -0,0 +1,235 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.InvalidPayloadException;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This converter reads the bodies of the transfer and account requests without Jackson and without bean validation.
+ * The body is copied into a buffer kept by the request thread and parsed by a {@link FlatJsonReader} of that thread,
+ * then the constraints declared on {@link Transfer} and {@link Account} are checked on the parsed values. Only a
+ * valid body becomes an object: the ids come from the string cache of the reader and the amount is made from its
+ * unscaled digits, so a transfer between known accounts costs the transfer and its amount. A body which is invalid
+ * is refused with an {@link InvalidPayloadException} naming the field, answered by {@link InvalidPayloadHandler}.
+ * It is registered ahead of Jackson for these two types only.
+ */
+public class JsonPayloadConverter extends AbstractHttpMessageConverter<Object> {
+
+    /**
+     * Largest body read, in bytes.
+     */
+    static final int MAX_BODY_SIZE = 64 * 1024;
+
+    private static final int ACCOUNT_FROM_ID = 0;
+
+    private static final int ACCOUNT_TO_ID = 1;
+
+    private static final int AMOUNT = 2;
+
+    private static final int IDEMPOTENCY_KEY = 3;
+
+    private static final int ACCOUNT_ID = 0;
+
+    private static final int BALANCE = 1;
+
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    public JsonPayloadConverter() {
+        super(MediaType.APPLICATION_JSON);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return clazz == Transfer.class || clazz == Account.class;
+    }
+
+    @Override
+    protected boolean canWrite(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        Buffers buffers = BUFFERS.get();
+        int length = buffers.read(inputMessage.getBody());
+        Charset charset = inputMessage.getHeaders().getContentType() == null
+                ? null : inputMessage.getHeaders().getContentType().getCharset();
+        byte[] body = buffers.body;
+        if (charset != null && !StandardCharsets.UTF_8.equals(charset)) {
+            body = new String(body, 0, length, charset).getBytes(StandardCharsets.UTF_8);
+            length = body.length;
+        }
+        return clazz == Transfer.class ? readTransfer(body, length) : readAccount(body, length);
+    }
+
+    @Override
+    protected void writeInternal(Object object, HttpOutputMessage outputMessage) {
+        throw new HttpMessageNotWritableException("Only reading is supported");
+    }
+
+    /**
+     * Parses and validates a transfer like the bean validation of its constraints would.
+     *
+     * @param body
+     * @param length
+     * @return the transfer
+     * @throws InvalidPayloadException if the body is no valid transfer
+     */
+    static Transfer readTransfer(byte[] body, int length) {
+        FlatJsonReader reader = BUFFERS.get().transfer;
+        checkSyntax(reader.read(body, length));
+        checkString(reader, ACCOUNT_FROM_ID, "accountFromId", true);
+        checkString(reader, ACCOUNT_TO_ID, "accountToId", true);
+        checkString(reader, IDEMPOTENCY_KEY, "idempotencyKey", false);
+        BigDecimal amount = readDecimal(reader, AMOUNT, "amount", 1, "Transfer amount must be positive.");
+
+        Transfer transfer = new Transfer(reader.string(ACCOUNT_FROM_ID), reader.string(ACCOUNT_TO_ID), amount);
+        if (reader.type(IDEMPOTENCY_KEY) != FlatJsonReader.MISSING
+                && reader.type(IDEMPOTENCY_KEY) != FlatJsonReader.NULL) {
+            transfer.setIdempotencyKey(reader.string(IDEMPOTENCY_KEY));
+        }
+        return transfer;
+    }
+
+    /**
+     * Parses and validates an account like the bean validation of its constraints would.
+     *
+     * @param body
+     * @param length
+     * @return the account
+     * @throws InvalidPayloadException if the body is no valid account
+     */
+    static Account readAccount(byte[] body, int length) {
+        FlatJsonReader reader = BUFFERS.get().account;
+        checkSyntax(reader.read(body, length));
+        checkString(reader, ACCOUNT_ID, "accountId", true);
+        BigDecimal balance = readDecimal(reader, BALANCE, "balance", 0, "Initial balance must be positive.");
+        return new Account(reader.string(ACCOUNT_ID), balance);
+    }
+
+    /**
+     * Writes the body of the answer to an invalid request.
+     *
+     * @param field field whose value is invalid, null if the body itself is
+     * @param message
+     * @return the JSON object {"field":...,"message":...} in UTF-8
+     */
+    static byte[] errorJson(String field, String message) {
+        StringBuilder json = new StringBuilder(32 + message.length());
+        json.append("{\"field\":");
+        if (field == null) {
+            json.append("null");
+        } else {
+            appendString(json, field);
+        }
+        json.append(",\"message\":");
+        appendString(json, message);
+        return json.append('}').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void checkSyntax(String error) {
+        if (error != null) {
+            throw new InvalidPayloadException(null, error);
+        }
+    }
+
+    private static void checkString(FlatJsonReader reader, int field, String name, boolean required) {
+        byte type = reader.type(field);
+        if (type == FlatJsonReader.MISSING || type == FlatJsonReader.NULL) {
+            if (required) {
+                throw new InvalidPayloadException(name, "may not be null");
+            }
+        } else if (type == FlatJsonReader.OTHER) {
+            throw new InvalidPayloadException(name, "must be a string");
+        } else if (required && reader.isEmpty(field)) {
+            throw new InvalidPayloadException(name, "may not be empty");
+        }
+    }
+
+    private static BigDecimal readDecimal(FlatJsonReader reader, int field, String name, long minimum,
+                                          String message) {
+        byte type = reader.type(field);
+        if (type == FlatJsonReader.MISSING || type == FlatJsonReader.NULL) {
+            throw new InvalidPayloadException(name, "may not be null");
+        }
+        int parsed = type == FlatJsonReader.OTHER ? -1 : reader.decimal(field);
+        if (parsed > 0) {
+            if (!FlatJsonReader.isAtLeast(reader.unscaled(), reader.scale(), minimum)) {
+                throw new InvalidPayloadException(name, message);
+            }
+            return BigDecimal.valueOf(reader.unscaled(), reader.scale());
+        }
+        BigDecimal value = parsed == 0 ? reader.bigDecimal(field) : null;
+        if (value == null) {
+            throw new InvalidPayloadException(name, "must be a number");
+        }
+        if (value.compareTo(BigDecimal.valueOf(minimum)) < 0) {
+            throw new InvalidPayloadException(name, message);
+        }
+        return value;
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * Body buffer and readers of one request thread.
+     */
+    private static final class Buffers {
+
+        private final FlatJsonReader transfer = new FlatJsonReader("accountFromId", "accountToId", "amount",
+                "idempotencyKey");
+
+        private final FlatJsonReader account = new FlatJsonReader("accountId", "balance");
+
+        private byte[] body = new byte[1024];
+
+        /**
+         * Reads the whole body into the buffer, growing it up to {@link #MAX_BODY_SIZE}.
+         *
+         * @return number of bytes read
+         */
+        private int read(InputStream input) throws IOException {
+            int length = 0;
+            int read;
+            while ((read = input.read(body, length, body.length - length)) >= 0) {
+                length += read;
+                if (length == body.length) {
+                    if (body.length == MAX_BODY_SIZE) {
+                        if (input.read() < 0) {
+                            break;
+                        }
+                        throw new InvalidPayloadException(null, "Body is larger than " + MAX_BODY_SIZE + " bytes");
+                    }
+                    byte[] grown = new byte[Math.min(body.length * 2, MAX_BODY_SIZE)];
+                    System.arraycopy(body, 0, grown, 0, length);
+                    body = grown;
+                }
+            }
+            return length;
+        }
+    }
+}
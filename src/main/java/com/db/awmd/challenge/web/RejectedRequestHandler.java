@@ -0,0 +1,24 @@
+package com.db.awmd.challenge.web;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * This class answers a request which the full request executor of the non blocking controllers refuses with service
+ * unavailable, so the client can retry instead of the request waiting in an unbounded queue.
+ */
+@ControllerAdvice
+@Slf4j
+public class RejectedRequestHandler {
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<Object> rejectedRequest(RejectedExecutionException ex) {
+        log.warn("Request rejected by the request executor: {}", ex.getMessage());
+        return new ResponseEntity<>("Server is busy, retry later", HttpStatus.SERVICE_UNAVAILABLE);
+    }
+}
@@ -1,14 +1,22 @@
 package com.db.awmd.challenge.web;
 
 
+import com.db.awmd.challenge.domain.MultiLegTransfer;
 import com.db.awmd.challenge.domain.Transfer;
-import com.db.awmd.challenge.exception.InsufficientMoneyTransactionException;
-import com.db.awmd.challenge.exception.NegativeAmountTransactionException;
-import com.db.awmd.challenge.exception.NoAccountExistsException;
-import com.db.awmd.challenge.exception.SameAccountTransactionException;
+import com.db.awmd.challenge.domain.TransferRejection;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
 import com.db.awmd.challenge.service.TransferService;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -17,7 +25,13 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * This class is transfer controller. This class handles the REST requests for all of the transfers and its validations
@@ -28,35 +42,171 @@ import javax.validation.Valid;
 @Slf4j
 public class TransferController {
 
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
     private final TransferService transferService;
 
+    private final ObjectMapper objectMapper;
+
+    private final Validator validator;
+
+    private final int batchChunkSize;
+
     @Autowired
-    public TransferController(TransferService transferService) {
+    public TransferController(TransferService transferService, ObjectMapper objectMapper, Validator validator,
+                              @Value("${transfer.batch.chunk-size:1000}") int batchChunkSize) {
         this.transferService = transferService;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.batchChunkSize = batchChunkSize;
     }
 
     /**
-     * This method is REST implementation of POST method, which transfers the amount from one account to another
+     * This method is REST implementation of POST method, which transfers the amount from one account to another.
+     * The body is parsed and validated by the {@link JsonPayloadConverter}.
      * @param transfer {@link com.db.awmd.challenge.domain.Transfer}
      * @return HTTP RESPONSE
      */
     @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Object> createAccount(@RequestBody @Valid Transfer transfer) {
+    public ResponseEntity<Object> createAccount(@RequestBody Transfer transfer) {
         log.info("Making transfer {}", transfer);
 
-        try {
-            this.transferService.transfer(transfer);
-        }catch (NoAccountExistsException ex) {
-            log.error("Error in making transfer {}", ex.getMessage(),ex);
-            return new ResponseEntity<>(ex.getMessage(), HttpStatus.NOT_FOUND);
-        } catch (InsufficientMoneyTransactionException ex) {
-            log.error("Error in making transfer {}", ex.getMessage(),ex);
-            return new ResponseEntity<>(ex.getMessage(), HttpStatus.PRECONDITION_FAILED);
-        } catch (SameAccountTransactionException |NegativeAmountTransactionException ex) {
-            log.error("Error in making transfer {}", ex.getMessage(),ex);
-            return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
+        // the result of a retried transfer with the same idempotency key is the result of the first one
+        TransferResult result = this.transferService.tryTransfer(transfer);
+        if (!result.isOk()) {
+            // a rejection is an expected outcome, not an error of the service
+            log.info("Transfer rejected {}: {}", result.getRejection(), result.getMessage());
+            return new ResponseEntity<>(result.getMessage(), toHttpStatus(result.getStatus()));
         }
 
         return new ResponseEntity<>(HttpStatus.OK);
     }
+
+    /**
+     * This method is REST implementation of POST method for a multi-leg transfer, which debits and credits several
+     * accounts at once. Either all legs are applied or none.
+     *
+     * @param transfer {@link com.db.awmd.challenge.domain.MultiLegTransfer}
+     * @return HTTP RESPONSE
+     */
+    @PostMapping(path = "/multi-leg", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Object> transferMultiLeg(@RequestBody @Valid MultiLegTransfer transfer) {
+        log.info("Making multi-leg transfer of {} debits and {} credits", transfer.getDebits().size(),
+                transfer.getCredits().size());
+
+        TransferResult result = this.transferService.tryTransfer(transfer);
+        if (!result.isOk()) {
+            log.info("Multi-leg transfer rejected {}: {}", result.getRejection(), result.getMessage());
+            return new ResponseEntity<>(result.getMessage(), toHttpStatus(result.getStatus()));
+        }
+
+        return new ResponseEntity<>(HttpStatus.OK);
+    }
+
+    /**
+     * This method is REST implementation of POST method for a batch of transfers. The body is either a JSON array or
+     * new line delimited JSON objects, which are parsed while they are read and applied in chunks.
+     * The response streams one line per transfer with its index and {@link TransferStatus}, so the memory used does
+     * not depend on the size of the batch.
+     *
+     * @param request HTTP REQUEST with the transfers {@link com.db.awmd.challenge.domain.Transfer}
+     * @param response HTTP RESPONSE with the status of every transfer
+     * @throws IOException
+     */
+    @PostMapping(path = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE})
+    public void transferBatch(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        log.info("Making batch transfer");
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(APPLICATION_NDJSON_VALUE);
+
+        List<Transfer> chunk = new ArrayList<>(batchChunkSize);
+        List<TransferResult> rejected = new ArrayList<>(batchChunkSize);
+        long index = 0;
+        try (JsonParser parser = objectMapper.getFactory().createParser(request.getInputStream());
+             JsonGenerator generator = objectMapper.getFactory()
+                     .createGenerator(response.getOutputStream(), JsonEncoding.UTF8)) {
+            generator.setRootValueSeparator(null);
+            try {
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.START_ARRAY) {
+                    token = parser.nextToken();
+                }
+                while (token != null && token != JsonToken.END_ARRAY) {
+                    // read the item as a tree first, so an invalid transfer does not break the parsing of the next one
+                    JsonNode node = parser.readValueAsTree();
+                    TransferResult invalid = null;
+                    Transfer transfer = null;
+                    try {
+                        transfer = objectMapper.treeToValue(node, Transfer.class);
+                        if (!validator.validate(transfer).isEmpty()) {
+                            invalid = TransferResult.rejected(TransferRejection.INVALID, "Invalid transfer " + node);
+                        }
+                    } catch (JsonProcessingException ex) {
+                        invalid = TransferResult.rejected(TransferRejection.INVALID, "Invalid transfer " + node);
+                    }
+                    chunk.add(transfer);
+                    rejected.add(invalid);
+                    if (chunk.size() == batchChunkSize) {
+                        index = applyChunk(chunk, rejected, index, generator);
+                    }
+                    token = parser.nextToken();
+                }
+                index = applyChunk(chunk, rejected, index, generator);
+            } catch (JsonProcessingException ex) {
+                log.error("Error in reading batch transfer {}", ex.getOriginalMessage());
+                index = applyChunk(chunk, rejected, index, generator);
+                writeResult(generator, index++,
+                        TransferResult.rejected(TransferRejection.INVALID, "Malformed JSON: " + ex.getOriginalMessage()));
+            }
+        }
+        log.info("Batch transfer of {} items completed", index);
+    }
+
+    private long applyChunk(List<Transfer> chunk, List<TransferResult> rejected, long index, JsonGenerator generator)
+            throws IOException {
+        List<Transfer> valid = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            if (rejected.get(i) == null) {
+                valid.add(chunk.get(i));
+            }
+        }
+        List<TransferResult> applied = transferService.transfer(valid);
+        int next = 0;
+        for (int i = 0; i < chunk.size(); i++) {
+            TransferResult result = rejected.get(i);
+            writeResult(generator, index++, result != null ? result : applied.get(next++));
+        }
+        generator.flush();
+        chunk.clear();
+        rejected.clear();
+        return index;
+    }
+
+    static HttpStatus toHttpStatus(TransferStatus status) {
+        switch (status) {
+            case NOT_FOUND:
+                return HttpStatus.NOT_FOUND;
+            case INSUFFICIENT:
+                return HttpStatus.PRECONDITION_FAILED;
+            case BAD_REQUEST:
+                return HttpStatus.BAD_REQUEST;
+            case UNPROCESSABLE:
+                return HttpStatus.UNPROCESSABLE_ENTITY;
+            case FAILED:
+                return HttpStatus.INTERNAL_SERVER_ERROR;
+            default:
+                return HttpStatus.OK;
+        }
+    }
+
+    private static void writeResult(JsonGenerator generator, long index, TransferResult result) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("index", index);
+        generator.writeStringField("status", result.getStatus().name());
+        if (result.getMessage() != null) {
+            generator.writeStringField("message", result.getMessage());
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
 }
@@ -1,7 +1,9 @@
 package com.db.awmd.challenge.controller;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transaction;
 import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.web.AccountJsonCache;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -14,11 +16,13 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.web.context.WebApplicationContext;
 
 import java.math.BigDecimal;
+import java.util.Collections;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 
@@ -32,6 +36,9 @@ public class AccountsControllerTest {
   @Autowired
   private AccountsService accountsService;
 
+  @Autowired
+  private AccountJsonCache accountJsonCache;
+
   @Autowired
   private WebApplicationContext webApplicationContext;
 
@@ -103,4 +110,43 @@ public class AccountsControllerTest {
                     content().string("{\"accountId\":\"" + uniqueAccountId + "\",\"balance\":123.45}"));
   }
 
+  @Test
+  public void getAccount_cachedUntilBalanceChanges() throws Exception {
+    String uniqueAccountId = "Id-" + System.nanoTime();
+    this.accountsService.createAccount(new Account(uniqueAccountId, new BigDecimal("10.5")));
+    long hits = this.accountJsonCache.getHits();
+
+    for (int i = 0; i < 2; i++) {
+      this.mockMvc.perform(get("/v1/accounts/" + uniqueAccountId))
+              .andExpect(status().isOk())
+              .andExpect(content().string("{\"accountId\":\"" + uniqueAccountId + "\",\"balance\":10.5}"));
+    }
+    assertThat(this.accountJsonCache.getHits()).isEqualTo(hits + 1);
+
+    this.accountsService.getAccountsRepository().updateAccountsForTransactions(Collections.singletonList(
+            new Transaction(uniqueAccountId, new BigDecimal("-0.25"))));
+    this.mockMvc.perform(get("/v1/accounts/" + uniqueAccountId))
+            .andExpect(status().isOk())
+            .andExpect(content().string("{\"accountId\":\"" + uniqueAccountId + "\",\"balance\":10.25}"));
+    this.mockMvc.perform(get("/v1/accounts/Id-unknown"))
+            .andExpect(status().isOk())
+            .andExpect(content().string(""));
+  }
+
+  @Test
+  public void importAccounts_csv() throws Exception {
+    this.accountsService.createAccount(new Account("Id-existing", BigDecimal.ONE));
+
+    this.mockMvc.perform(post("/v1/accounts/import?expected=5").contentType("text/csv")
+            .content("accountId,balance\nId-1,100\nId-2,200.50\nId-existing,5\nId-3,-1\nId-4\nId-5,0\n"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.read").value(6))
+            .andExpect(jsonPath("$.created").value(3))
+            .andExpect(jsonPath("$.rejected").value(3))
+            .andExpect(jsonPath("$.error").doesNotExist());
+
+    assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("200.50");
+    assertThat(accountsService.getAccount("Id-existing").getBalance()).isEqualByComparingTo("1");
+    assertThat(accountsService.getAccount("Id-3")).isNull();
+  }
 }
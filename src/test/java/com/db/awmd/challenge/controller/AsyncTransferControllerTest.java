@@ -0,0 +1,118 @@
+package com.db.awmd.challenge.controller;
+
+import com.db.awmd.challenge.TestConfigurations;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.web.AccountJsonCache;
+import com.db.awmd.challenge.web.AsyncAccountsController;
+import com.db.awmd.challenge.web.RejectedRequestHandler;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = TestConfigurations.class)
+@WebAppConfiguration
+public class AsyncTransferControllerTest {
+
+    private MockMvc mockMvc;
+
+    @Autowired
+    private AccountsService accountsService;
+
+    @Autowired
+    private AccountJsonCache accountJsonCache;
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    @Before
+    public void prepareMockMvc() {
+        this.mockMvc = webAppContextSetup(this.webApplicationContext).build();
+        // Reset the existing accounts before each test.
+        this.accountsService.getAccountsRepository().clearAccounts();
+    }
+
+    @Test
+    public void transfer() throws Exception {
+        String accountIdFrom  = UUID.randomUUID().toString();
+        String accountIdTo = UUID.randomUUID().toString();
+
+        perform(post("/v2/accounts").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"accountId\":\"" + accountIdFrom + "\",\"balance\":1000}"))
+                .andExpect(status().isCreated());
+        this.accountsService.createAccount(new Account(accountIdTo, new BigDecimal(1000)));
+
+        perform(post("/v2/transfer").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"accountFromId\":\"" + accountIdFrom+"\",\"accountToId\":\""+accountIdTo+"\",\"amount\":271}"))
+                .andExpect(status().isOk());
+
+        perform(get("/v2/accounts/" + accountIdFrom))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"accountId\":\"" + accountIdFrom + "\",\"balance\":729}"));
+        assertThat(this.accountsService.getAccount(accountIdTo).getBalance()).isEqualByComparingTo("1271");
+    }
+
+    @Test
+    public void transfer_InsufficientMoney() throws Exception {
+        String accountIdFrom  = UUID.randomUUID().toString();
+        String accountIdTo = UUID.randomUUID().toString();
+
+        this.accountsService.createAccount(new Account(accountIdFrom, new BigDecimal(10)));
+        this.accountsService.createAccount(new Account(accountIdTo, new BigDecimal(10)));
+
+        perform(post("/v2/transfer").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"accountFromId\":\"" + accountIdFrom+"\",\"accountToId\":\""+accountIdTo+"\",\"amount\":11}"))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    /**
+     * Test that a request the request executor refuses is answered with service unavailable.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getAccount_executorFull() throws Exception {
+        ExecutorService requestExecutor = Executors.newSingleThreadExecutor();
+        requestExecutor.shutdown();
+        MockMvc mockMvc = standaloneSetup(new AsyncAccountsController(accountsService, requestExecutor,
+                accountJsonCache)).setControllerAdvice(new RejectedRequestHandler()).build();
+
+        mockMvc.perform(get("/v2/accounts/" + UUID.randomUUID()))
+                .andExpect(status().isServiceUnavailable());
+    }
+
+    /**
+     * Performs the request and, once its future is completed, the async dispatch which writes the response.
+     */
+    private ResultActions perform(RequestBuilder requestBuilder) throws Exception {
+        MvcResult started = this.mockMvc.perform(requestBuilder).andExpect(request().asyncStarted()).andReturn();
+        started.getAsyncResult();
+        return this.mockMvc.perform(asyncDispatch(started));
+    }
+}
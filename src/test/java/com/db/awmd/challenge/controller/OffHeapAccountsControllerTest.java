@@ -0,0 +1,10 @@
+package com.db.awmd.challenge.controller;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Runs the accounts controller tests on the {@link com.db.awmd.challenge.repository.AccountsRepositoryOffHeap}.
+ */
+@TestPropertySource(properties = "accounts.repository.type=off-heap")
+public class OffHeapAccountsControllerTest extends AccountsControllerTest {
+}
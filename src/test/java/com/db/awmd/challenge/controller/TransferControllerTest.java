@@ -11,6 +11,7 @@ import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
@@ -19,15 +20,20 @@ import org.springframework.web.context.WebApplicationContext;
 import java.math.BigDecimal;
 import java.util.UUID;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.startsWith;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(classes = TestConfigurations.class)
 @WebAppConfiguration
+@TestPropertySource(properties = "accounts.history.max-entries=1000")
 public class TransferControllerTest {
 
     private MockMvc mockMvc;
@@ -63,15 +69,82 @@ public class TransferControllerTest {
                 .content("{\"accountFromId\":\"" + accountIdFrom+"\",\"accountToId\":\""+accountIdTo+"\",\"amount\":271}"))
                 .andExpect(status().isOk());
 
-        Mockito.verify(this.notificationService,Mockito.times(1))
+        Mockito.verify(this.notificationService,Mockito.timeout(1000).times(1))
                 .notifyAboutTransfer(accountFrom, "Amount "
                         + new BigDecimal(271) + " is transferred to account ID " + accountIdTo);
 
-        Mockito.verify(this.notificationService,Mockito.times(1))
+        Mockito.verify(this.notificationService,Mockito.timeout(1000).times(1))
                 .notifyAboutTransfer(accountTo, "Amount "
                         + new BigDecimal(271) + " is transferred from account ID " + accountIdFrom);
     }
 
+    @Test
+    public void transfer_RetriedWithIdempotencyKey() throws Exception {
+        String accountIdFrom  = UUID.randomUUID().toString();
+        String accountIdTo = UUID.randomUUID().toString();
+
+        this.accountsService.createAccount(new Account(accountIdFrom, new BigDecimal(1000)));
+        this.accountsService.createAccount(new Account(accountIdTo, new BigDecimal(1000)));
+
+        String transfer = "{\"accountFromId\":\"" + accountIdFrom + "\",\"accountToId\":\"" + accountIdTo
+                + "\",\"amount\":600,\"idempotencyKey\":\"" + UUID.randomUUID() + "\"}";
+        this.mockMvc.perform(post("/v1/transfer").contentType(MediaType.APPLICATION_JSON).content(transfer))
+                .andExpect(status().isOk());
+        // the retry returns the first result instead of failing on the now insufficient balance
+        this.mockMvc.perform(post("/v1/transfer").contentType(MediaType.APPLICATION_JSON).content(transfer))
+                .andExpect(status().isOk());
+
+        this.mockMvc.perform(get("/v1/accounts/" + accountIdFrom))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"accountId\":\"" + accountIdFrom + "\",\"balance\":400}"));
+    }
+
+    @Test
+    public void transfer_IdempotencyKeyReusedForAnotherTransfer() throws Exception {
+        String accountIdFrom  = UUID.randomUUID().toString();
+        String accountIdTo = UUID.randomUUID().toString();
+        String key = UUID.randomUUID().toString();
+
+        this.accountsService.createAccount(new Account(accountIdFrom, new BigDecimal(1000)));
+        this.accountsService.createAccount(new Account(accountIdTo, new BigDecimal(1000)));
+
+        this.mockMvc.perform(post("/v1/transfer").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"accountFromId\":\"" + accountIdFrom + "\",\"accountToId\":\"" + accountIdTo
+                        + "\",\"amount\":100,\"idempotencyKey\":\"" + key + "\"}"))
+                .andExpect(status().isOk());
+        this.mockMvc.perform(post("/v1/transfer").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"accountFromId\":\"" + accountIdFrom + "\",\"accountToId\":\"" + accountIdTo
+                        + "\",\"amount\":200,\"idempotencyKey\":\"" + key + "\"}"))
+                .andExpect(status().isUnprocessableEntity());
+
+        this.mockMvc.perform(get("/v1/accounts/" + accountIdFrom))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"accountId\":\"" + accountIdFrom + "\",\"balance\":900}"));
+    }
+
+    @Test
+    public void transfer_Metrics() throws Exception {
+        String accountIdFrom  = UUID.randomUUID().toString();
+
+        this.accountsService.createAccount(new Account(accountIdFrom, new BigDecimal(1000)));
+
+        this.mockMvc.perform(post("/v1/transfer").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"accountFromId\":\"" + accountIdFrom + "\",\"accountToId\":\"" + accountIdFrom
+                        + "\",\"amount\":1}"))
+                .andExpect(status().isBadRequest());
+
+        this.mockMvc.perform(get("/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("transfer_duration_seconds_bucket")))
+                .andExpect(content().string(containsString(
+                        "transfer_outcomes_total{outcome=\"SAME_ACCOUNT\",}")))
+                .andExpect(content().string(containsString("accounts_count 1.0")))
+                .andExpect(content().string(containsString("notification_lag_milliseconds")))
+                .andExpect(content().string(containsString("notification_delivered_total")))
+                .andExpect(content().string(containsString("notification_dropped_total")))
+                .andExpect(content().string(containsString("notification_spilled_total")));
+    }
+
     @Test
     public void transfer_NoFromAccount() throws Exception {
         String accountIdFrom  = UUID.randomUUID().toString();
@@ -111,7 +184,9 @@ public class TransferControllerTest {
 
         this.mockMvc.perform(post("/v1/transfer").contentType(MediaType.APPLICATION_JSON)
                 .content("{\"accountFromId\":\"" + accountIdFrom+"\",\"accountToId\":\""+accountIdTo+"\",\"amount\":-221}"))
-                .andExpect(status().isBadRequest());
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.field").value("amount"))
+                .andExpect(jsonPath("$.message").value("Transfer amount must be positive."));
     }
 
     @Test
@@ -218,4 +293,112 @@ public class TransferControllerTest {
                 .andExpect(content().string("{\"accountId\":\"" + accountIdTo + "\",\"balance\":2000}"));
     }
 
+    @Test
+    public void transferBatch_JsonArray() throws Exception {
+        String accountIdFrom  = UUID.randomUUID().toString();
+        String accountIdTo = UUID.randomUUID().toString();
+
+        this.accountsService.createAccount(new Account(accountIdFrom, new BigDecimal(1000)));
+        this.accountsService.createAccount(new Account(accountIdTo, new BigDecimal(1000)));
+
+        this.mockMvc.perform(post("/v1/transfer/batch").contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"accountFromId\":\"" + accountIdFrom+"\",\"accountToId\":\""+accountIdTo+"\",\"amount\":600},"
+                        + "{\"accountFromId\":\"" + accountIdFrom+"\",\"accountToId\":\""+accountIdTo+"\",\"amount\":600},"
+                        + "{\"accountFromId\":\"" + accountIdFrom+"\",\"accountToId\":\"unknown\",\"amount\":10},"
+                        + "{\"accountFromId\":\"" + accountIdFrom+"\",\"accountToId\":\""+accountIdTo+"\",\"amount\":-5},"
+                        + "{\"accountFromId\":\"" + accountIdTo+"\",\"accountToId\":\""+accountIdFrom+"\",\"amount\":100}]"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"index\":0,\"status\":\"OK\"}\n"
+                        + "{\"index\":1,\"status\":\"INSUFFICIENT\",\"message\":\"Insufficient money to transfer\"}\n"
+                        + "{\"index\":2,\"status\":\"NOT_FOUND\",\"message\":\"Account unknown do not exists\"}\n"
+                        + "{\"index\":3,\"status\":\"BAD_REQUEST\",\"message\":\"Invalid transfer {\\\"accountFromId\\\":\\\""
+                        + accountIdFrom + "\\\",\\\"accountToId\\\":\\\"" + accountIdTo + "\\\",\\\"amount\\\":-5}\"}\n"
+                        + "{\"index\":4,\"status\":\"OK\"}\n"));
+
+        this.mockMvc.perform(get("/v1/accounts/" + accountIdFrom))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"accountId\":\"" + accountIdFrom + "\",\"balance\":500}"));
+    }
+
+    @Test
+    public void transferBatch_Ndjson() throws Exception {
+        String accountIdFrom  = UUID.randomUUID().toString();
+        String accountIdTo = UUID.randomUUID().toString();
+
+        this.accountsService.createAccount(new Account(accountIdFrom, new BigDecimal(1000)));
+        this.accountsService.createAccount(new Account(accountIdTo, new BigDecimal(1000)));
+
+        this.mockMvc.perform(post("/v1/transfer/batch").contentType("application/x-ndjson")
+                .content("{\"accountFromId\":\"" + accountIdFrom+"\",\"accountToId\":\""+accountIdTo+"\",\"amount\":100}\n"
+                        + "{\"accountFromId\":\"" + accountIdTo+"\",\"accountToId\":\""+accountIdTo+"\",\"amount\":100}\n"
+                        + "{\"accountFromId\":\"" + accountIdFrom+"\",\"accountToId\":"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(startsWith("{\"index\":0,\"status\":\"OK\"}\n"
+                        + "{\"index\":1,\"status\":\"BAD_REQUEST\",\"message\":\"Can not transfer amount to same account\"}\n"
+                        + "{\"index\":2,\"status\":\"BAD_REQUEST\",\"message\":\"Malformed JSON")));
+
+        this.mockMvc.perform(get("/v1/accounts/" + accountIdTo))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"accountId\":\"" + accountIdTo + "\",\"balance\":1100}"));
+    }
+
+    @Test
+    public void transactions_Paginated() throws Exception {
+        String accountIdFrom  = UUID.randomUUID().toString();
+        String accountIdTo = UUID.randomUUID().toString();
+
+        this.accountsService.createAccount(new Account(accountIdFrom, new BigDecimal(1000)));
+        this.accountsService.createAccount(new Account(accountIdTo, new BigDecimal(1000)));
+        for (int amount = 1; amount <= 3; amount++) {
+            this.mockMvc.perform(post("/v1/transfer").contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"accountFromId\":\"" + accountIdFrom + "\",\"accountToId\":\"" + accountIdTo
+                            + "\",\"amount\":" + amount + "}"))
+                    .andExpect(status().isOk());
+        }
+
+        this.mockMvc.perform(get("/v1/accounts/" + accountIdFrom + "/transactions?limit=2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accountId").value(accountIdFrom))
+                .andExpect(jsonPath("$.transactions[0].sequence").value(2))
+                .andExpect(jsonPath("$.transactions[0].counterpartId").value(accountIdTo))
+                .andExpect(jsonPath("$.transactions[0].amount").value(-3.0))
+                .andExpect(jsonPath("$.transactions[1].amount").value(-2.0))
+                .andExpect(jsonPath("$.nextCursor").value(1));
+        this.mockMvc.perform(get("/v1/accounts/" + accountIdTo + "/transactions?limit=2&cursor=1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.transactions.length()").value(1))
+                .andExpect(jsonPath("$.transactions[0].amount").value(1.0))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+        this.mockMvc.perform(get("/v1/accounts/" + UUID.randomUUID() + "/transactions"))
+                .andExpect(status().isNotFound());
+        this.mockMvc.perform(get("/v1/accounts/" + accountIdTo + "/transactions?limit=0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void transferMultiLeg() throws Exception {
+        String payerId = UUID.randomUUID().toString();
+        String payeeId1 = UUID.randomUUID().toString();
+        String payeeId2 = UUID.randomUUID().toString();
+        this.accountsService.createAccount(new Account(payerId, new BigDecimal(1000)));
+        this.accountsService.createAccount(new Account(payeeId1, BigDecimal.ZERO));
+        this.accountsService.createAccount(new Account(payeeId2, BigDecimal.ZERO));
+
+        this.mockMvc.perform(post("/v1/transfer/multi-leg").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"debits\":[{\"accountId\":\"" + payerId + "\",\"amount\":300}],"
+                        + "\"credits\":[{\"accountId\":\"" + payeeId1 + "\",\"amount\":100},"
+                        + "{\"accountId\":\"" + payeeId2 + "\",\"amount\":200}]}"))
+                .andExpect(status().isOk());
+        this.mockMvc.perform(post("/v1/transfer/multi-leg").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"debits\":[{\"accountId\":\"" + payerId + "\",\"amount\":800}],"
+                        + "\"credits\":[{\"accountId\":\"" + payeeId1 + "\",\"amount\":800}]}"))
+                .andExpect(status().isPreconditionFailed());
+        this.mockMvc.perform(post("/v1/transfer/multi-leg").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"debits\":[],\"credits\":[{\"accountId\":\"" + payeeId1 + "\",\"amount\":1}]}"))
+                .andExpect(status().isBadRequest());
+
+        assertThat(this.accountsService.getAccount(payerId).getBalance()).isEqualByComparingTo("700");
+        assertThat(this.accountsService.getAccount(payeeId2).getBalance()).isEqualByComparingTo("200");
+    }
+
 }
@@ -0,0 +1,123 @@
+package com.db.awmd.challenge.repository;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class AccountIdIndexTest {
+
+    /**
+     * Test that ids get dense slots, are found again after the table was resized and duplicates are refused.
+     */
+    @Test
+    public void addAndFind() {
+        AccountIdIndex index = new AccountIdIndex(16);
+        int[] initialized = new int[100_000];
+        for (int i = 0; i < 100_000; i++) {
+            assertThat(index.add("Id-" + i, slot -> initialized[slot]++)).isEqualTo(i);
+        }
+
+        assertThat(index.size()).isEqualTo(100_000);
+        assertThat(initialized).containsOnly(1);
+        for (int i = 0; i < 100_000; i++) {
+            assertThat(index.slotOf("Id-" + i)).isEqualTo(i);
+        }
+        assertThat(index.idOf(4242)).isEqualTo("Id-4242");
+        assertThat(index.slotOf("Id-100000")).isEqualTo(-1);
+        assertThat(index.add("Id-7", slot -> { })).isEqualTo(-1);
+    }
+
+    /**
+     * Test that ids which are not ASCII are matched on their UTF-8 bytes.
+     */
+    @Test
+    public void addAndFind_utf8() {
+        AccountIdIndex index = new AccountIdIndex();
+        index.add("Konto-äöü", slot -> { });
+        index.add("Konto-aou", slot -> { });
+        index.add("💰", slot -> { });
+
+        assertThat(index.slotOf("Konto-äöü")).isEqualTo(0);
+        assertThat(index.slotOf("Konto-aou")).isEqualTo(1);
+        assertThat(index.slotOf("💰")).isEqualTo(2);
+        assertThat(index.slotOf("Konto-äö")).isEqualTo(-1);
+        assertThat(index.idOf(0)).isEqualTo("Konto-äöü");
+    }
+
+    /**
+     * Test that readers find every id added before while another thread keeps adding and resizing.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void findWhileResizing() throws Exception {
+        AccountIdIndex index = new AccountIdIndex(16);
+        index.add("Id-0", slot -> { });
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> writer = executor.submit(() -> {
+                for (int i = 1; i < 200_000; i++) {
+                    index.add("Id-" + i, slot -> { });
+                }
+            });
+            while (!writer.isDone()) {
+                int size = index.size();
+                assertThat(index.slotOf("Id-0")).isEqualTo(0);
+                if (size > 0) {
+                    assertThat(index.slotOf("Id-" + (size - 1))).isEqualTo(size - 1);
+                }
+            }
+            writer.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Test that an index sized ahead keeps the ids added before and finds the ids added after.
+     */
+    @Test
+    public void ensureCapacity() {
+        AccountIdIndex index = new AccountIdIndex(16);
+        for (int i = 0; i < 10; i++) {
+            index.add("Id-" + i, slot -> { });
+        }
+
+        index.ensureCapacity(100_000);
+        for (int i = 10; i < 100_000; i++) {
+            index.add("Id-" + i, slot -> { });
+        }
+
+        assertThat(index.slotOf("Id-3")).isEqualTo(3);
+        assertThat(index.slotOf("Id-99999")).isEqualTo(99_999);
+    }
+
+    /**
+     * Test that an index holding three quarters of its largest table refuses further ids before changing anything,
+     * and still answers lookups of missing ids.
+     */
+    @Test
+    public void add_full() {
+        AccountIdIndex index = new AccountIdIndex(16, 64);
+        for (int i = 0; i < 48; i++) {
+            index.add("Id-" + i, slot -> { });
+        }
+
+        try {
+            index.add("Id-48", slot -> fail("Initializer runs for slot " + slot));
+            fail("Full index adds an id");
+        } catch (IllegalStateException ex) {
+            assertThat(ex.getMessage()).isEqualTo("Account id index is full with 48 ids");
+        }
+        assertThat(index.size()).isEqualTo(48);
+        assertThat(index.slotOf("Id-47")).isEqualTo(47);
+        assertThat(index.slotOf("Id-48")).isEqualTo(-1);
+        assertThat(index.add("Id-0", slot -> { })).isEqualTo(-1);
+    }
+}
@@ -0,0 +1,90 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.exception.AmountOutOfRangeException;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class AccountsRepositoryFixedPointTest {
+
+    /**
+     * Test that an amount with more decimal places than the scale is rejected and no balance is changed.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void updateAccountsForTransactions_tooManyDecimals() throws Exception {
+        AccountsRepositoryFixedPoint repository = new AccountsRepositoryFixedPoint(2);
+        repository.createAccount(new Account("Id-1", new BigDecimal(1000)));
+        repository.createAccount(new Account("Id-2", new BigDecimal(1000)));
+
+        try {
+            repository.updateAccountsForTransactions(Arrays.asList(
+                    new Transaction("Id-1", new BigDecimal("-0.001")), new Transaction("Id-2", new BigDecimal("0.001"))));
+            fail("Amount with three decimal places is stored with scale 2");
+        } catch (AmountOutOfRangeException ex) {
+            assertThat(ex.getMessage()).isEqualTo("Amount -0.001 can not be stored with scale 2");
+        }
+        try {
+            repository.createAccount(new Account("Id-3", new BigDecimal("10.005")));
+            fail("Balance with three decimal places is stored with scale 2");
+        } catch (AmountOutOfRangeException ex) {
+            assertThat(repository.getAccount("Id-3")).isNull();
+        }
+        assertThat(repository.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal(1000));
+        assertThat(repository.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal(1000));
+    }
+
+    /**
+     * Test that the legs applied before a leg which overflows its balance are rolled back.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void updateAccountsForTransactions_overflowRollsBack() throws Exception {
+        AccountsRepositoryFixedPoint repository = new AccountsRepositoryFixedPoint(2);
+        BigDecimal max = BigDecimal.valueOf(Long.MAX_VALUE, 2);
+        repository.createAccount(new Account("Id-1", new BigDecimal(1000)));
+        repository.createAccount(new Account("Id-2", new BigDecimal(1000)));
+        repository.createAccount(new Account("Id-full", max));
+
+        try {
+            repository.updateAccountsForTransactions(Arrays.asList(
+                    new Transaction("Id-1", new BigDecimal(-100)),
+                    new Transaction("Id-2", new BigDecimal(50)),
+                    new Transaction("Id-full", new BigDecimal(50))));
+            fail("Balance overflow is not detected");
+        } catch (AmountOutOfRangeException ex) {
+            assertThat(ex.getMessage()).startsWith("Balance overflow");
+        }
+        assertThat(repository.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal(1000));
+        assertThat(repository.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal(1000));
+        assertThat(repository.getAccount("Id-full").getBalance()).isEqualTo(max);
+    }
+
+    /**
+     * Test that balances are read back at the configured scale, without trailing zeros.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getAccount_configuredScale() throws Exception {
+        AccountsRepositoryFixedPoint repository = new AccountsRepositoryFixedPoint(4);
+        repository.createAccount(new Account("Id-1", new BigDecimal("1000.1234")));
+        repository.createAccount(new Account("Id-2", new BigDecimal("1000.00")));
+
+        repository.updateAccountsForTransactions(Collections.singletonList(
+                new Transaction("Id-1", new BigDecimal("0.0006"))));
+
+        assertThat(repository.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal("1000.124"));
+        assertThat(repository.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal(1000));
+        assertThat(repository.getAccount("Id-2").getBalance().scale()).isZero();
+    }
+}
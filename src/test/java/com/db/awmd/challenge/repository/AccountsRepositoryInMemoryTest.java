@@ -0,0 +1,130 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transaction;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AccountsRepositoryInMemoryTest {
+
+    /**
+     * Test that changing a returned account does not change the repository.
+     */
+    @Test
+    public void getAccount_copy() {
+        AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+        Account account = new Account("Id-1", new BigDecimal(1000));
+        repository.createAccount(account);
+
+        account.setBalance(BigDecimal.ZERO);
+        repository.getAccount("Id-1").setBalance(BigDecimal.ZERO);
+
+        assertThat(repository.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal(1000));
+    }
+
+    /**
+     * Test that no update is lost when threads transfer between the same accounts in opposite directions while other
+     * threads credit and debit one of them alone.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void updateAccountsForTransactions_concurrent() throws Exception {
+        AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+        repository.createAccount(new Account("Id-1", new BigDecimal(1000)));
+        repository.createAccount(new Account("Id-2", new BigDecimal(1000)));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] futures = new Future<?>[4];
+            for (int t = 0; t < 4; t++) {
+                BigDecimal amount = t % 2 == 0 ? BigDecimal.ONE : BigDecimal.ONE.negate();
+                boolean transfer = t < 2;
+                futures[t] = executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        repository.updateAccountsForTransactions(transfer
+                                ? Arrays.asList(new Transaction("Id-1", amount.negate()), new Transaction("Id-2", amount))
+                                : Collections.singletonList(new Transaction("Id-1", amount)));
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(repository.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal(1000));
+        assertThat(repository.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal(1000));
+    }
+
+    /**
+     * Test that a hot account split into stripes keeps an exact total when threads credit their own stripes and
+     * debits borrow across them.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void updateAccountsForTransactions_hotAccount() throws Exception {
+        AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory(Collections.singleton("Fees"), 4);
+        repository.createAccount(new Account("Fees", BigDecimal.ZERO));
+        repository.createAccount(new Account("Id-1", new BigDecimal(40_000)));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] futures = new Future<?>[4];
+            for (int t = 0; t < 4; t++) {
+                futures[t] = executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        repository.updateAccountsForTransactions(Arrays.asList(
+                                new Transaction("Id-1", BigDecimal.ONE.negate()), new Transaction("Fees", BigDecimal.ONE)));
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(repository.isHotAccount("Fees")).isTrue();
+        assertThat(repository.getAccount("Fees").getBalance()).isEqualByComparingTo("40000");
+        // one debit larger than any single stripe once the credits spread over several
+        repository.updateAccountsForTransactions(Collections.singletonList(
+                new Transaction("Fees", new BigDecimal(-39_999))));
+        assertThat(repository.getAccount("Fees").getBalance()).isEqualByComparingTo("1");
+        assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo("0");
+    }
+
+    /**
+     * Test that an update of many accounts is applied to every one of them.
+     */
+    @Test
+    public void updateAccountsForTransactions_manyAccounts() {
+        AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+        int accounts = 50_000;
+        List<Transaction> transactions = new ArrayList<>(accounts + 1);
+        repository.createAccount(new Account("Payer", new BigDecimal(accounts)));
+        transactions.add(new Transaction("Payer", new BigDecimal(-accounts)));
+        for (int i = 0; i < accounts; i++) {
+            repository.createAccount(new Account("Id-" + i, BigDecimal.ZERO));
+            transactions.add(new Transaction("Id-" + i, BigDecimal.ONE));
+        }
+
+        repository.updateAccountsForTransactions(transactions);
+
+        assertThat(repository.getAccount("Payer").getBalance()).isEqualByComparingTo("0");
+        assertThat(repository.getAccount("Id-" + (accounts - 1)).getBalance()).isEqualByComparingTo("1");
+    }
+}
@@ -0,0 +1,45 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transaction;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AccountsRepositoryOffHeapTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that the accounts of a mapped file are found again after it was reopened, across segments.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void reopenAccounts() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("accounts.dat");
+
+        try (AccountsRepositoryOffHeap repository = new AccountsRepositoryOffHeap(2, path)) {
+            for (int i = 0; i < 70_000; i++) {
+                repository.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+            }
+            repository.updateAccountsForTransactions(Arrays.asList(
+                    new Transaction("Id-1", new BigDecimal("-200.25")),
+                    new Transaction("Id-69999", new BigDecimal("200.25"))));
+        }
+
+        try (AccountsRepositoryOffHeap repository = new AccountsRepositoryOffHeap(2, path)) {
+            assertThat(repository.countAccounts()).isEqualTo(70_000);
+            assertThat(repository.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal("799.75"));
+            assertThat(repository.getAccount("Id-69999").getBalance()).isEqualTo(new BigDecimal("1200.25"));
+            assertThat(repository.getAccount("Id-70000")).isNull();
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.AmountOutOfRangeException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class JournaledAccountsRepositoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that the accounts are recovered from the journal after a restart.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void recoverAccounts() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("accounts.journal");
+
+        try (JournaledAccountsRepository repository = new JournaledAccountsRepository(new AccountsRepositoryInMemory(),
+                path, TransactionJournal.SyncPolicy.PER_TRANSFER, 0)) {
+            repository.createAccount(new Account("Id-1", new BigDecimal("1000.50")));
+            repository.createAccount(new Account("Id-2", new BigDecimal(1000)));
+            repository.updateAccountsForTransactions(Arrays.asList(
+                    new Transaction("Id-1", new BigDecimal("-200.25")), new Transaction("Id-2", new BigDecimal("200.25"))));
+            repository.awaitDurable();
+        }
+
+        try (JournaledAccountsRepository repository = new JournaledAccountsRepository(new AccountsRepositoryInMemory(),
+                path, TransactionJournal.SyncPolicy.OS, 0)) {
+            assertThat(repository.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal("800.25"));
+            assertThat(repository.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal("1200.25"));
+        }
+    }
+
+    /**
+     * Test that transfers into accounts while they are created are replayed after the creations.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void recoverAccounts_transfersIntoNewAccounts() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("accounts.journal");
+        int accounts = 2000;
+        Map<String, BigDecimal> balances = new HashMap<>();
+
+        try (JournaledAccountsRepository repository = new JournaledAccountsRepository(new AccountsRepositoryInMemory(),
+                path, TransactionJournal.SyncPolicy.OS, 0)) {
+            repository.createAccount(new Account("Id-payer", new BigDecimal(1_000_000)));
+            Thread creator = new Thread(() -> {
+                for (int i = 0; i < accounts; i++) {
+                    repository.createAccount(new Account("Id-" + i, BigDecimal.ZERO));
+                }
+            });
+            creator.start();
+            for (int i = 0; i < accounts; i++) {
+                while (repository.getAccount("Id-" + i) == null) {
+                    Thread.yield();
+                }
+                repository.updateAccountsForTransactions(Arrays.asList(
+                        new Transaction("Id-payer", BigDecimal.ONE.negate()), new Transaction("Id-" + i, BigDecimal.ONE)));
+            }
+            creator.join();
+            repository.awaitDurable();
+            for (int i = 0; i < accounts; i++) {
+                balances.put("Id-" + i, repository.getAccount("Id-" + i).getBalance());
+            }
+        }
+
+        try (JournaledAccountsRepository repository = new JournaledAccountsRepository(new AccountsRepositoryInMemory(),
+                path, TransactionJournal.SyncPolicy.OS, 0)) {
+            for (int i = 0; i < accounts; i++) {
+                assertThat(repository.getAccount("Id-" + i).getBalance()).isEqualTo(balances.get("Id-" + i));
+            }
+            assertThat(repository.getAccount("Id-payer").getBalance()).isEqualTo(new BigDecimal(1_000_000 - accounts));
+        }
+    }
+
+    /**
+     * Test that a torn record at the end of the journal is dropped and the journal stays usable.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void recoverAccounts_tornTail() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("accounts.journal");
+
+        try (JournaledAccountsRepository repository = new JournaledAccountsRepository(new AccountsRepositoryInMemory(),
+                path, TransactionJournal.SyncPolicy.PER_TRANSFER, 0)) {
+            repository.createAccount(new Account("Id-1", new BigDecimal(1000)));
+            repository.createAccount(new Account("Id-2", new BigDecimal(1000)));
+        }
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        try (JournaledAccountsRepository repository = new JournaledAccountsRepository(new AccountsRepositoryInMemory(),
+                path, TransactionJournal.SyncPolicy.PER_TRANSFER, 0)) {
+            assertThat(repository.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal(1000));
+            assertThat(repository.getAccount("Id-2")).isNull();
+            repository.createAccount(new Account("Id-3", new BigDecimal(10)));
+        }
+
+        try (JournaledAccountsRepository repository = new JournaledAccountsRepository(new AccountsRepositoryInMemory(),
+                path, TransactionJournal.SyncPolicy.PER_TRANSFER, 0)) {
+            assertThat(repository.getAccount("Id-3").getBalance()).isEqualTo(new BigDecimal(10));
+        }
+    }
+
+    /**
+     * Test that a replay up to a limit leaves out the record which does not end before the limit, like the records
+     * written after the size of the journal was taken for a snapshot.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void replay_stopsAtLimit() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("accounts.journal");
+        long first;
+        try (JournaledAccountsRepository repository = new JournaledAccountsRepository(new AccountsRepositoryInMemory(),
+                path, TransactionJournal.SyncPolicy.PER_TRANSFER, 0)) {
+            repository.createAccount(new Account("Id-1", new BigDecimal(1000)));
+            first = repository.getJournal().size();
+            repository.createAccount(new Account("Id-2", new BigDecimal(1000)));
+        }
+
+        Map<String, BigDecimal> balances = new HashMap<>();
+        JournaledAccountsRepository.SnapshotHandler handler = new JournaledAccountsRepository.SnapshotHandler(balances,
+                new AccountsRepositoryInMemory());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            assertThat(TransactionJournal.replay(channel, 0, channel.size() - 1,
+                    payload -> JournalCodec.decode(payload, handler))).isEqualTo(first);
+        }
+        assertThat(balances).containsOnlyKeys("Id-1");
+    }
+
+    /**
+     * Test that the accounts are recovered from the snapshot and the journal records written after it.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void recoverAccounts_fromSnapshot() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("accounts.journal");
+        Path snapshotPath = folder.getRoot().toPath().resolve("accounts.snapshot");
+
+        try (JournaledAccountsRepository repository = new JournaledAccountsRepository(new AccountsRepositoryInMemory(),
+                path, TransactionJournal.SyncPolicy.OS, 0, snapshotPath)) {
+            repository.createAccount(new Account("Id-1", new BigDecimal(1000)));
+            repository.createAccount(new Account("Id-2", new BigDecimal(1000)));
+            repository.updateAccountsForTransactions(Arrays.asList(
+                    new Transaction("Id-1", new BigDecimal(-100)), new Transaction("Id-2", new BigDecimal(100))));
+            repository.awaitDurable();
+            assertThat(repository.snapshot()).isEqualTo(repository.getJournal().size());
+
+            repository.createAccount(new Account("Id-3", new BigDecimal(1000)));
+            repository.updateAccountsForTransactions(Arrays.asList(
+                    new Transaction("Id-2", new BigDecimal("-0.5")), new Transaction("Id-3", new BigDecimal("0.5"))));
+            repository.awaitDurable();
+        }
+
+        Map<String, BigDecimal> snapshot = new HashMap<>();
+        AccountSnapshot.read(snapshotPath, snapshot::put);
+        assertThat(snapshot).containsOnlyKeys("Id-1", "Id-2");
+
+        try (JournaledAccountsRepository repository = new JournaledAccountsRepository(new AccountsRepositoryInMemory(),
+                path, TransactionJournal.SyncPolicy.OS, 0, snapshotPath)) {
+            assertThat(repository.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal(900));
+            assertThat(repository.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal("1099.5"));
+            assertThat(repository.getAccount("Id-3").getBalance()).isEqualTo(new BigDecimal("1000.5"));
+        }
+    }
+
+    /**
+     * Test that a reservation neither committed nor released when the journal ends is refunded on recovery, and the
+     * refund is journaled.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void recoverAccounts_openReservation() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("accounts.journal");
+        Transfer committed = new Transfer("Id-1", "Id-2", new BigDecimal(100));
+        Transfer open = new Transfer("Id-1", "Id-2", new BigDecimal(30));
+
+        try (JournaledAccountsRepository repository = new JournaledAccountsRepository(new AccountsRepositoryInMemory(),
+                path, TransactionJournal.SyncPolicy.OS, 0)) {
+            repository.createAccount(new Account("Id-1", new BigDecimal(1000)));
+            repository.createAccount(new Account("Id-2", new BigDecimal(1000)));
+            repository.reserve(1, committed);
+            repository.commitReservation(1, committed);
+            repository.reserve(2, open);
+            repository.awaitDurable();
+        }
+
+        for (int restart = 0; restart < 2; restart++) {
+            try (JournaledAccountsRepository repository = new JournaledAccountsRepository(
+                    new AccountsRepositoryInMemory(), path, TransactionJournal.SyncPolicy.OS, 0)) {
+                assertThat(repository.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal(900));
+                assertThat(repository.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal(1100));
+            }
+        }
+    }
+
+    /**
+     * Test that a snapshot taken while a reservation is open refunds it, and the commit after the snapshot is
+     * recovered as the whole transfer.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void recoverAccounts_reservationAcrossSnapshot() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("accounts.journal");
+        Path snapshotPath = folder.getRoot().toPath().resolve("accounts.snapshot");
+        Transfer transfer = new Transfer("Id-1", "Id-2", new BigDecimal(100));
+
+        try (JournaledAccountsRepository repository = new JournaledAccountsRepository(new AccountsRepositoryInMemory(),
+                path, TransactionJournal.SyncPolicy.OS, 0, snapshotPath)) {
+            repository.createAccount(new Account("Id-1", new BigDecimal(1000)));
+            repository.createAccount(new Account("Id-2", new BigDecimal(1000)));
+            repository.reserve(1, transfer);
+            repository.awaitDurable();
+            repository.snapshot();
+
+            Map<String, BigDecimal> snapshot = new HashMap<>();
+            AccountSnapshot.read(snapshotPath, snapshot::put);
+            assertThat(snapshot.get("Id-1")).isEqualTo(new BigDecimal(1000));
+
+            repository.commitReservation(1, transfer);
+            repository.awaitDurable();
+        }
+
+        try (JournaledAccountsRepository repository = new JournaledAccountsRepository(new AccountsRepositoryInMemory(),
+                path, TransactionJournal.SyncPolicy.OS, 0, snapshotPath)) {
+            assertThat(repository.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal(900));
+            assertThat(repository.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal(1100));
+        }
+    }
+
+    /**
+     * Test that an account the repository can not store is neither journaled nor taken into a snapshot, also if an
+     * older journal holds its creation, so the accounts are recovered from the snapshot.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void recoverAccounts_fromSnapshotWithRefusedCreation() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("accounts.journal");
+        Path snapshotPath = folder.getRoot().toPath().resolve("accounts.snapshot");
+
+        try (JournaledAccountsRepository repository = new JournaledAccountsRepository(
+                new AccountsRepositoryFixedPoint(2), path, TransactionJournal.SyncPolicy.OS, 0, snapshotPath)) {
+            repository.createAccount(new Account("Id-1", new BigDecimal(1000)));
+            long size = repository.getJournal().size();
+            try {
+                repository.createAccount(new Account("Id-2", new BigDecimal("0.001")));
+                fail("Balance with three decimal places is stored with scale 2");
+            } catch (AmountOutOfRangeException ex) {
+                assertThat(repository.getJournal().size()).isEqualTo(size);
+            }
+            // as journaled before the account was checked
+            repository.getJournal().await(repository.getJournal().append(
+                    JournalCodec.encodeCreate(new Account("Id-3", new BigDecimal("0.001")))));
+            repository.updateAccountsForTransactions(Arrays.asList(
+                    new Transaction("Id-1", new BigDecimal(-100)), new Transaction("Id-3", new BigDecimal(100))));
+            repository.awaitDurable();
+            repository.snapshot();
+        }
+
+        Map<String, BigDecimal> snapshot = new HashMap<>();
+        AccountSnapshot.read(snapshotPath, snapshot::put);
+        assertThat(snapshot).containsOnlyKeys("Id-1");
+
+        try (JournaledAccountsRepository repository = new JournaledAccountsRepository(
+                new AccountsRepositoryFixedPoint(2), path, TransactionJournal.SyncPolicy.OS, 0, snapshotPath)) {
+            assertThat(repository.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal(900));
+            assertThat(repository.getAccount("Id-2")).isNull();
+            assertThat(repository.getAccount("Id-3")).isNull();
+        }
+    }
+
+    /**
+     * Test that an account id or amount too long for a journal record is refused before the repository or the
+     * journal is changed, instead of being journaled with a truncated length.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void updateAccounts_tooLongForJournal() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("accounts.journal");
+        String longId = String.join("", Collections.nCopies(JournalCodec.MAX_STRING_LENGTH + 1, "a"));
+        BigDecimal longAmount = new BigDecimal(BigInteger.ONE.shiftLeft(8 * JournalCodec.MAX_UNSCALED_LENGTH));
+
+        try (JournaledAccountsRepository repository = new JournaledAccountsRepository(new AccountsRepositoryInMemory(),
+                path, TransactionJournal.SyncPolicy.OS, 0)) {
+            repository.createAccount(new Account("Id-1", new BigDecimal(1000)));
+            repository.createAccount(new Account("Id-2", new BigDecimal(1000)));
+            long size = repository.getJournal().size();
+            try {
+                repository.createAccount(new Account(longId, BigDecimal.ZERO));
+                fail("Account id longer than a journal string is journaled");
+            } catch (IllegalArgumentException ex) {
+                assertThat(repository.getAccount(longId)).isNull();
+            }
+            try {
+                repository.updateAccountsForTransactions(Arrays.asList(
+                        new Transaction("Id-1", longAmount.negate()), new Transaction("Id-2", longAmount)));
+                fail("Amount longer than a journal amount is journaled");
+            } catch (AmountOutOfRangeException ex) {
+                assertThat(repository.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal(1000));
+            }
+            assertThat(repository.getJournal().size()).isEqualTo(size);
+        }
+    }
+}
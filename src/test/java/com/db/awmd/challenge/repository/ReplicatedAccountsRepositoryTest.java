@@ -0,0 +1,157 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.AmountOutOfRangeException;
+import com.db.awmd.challenge.service.TransferService;
+import org.junit.Test;
+
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class ReplicatedAccountsRepositoryTest {
+
+    private static final int ACCOUNTS = 10;
+
+    /**
+     * Test that concurrent transfers on the primary end with the same balances on two standbys listening on localhost.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void replicateTransfers() throws Exception {
+        try (StandbyAccountsRepository first = new StandbyAccountsRepository(new AccountsRepositoryInMemory(), 0);
+             StandbyAccountsRepository second = new StandbyAccountsRepository(new AccountsRepositoryInMemory(), 0);
+             ReplicatedAccountsRepository primary = new ReplicatedAccountsRepository(new AccountsRepositoryInMemory(),
+                     Arrays.asList(new InetSocketAddress("localhost", first.getPort()),
+                             new InetSocketAddress("localhost", second.getPort())),
+                     ReplicatedAccountsRepository.AckLevel.ONE)) {
+            for (int i = 0; i < ACCOUNTS; i++) {
+                primary.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+            }
+            TransferService transferService = new TransferService(primary, (account, description) -> { });
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            Future<?>[] futures = new Future<?>[4];
+            for (int t = 0; t < futures.length; t++) {
+                int seed = t;
+                futures[t] = executor.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 500; i++) {
+                        int from = random.nextInt(ACCOUNTS);
+                        transferService.tryTransfer(new Transfer("Id-" + from,
+                                "Id-" + (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS, new BigDecimal("1.25")));
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+
+            awaitSameBalances(primary, first);
+            awaitSameBalances(primary, second);
+            assertThat(primary.getConnectedStandbys()).isEqualTo(2);
+            assertThat(first.getAppliedSequence()).isEqualTo(second.getAppliedSequence());
+        }
+    }
+
+    /**
+     * Test that a standby refuses changes by its clients.
+     *
+     * @throws Exception
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void updateAccountsForTransactions_standbyReadOnly() throws Exception {
+        try (StandbyAccountsRepository standby = new StandbyAccountsRepository(new AccountsRepositoryInMemory(), 0)) {
+            standby.updateAccountsForTransactions(
+                    Collections.singletonList(new Transaction("Id-1", BigDecimal.ONE)));
+        }
+    }
+
+    /**
+     * Test that a change waiting for one acknowledgement fails once the last standby is gone.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void awaitDurable_noStandby() throws Exception {
+        StandbyAccountsRepository standby = new StandbyAccountsRepository(new AccountsRepositoryInMemory(), 0);
+        try (ReplicatedAccountsRepository primary = new ReplicatedAccountsRepository(new AccountsRepositoryInMemory(),
+                Collections.singletonList(new InetSocketAddress("localhost", standby.getPort())),
+                ReplicatedAccountsRepository.AckLevel.ONE)) {
+            primary.createAccount(new Account("Id-1", new BigDecimal(1000)));
+            standby.close();
+
+            try {
+                primary.updateAccountsForTransactions(
+                        Collections.singletonList(new Transaction("Id-1", BigDecimal.ONE)));
+                primary.awaitDurable();
+                fail("Change acknowledged without standby");
+            } catch (UncheckedIOException ex) {
+                assertThat(primary.getConnectedStandbys()).isEqualTo(0);
+            }
+        }
+    }
+
+    /**
+     * Test that a standby which can not apply a change drops the primary and is marked as failed.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void receive_changeNotApplied() throws Exception {
+        AccountsRepository refusing = new AccountsRepositoryInMemory() {
+            @Override
+            public boolean updateAccountsForTransactions(List<Transaction> transactions) {
+                throw new AmountOutOfRangeException("Amount out of range");
+            }
+        };
+        try (StandbyAccountsRepository standby = new StandbyAccountsRepository(refusing, 0);
+             ReplicatedAccountsRepository primary = new ReplicatedAccountsRepository(new AccountsRepositoryInMemory(),
+                     Collections.singletonList(new InetSocketAddress("localhost", standby.getPort())),
+                     ReplicatedAccountsRepository.AckLevel.ONE)) {
+            primary.createAccount(new Account("Id-1", new BigDecimal(1000)));
+            assertThat(standby.isFailed()).isFalse();
+
+            try {
+                primary.updateAccountsForTransactions(
+                        Collections.singletonList(new Transaction("Id-1", BigDecimal.ONE)));
+                primary.awaitDurable();
+                fail("Change acknowledged by a failed standby");
+            } catch (UncheckedIOException ex) {
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while (!standby.isFailed() && System.nanoTime() < deadline) {
+                    Thread.sleep(10);
+                }
+                assertThat(standby.isFailed()).isTrue();
+                assertThat(standby.getAppliedSequence()).isEqualTo(1);
+            }
+        }
+    }
+
+    private static void awaitSameBalances(AccountsRepository primary, AccountsRepository standby)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            String accountId = "Id-" + i;
+            while (!primary.getAccount(accountId).getBalance().equals(standby.getAccount(accountId).getBalance())
+                    && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(standby.getAccount(accountId).getBalance()).isEqualTo(primary.getAccount(accountId).getBalance());
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.db.awmd.challenge.repository;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class TransactionJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that a group failing in the middle of its write is cut off the file and fails the journal, so no record
+     * is appended after the damaged one.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void append_failedWrite() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("accounts.journal");
+        FailingChannel channel = new FailingChannel(FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE));
+
+        try (TransactionJournal journal = new TransactionJournal(path, channel, TransactionJournal.SyncPolicy.OS, 0,
+                0, payload -> fail("Journal is empty"))) {
+            journal.await(journal.append(bytes("first")));
+            long size = journal.size();
+
+            channel.failing = true;
+            try {
+                journal.await(journal.append(bytes("second")));
+                fail("Failed write is not reported");
+            } catch (UncheckedIOException ex) {
+                assertThat(ex.getCause()).hasMessage("Disk full");
+            }
+            assertThat(journal.size()).isEqualTo(size);
+
+            channel.failing = false;
+            try {
+                journal.append(bytes("third"));
+                fail("Failed journal appends records");
+            } catch (UncheckedIOException ex) {
+                assertThat(ex.getMessage()).contains("failed");
+            }
+        }
+
+        List<String> replayed = new ArrayList<>();
+        try (TransactionJournal journal = new TransactionJournal(path, TransactionJournal.SyncPolicy.OS, 0,
+                payload -> replayed.add(StandardCharsets.UTF_8.decode(payload).toString()))) {
+            assertThat(replayed).containsExactly("first");
+        }
+    }
+
+    private static byte[] bytes(String payload) {
+        return payload.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Channel which writes half of a buffer and fails while failing is set.
+     */
+    private static final class FailingChannel extends FileChannel {
+
+        private final FileChannel delegate;
+
+        private volatile boolean failing;
+
+        private FailingChannel(FileChannel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (!failing) {
+                return delegate.write(src);
+            }
+            ByteBuffer half = src.duplicate();
+            half.limit(src.position() + src.remaining() / 2);
+            delegate.write(half);
+            throw new IOException("Disk full");
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return delegate.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return delegate.read(dsts, offset, length);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return delegate.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            delegate.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return delegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return delegate.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return delegate.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return delegate.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return delegate.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return delegate.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return delegate.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.ImportSummary;
+import com.db.awmd.challenge.repository.AccountsRepositoryFixedPoint;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AccountImporterTest {
+
+    private final AccountsService accountsService = new AccountsService(new AccountsRepositoryFixedPoint());
+
+    /**
+     * Test that NDJSON in many small chunks is created in parallel and every repeated id is rejected once.
+     */
+    @Test
+    public void importAccounts_ndjson() {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            input.append("{\"accountId\":\"Id-").append(i).append("\",\"balance\":").append(i).append(".25}\n");
+        }
+        input.append("{\"accountId\":\"Id-7\",\"balance\":1}\n");
+        input.append("{\"accountId\":\"Id-1000\",\"balance\":\"12.5\",\"currency\":{\"code\":\"EUR\"}}\n");
+        input.append("{\"accountId\":\"Id-1000\",\"balance\":1}\n");
+        input.append("{\"balance\":1}\n");
+
+        ImportSummary summary = new AccountImporter(accountsService, 16, 4, 10).importAccounts(
+                new ByteArrayInputStream(input.toString().getBytes(StandardCharsets.UTF_8)),
+                AccountImporter.Format.NDJSON, 1004);
+
+        assertThat(summary.getRead()).isEqualTo(1004);
+        assertThat(summary.getCreated()).isEqualTo(1001);
+        assertThat(summary.getRejected()).isEqualTo(3);
+        assertThat(summary.getRejects()).extracting(ImportSummary.Reject::getLine).containsOnly(1001L, 1003L, 1004L);
+        assertThat(summary.getError()).isNull();
+        assertThat(accountsService.getAccount("Id-7").getBalance()).isEqualByComparingTo("7.25");
+        assertThat(accountsService.getAccount("Id-1000").getBalance()).isEqualByComparingTo("12.5");
+    }
+
+    /**
+     * Test that the import stops at input which is no JSON, keeping the accounts read before.
+     */
+    @Test
+    public void importAccounts_malformed() {
+        String input = "{\"accountId\":\"Id-1\",\"balance\":1}\n{\"accountId\":\"Id-2\",\"balance\":2}\nnot json\n"
+                + "{\"accountId\":\"Id-3\",\"balance\":3}\n";
+
+        ImportSummary summary = new AccountImporter(accountsService, 1, 2, 10).importAccounts(
+                new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), AccountImporter.Format.NDJSON, 0);
+
+        assertThat(summary.getCreated()).isEqualTo(2);
+        assertThat(summary.getError()).contains("line: 3");
+        assertThat(accountsService.getAccount("Id-3")).isNull();
+    }
+}
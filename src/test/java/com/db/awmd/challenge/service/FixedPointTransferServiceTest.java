@@ -0,0 +1,10 @@
+package com.db.awmd.challenge.service;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Runs the transfer service tests on the {@link com.db.awmd.challenge.repository.AccountsRepositoryFixedPoint}.
+ */
+@TestPropertySource(properties = "accounts.repository.type=fixed-point")
+public class FixedPointTransferServiceTest extends TransferServiceTest {
+}
@@ -0,0 +1,118 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.MultiLegTransfer;
+import com.db.awmd.challenge.domain.TransferRejection;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MultiLegTransferTest {
+
+    private AccountsRepository accountsRepository;
+
+    private TransferService transferService;
+
+    @Before
+    public void setUp() {
+        accountsRepository = new AccountsRepositoryInMemory();
+        transferService = new TransferService(accountsRepository, (account, description) -> { });
+        accountsRepository.createAccount(new Account("Payer", new BigDecimal(1000)));
+        for (int i = 0; i < 500; i++) {
+            accountsRepository.createAccount(new Account("Id-" + i, BigDecimal.ZERO));
+        }
+    }
+
+    /**
+     * Test that one debit fans out to 500 credits.
+     */
+    @Test
+    public void tryTransfer_fanOut() {
+        List<MultiLegTransfer.Leg> credits = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            credits.add(new MultiLegTransfer.Leg("Id-" + i, new BigDecimal(2)));
+        }
+
+        TransferResult result = transferService.tryTransfer(new MultiLegTransfer(
+                Collections.singletonList(new MultiLegTransfer.Leg("Payer", new BigDecimal(1000))), credits));
+
+        assertThat(result.isOk()).isTrue();
+        assertThat(accountsRepository.getAccount("Payer").getBalance()).isEqualByComparingTo("0");
+        assertThat(accountsRepository.getAccount("Id-0").getBalance()).isEqualByComparingTo("2");
+        assertThat(accountsRepository.getAccount("Id-499").getBalance()).isEqualByComparingTo("2");
+    }
+
+    /**
+     * Test that a leg which can not be applied leaves every account unchanged.
+     */
+    @Test
+    public void tryTransfer_allOrNothing() {
+        MultiLegTransfer.Leg payer = new MultiLegTransfer.Leg("Payer", new BigDecimal(600));
+
+        TransferResult insufficient = transferService.tryTransfer(new MultiLegTransfer(Arrays.asList(payer, payer),
+                Arrays.asList(new MultiLegTransfer.Leg("Id-0", new BigDecimal(1100)),
+                        new MultiLegTransfer.Leg("Id-1", new BigDecimal(100)))));
+        TransferResult noAccount = transferService.tryTransfer(new MultiLegTransfer(Collections.singletonList(payer),
+                Arrays.asList(new MultiLegTransfer.Leg("Id-0", new BigDecimal(300)),
+                        new MultiLegTransfer.Leg("Id-unknown", new BigDecimal(300)))));
+        TransferResult unbalanced = transferService.tryTransfer(new MultiLegTransfer(Collections.singletonList(payer),
+                Collections.singletonList(new MultiLegTransfer.Leg("Id-0", new BigDecimal(599)))));
+        TransferResult sameAccount = transferService.tryTransfer(new MultiLegTransfer(Collections.singletonList(payer),
+                Arrays.asList(new MultiLegTransfer.Leg("Id-0", new BigDecimal(300)),
+                        new MultiLegTransfer.Leg("Payer", new BigDecimal(300)))));
+
+        assertThat(insufficient.getRejection()).isEqualTo(TransferRejection.INSUFFICIENT_MONEY);
+        assertThat(noAccount.getRejection()).isEqualTo(TransferRejection.NO_ACCOUNT);
+        assertThat(unbalanced.getRejection()).isEqualTo(TransferRejection.INVALID);
+        assertThat(sameAccount.getRejection()).isEqualTo(TransferRejection.SAME_ACCOUNT);
+        assertThat(accountsRepository.getAccount("Payer").getBalance()).isEqualByComparingTo("1000");
+        assertThat(accountsRepository.getAccount("Id-0").getBalance()).isEqualByComparingTo("0");
+    }
+
+    /**
+     * Test that the sharded mode refuses multi-leg transfers instead of racing its shard threads.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void tryTransfer_shardedRejected() throws Exception {
+        transferService.useShards(2, 16);
+        try {
+            TransferResult result = transferService.tryTransfer(new MultiLegTransfer(
+                    Collections.singletonList(new MultiLegTransfer.Leg("Payer", BigDecimal.ONE)),
+                    Collections.singletonList(new MultiLegTransfer.Leg("Id-0", BigDecimal.ONE))));
+
+            assertThat(result.getRejection()).isEqualTo(TransferRejection.INVALID);
+        } finally {
+            transferService.shutdown();
+        }
+    }
+
+    /**
+     * Test that a transfer of more legs than the maximum is rejected as invalid without changing any account.
+     */
+    @Test
+    public void tryTransfer_tooManyLegs() {
+        transferService.setMaxLegs(100);
+        List<MultiLegTransfer.Leg> credits = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            credits.add(new MultiLegTransfer.Leg("Id-" + i, BigDecimal.ONE));
+        }
+
+        TransferResult result = transferService.tryTransfer(new MultiLegTransfer(
+                Collections.singletonList(new MultiLegTransfer.Leg("Payer", new BigDecimal(100))), credits));
+
+        assertThat(result.getRejection()).isEqualTo(TransferRejection.INVALID);
+        assertThat(accountsRepository.getAccount("Payer").getBalance()).isEqualByComparingTo("1000");
+    }
+}
@@ -0,0 +1,192 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NotificationDispatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final CountDownLatch firstDelivery = new CountDownLatch(1);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final List<String> delivered = new CopyOnWriteArrayList<>();
+
+    private NotificationDispatcher dispatcher;
+
+    /**
+     * Notification service which holds the worker in the first delivery until the test releases it.
+     */
+    private final NotificationService blockingNotificationService = (account, description) -> {
+        delivered.add(account.getAccountId() + ": " + description);
+        firstDelivery.countDown();
+        try {
+            release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    };
+
+    @After
+    public void shutdown() throws Exception {
+        release.countDown();
+        dispatcher.shutdown();
+    }
+
+    /**
+     * Test that notifications of the same account queued together are delivered as one message.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void dispatch_coalescesPerAccount() throws Exception {
+        dispatcher = new NotificationDispatcher(blockingNotificationService, true, 16, 16, 1,
+                NotificationDispatcher.OverflowPolicy.BLOCK, "unused.spill");
+        Account account = new Account("Id-1", BigDecimal.TEN);
+
+        dispatcher.dispatch(account, "first");
+        assertThat(firstDelivery.await(5, TimeUnit.SECONDS)).isTrue();
+        dispatcher.dispatch(account, "second");
+        dispatcher.dispatch(account, "third");
+        dispatcher.dispatch(new Account("Id-2", BigDecimal.TEN), "other");
+        assertThat(dispatcher.getQueueDepth()).isEqualTo(3);
+        release.countDown();
+        dispatcher.shutdown();
+
+        assertThat(delivered).containsExactly("Id-1: first", "Id-1: second\nthird", "Id-2: other");
+        assertThat(dispatcher.getDeliveredCount()).isEqualTo(4);
+    }
+
+    /**
+     * Test that the oldest queued notification is discarded when the queue is full.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void dispatch_dropsOldestWhenFull() throws Exception {
+        dispatcher = new NotificationDispatcher(blockingNotificationService, true, 2, 16, 1,
+                NotificationDispatcher.OverflowPolicy.DROP_OLDEST, "unused.spill");
+
+        dispatcher.dispatch(new Account("Id-1", BigDecimal.TEN), "first");
+        assertThat(firstDelivery.await(5, TimeUnit.SECONDS)).isTrue();
+        dispatcher.dispatch(new Account("Id-2", BigDecimal.TEN), "second");
+        dispatcher.dispatch(new Account("Id-3", BigDecimal.TEN), "third");
+        dispatcher.dispatch(new Account("Id-4", BigDecimal.TEN), "fourth");
+        release.countDown();
+        dispatcher.shutdown();
+
+        assertThat(dispatcher.getDroppedCount()).isEqualTo(1);
+        assertThat(delivered).containsExactly("Id-1: first", "Id-3: third", "Id-4: fourth");
+    }
+
+    /**
+     * Test that a notification spills while the spilled ones are delivered to a slow notification service, and that
+     * every notification is delivered once.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void dispatch_spillsWhileSpillIsDelivered() throws Exception {
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        CountDownLatch spillDelivery = new CountDownLatch(1);
+        // holds the worker in the delivery of the first notification, then in the first spilled one
+        NotificationService notificationService = (account, description) -> {
+            delivered.add(account.getAccountId() + ": " + description);
+            boolean first = "Id-1".equals(account.getAccountId());
+            if (first || "Id-3".equals(account.getAccountId())) {
+                (first ? firstDelivery : spillDelivery).countDown();
+                try {
+                    (first ? releaseFirst : release).await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        dispatcher = new NotificationDispatcher(notificationService, true, 1, 1, 1,
+                NotificationDispatcher.OverflowPolicy.SPILL_TO_DISK,
+                folder.getRoot().toPath().resolve("notifications.spill").toString());
+
+        dispatcher.dispatch(new Account("Id-1", BigDecimal.TEN), "first");
+        assertThat(firstDelivery.await(5, TimeUnit.SECONDS)).isTrue();
+        dispatcher.dispatch(new Account("Id-2", BigDecimal.TEN), "queued");
+        dispatcher.dispatch(new Account("Id-3", BigDecimal.TEN), "spilled");
+        dispatcher.dispatch(new Account("Id-4", BigDecimal.TEN), "spilled");
+        releaseFirst.countDown();
+        assertThat(spillDelivery.await(5, TimeUnit.SECONDS)).isTrue();
+
+        dispatcher.dispatch(new Account("Id-5", BigDecimal.TEN), "queued");
+        long start = System.nanoTime();
+        dispatcher.dispatch(new Account("Id-6", BigDecimal.TEN), "spilled");
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1000);
+        release.countDown();
+        dispatcher.shutdown();
+
+        assertThat(dispatcher.getSpilledCount()).isEqualTo(3);
+        assertThat(delivered).containsOnly("Id-1: first", "Id-2: queued", "Id-3: spilled", "Id-4: spilled",
+                "Id-5: queued", "Id-6: spilled").hasSize(6);
+    }
+
+    /**
+     * Test that a spilled notification is in the spill file at once, with a carriage return in its account id
+     * escaped, and is delivered with the id unchanged.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void dispatch_spillsCarriageReturn() throws Exception {
+        Path spillFile = folder.getRoot().toPath().resolve("notifications.spill");
+        dispatcher = new NotificationDispatcher(blockingNotificationService, true, 1, 1, 1,
+                NotificationDispatcher.OverflowPolicy.SPILL_TO_DISK, spillFile.toString());
+
+        dispatcher.dispatch(new Account("Id-1", BigDecimal.TEN), "first");
+        assertThat(firstDelivery.await(5, TimeUnit.SECONDS)).isTrue();
+        dispatcher.dispatch(new Account("Id-2", BigDecimal.TEN), "queued");
+        dispatcher.dispatch(new Account("Id\r3", BigDecimal.TEN), "spilled");
+
+        assertThat(Files.readAllLines(spillFile, StandardCharsets.UTF_8)).containsExactly("Id\\r3\t10\tspilled");
+        release.countDown();
+        dispatcher.shutdown();
+
+        assertThat(delivered).containsOnly("Id-1: first", "Id-2: queued", "Id\r3: spilled").hasSize(3);
+    }
+
+    /**
+     * Test that the notifications spilled before a restart are delivered, skipping a line which is no notification.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void dispatch_skipsBrokenSpilledLine() throws Exception {
+        Path spillFile = folder.getRoot().toPath().resolve("notifications.spill");
+        Files.write(spillFile, Arrays.asList("Id-1\t10\tspilled", "Id-2", "Id-3\tten\tspilled", "Id-4\t10\tspilled"),
+                StandardCharsets.UTF_8);
+        dispatcher = new NotificationDispatcher((account, description) ->
+                delivered.add(account.getAccountId() + ": " + description), true, 16, 16, 1,
+                NotificationDispatcher.OverflowPolicy.SPILL_TO_DISK, spillFile.toString());
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (delivered.size() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(delivered).containsExactly("Id-1: spilled", "Id-4: spilled");
+        assertThat(dispatcher.getDroppedCount()).isEqualTo(2);
+    }
+}
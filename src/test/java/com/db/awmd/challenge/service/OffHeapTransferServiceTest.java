@@ -0,0 +1,10 @@
+package com.db.awmd.challenge.service;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Runs the transfer service tests on the {@link com.db.awmd.challenge.repository.AccountsRepositoryOffHeap}.
+ */
+@TestPropertySource(properties = "accounts.repository.type=off-heap")
+public class OffHeapTransferServiceTest extends TransferServiceTest {
+}
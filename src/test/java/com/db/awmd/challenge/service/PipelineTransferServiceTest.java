@@ -0,0 +1,18 @@
+package com.db.awmd.challenge.service;
+
+import org.junit.Test;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the transfer service tests with the transfers applied by the {@link TransferPipeline}.
+ */
+@TestPropertySource(properties = {"transfer.mode=PIPELINE", "transfer.pipeline-size=64"})
+public class PipelineTransferServiceTest extends TransferServiceTest {
+
+    @Test
+    public void mode() {
+        assertThat(transferService.getMode()).isEqualTo(TransferService.Mode.PIPELINE);
+    }
+}
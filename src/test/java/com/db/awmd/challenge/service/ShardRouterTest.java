@@ -0,0 +1,254 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferRejection;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.exception.ShardUnavailableException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class ShardRouterTest {
+
+    private static final int ACCOUNTS = 200;
+
+    private ShardRouter router;
+
+    @Before
+    public void setUp() {
+        router = new ShardRouter(Arrays.asList(node("node-1"), node("node-2"), node("node-3")),
+                ShardRouter.DEFAULT_VIRTUAL_NODES, 100);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            router.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        router.close();
+    }
+
+    /**
+     * Test that concurrent transfers across the nodes keep the total of all balances while a node is added and
+     * another one removed, and that every account ends on the node it hashes to.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void tryTransfer_whileRebalancing() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int seed = t;
+            futures.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                int ok = 0;
+                while (running.get() || ok < 1000) {
+                    int from = random.nextInt(ACCOUNTS);
+                    TransferResult result = router.tryTransfer(new Transfer("Id-" + from,
+                            "Id-" + (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS, new BigDecimal("0.75")));
+                    if (result.isOk()) {
+                        ok++;
+                    }
+                }
+                return ok;
+            }));
+        }
+        ShardNode removed = router.getNodes().get(0);
+        router.addNode(node("node-4"));
+        router.removeNode(removed);
+        running.set(false);
+        for (Future<Integer> future : futures) {
+            assertThat(future.get()).isGreaterThanOrEqualTo(1000);
+        }
+        executor.shutdown();
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < ACCOUNTS; i++) {
+            total = total.add(router.getAccount("Id-" + i).getBalance());
+        }
+        assertThat(total).isEqualByComparingTo(new BigDecimal(1000 * ACCOUNTS));
+        assertThat(removed.getAccountIds()).isEmpty();
+        assertThat(router.getNodes()).extracting(ShardNode::getName).containsOnly("node-2", "node-3", "node-4");
+        for (int i = 0; i < ACCOUNTS; i++) {
+            assertThat(router.nodeOf("Id-" + i).owns("Id-" + i)).isTrue();
+        }
+    }
+
+    /**
+     * Test that a payee node which is down before the decision aborts the transfer and gives the debit back.
+     */
+    @Test
+    public void tryTransfer_payeeNodeDown() {
+        String[] pair = accountsOnTwoNodes();
+        router.nodeOf(pair[1]).setAvailable(false);
+
+        TransferResult result = router.tryTransfer(new Transfer(pair[0], pair[1], new BigDecimal(100)));
+
+        assertThat(result.getRejection()).isEqualTo(TransferRejection.UNAVAILABLE);
+        assertThat(router.getAccount(pair[0]).getBalance()).isEqualByComparingTo("1000");
+        assertThat(router.nodeOf(pair[0]).isReserved(pair[0])).isFalse();
+    }
+
+    /**
+     * Test that a commit which can not be delivered after the decision is applied by the recovery.
+     */
+    @Test
+    public void tryTransfer_commitRecovered() {
+        router.close();
+        FlakyNode flaky = new FlakyNode("node-1");
+        router = new ShardRouter(Arrays.asList(flaky, node("node-2")), ShardRouter.DEFAULT_VIRTUAL_NODES, 60_000);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            router.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+        }
+        String payer = flaky.getAccountIds().iterator().next();
+        String payee = null;
+        for (int i = 0; payee == null; i++) {
+            payee = router.nodeOf("Id-" + i) != flaky ? "Id-" + i : null;
+        }
+        flaky.failCommits = true;
+
+        TransferResult result = router.tryTransfer(new Transfer(payee, payer, new BigDecimal(100)));
+
+        assertThat(result.isOk()).isTrue();
+        assertThat(router.getAccount(payee).getBalance()).isEqualByComparingTo("900");
+        assertThat(router.getAccount(payer).getBalance()).isEqualByComparingTo("1000");
+
+        flaky.failCommits = false;
+        router.recover();
+
+        assertThat(router.getAccount(payer).getBalance()).isEqualByComparingTo("1100");
+    }
+
+    /**
+     * Test that a reservation the router never decided is aborted after the timeout.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void recover_expiredReservationAborted() throws Exception {
+        String accountId = "Id-0";
+        ShardNode node = router.nodeOf(accountId);
+
+        assertThat(node.prepare(Long.MAX_VALUE, accountId, new BigDecimal(-300), "Id-1").isOk()).isTrue();
+        assertThat(router.getAccount(accountId).getBalance()).isEqualByComparingTo("700");
+
+        Thread.sleep(150);
+        router.recover();
+
+        assertThat(router.getAccount(accountId).getBalance()).isEqualByComparingTo("1000");
+        assertThat(node.isReserved(accountId)).isFalse();
+    }
+
+    /**
+     * Test that an account handed over by a node which goes down right after, to a node which is down, is kept by
+     * the router and moved once the nodes are back.
+     */
+    @Test
+    public void addNode_nodesDownMidMove() {
+        router.close();
+        FlakyNode source = new FlakyNode("node-1");
+        ShardNode destination = node("node-2");
+        router = new ShardRouter(Collections.singletonList(source), ShardRouter.DEFAULT_VIRTUAL_NODES, 10);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            router.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+        }
+        destination.setAvailable(false);
+        source.failAfterHandOver = true;
+
+        try {
+            router.addNode(destination);
+            fail("Rebalancing finished with both nodes down");
+        } catch (IllegalStateException ex) {
+            assertThat(ex).hasMessageContaining("left to move");
+        }
+
+        List<String> moving = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            if (!source.owns("Id-" + i) && !destination.owns("Id-" + i)) {
+                moving.add("Id-" + i);
+            }
+        }
+        assertThat(moving).hasSize(1);
+        String other = moving.get(0).equals("Id-0") ? "Id-1" : "Id-0";
+        assertThat(router.getAccount(moving.get(0)).getBalance()).isEqualByComparingTo("1000");
+        assertThat(router.tryTransfer(new Transfer(moving.get(0), other, BigDecimal.ONE)).getRejection())
+                .isEqualTo(TransferRejection.UNAVAILABLE);
+
+        source.failAfterHandOver = false;
+        source.setAvailable(true);
+        destination.setAvailable(true);
+        router.rebalance(10_000);
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < ACCOUNTS; i++) {
+            assertThat(router.nodeOf("Id-" + i).owns("Id-" + i)).isTrue();
+            total = total.add(router.getAccount("Id-" + i).getBalance());
+        }
+        assertThat(total).isEqualByComparingTo(new BigDecimal(1000 * ACCOUNTS));
+        assertThat(destination.owns(moving.get(0))).isTrue();
+    }
+
+    private String[] accountsOnTwoNodes() {
+        for (int i = 1; i < ACCOUNTS; i++) {
+            if (router.nodeOf("Id-" + i) != router.nodeOf("Id-0")) {
+                return new String[] {"Id-0", "Id-" + i};
+            }
+        }
+        throw new IllegalStateException("All accounts on one node");
+    }
+
+    private static ShardNode node(String name) {
+        return new ShardNode(name, new AccountsRepositoryInMemory(),
+                NotificationDispatcher.direct((account, description) -> { }));
+    }
+
+    /**
+     * Node whose commits fail like a node going down right after the prepare, or which goes down right after handing
+     * an account over.
+     */
+    private static final class FlakyNode extends ShardNode {
+
+        private volatile boolean failCommits;
+
+        private volatile boolean failAfterHandOver;
+
+        private FlakyNode(String name) {
+            super(name, new AccountsRepositoryInMemory(), NotificationDispatcher.direct((account, description) -> { }));
+        }
+
+        @Override
+        public void commit(long transactionId) {
+            if (failCommits) {
+                throw new ShardUnavailableException("Node " + getName() + " is unavailable");
+            }
+            super.commit(transactionId);
+        }
+
+        @Override
+        public Account handOver(String accountId) {
+            Account account = super.handOver(accountId);
+            if (failAfterHandOver && account != null) {
+                setAvailable(false);
+            }
+            return account;
+        }
+    }
+}
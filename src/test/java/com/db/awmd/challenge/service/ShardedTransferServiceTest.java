@@ -0,0 +1,63 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import org.junit.Test;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the transfer service tests with the transfers applied by the {@link ShardedTransferExecutor}.
+ */
+@TestPropertySource(properties = {"transfer.mode=SHARDED", "transfer.shards=4"})
+public class ShardedTransferServiceTest extends TransferServiceTest {
+
+    @Test
+    public void mode() {
+        assertThat(transferService.getMode()).isEqualTo(TransferService.Mode.SHARDED);
+    }
+
+    /**
+     * Test that a transfer which can not be made durable fails instead of hanging, and the executor refuses the
+     * transfers after it.
+     *
+     * @throws Exception
+     */
+    @Test(timeout = 10_000)
+    public void transfer_notDurable() throws Exception {
+        AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory() {
+            @Override
+            public void awaitDurable() {
+                throw new UncheckedIOException(new IOException("Disk full"));
+            }
+        };
+        repository.createAccount(new Account("Id-1", new BigDecimal(1000)));
+        repository.createAccount(new Account("Id-2", new BigDecimal(1000)));
+        TransferService service = new TransferService(repository, notificationService);
+        service.useShards(2, 16);
+        try {
+            try {
+                service.tryTransfer(new Transfer("Id-1", "Id-2", BigDecimal.TEN));
+                fail("Transfer which is not durable succeeds");
+            } catch (CompletionException ex) {
+                assertThat(ex.getCause()).isInstanceOf(UncheckedIOException.class);
+            }
+            try {
+                service.tryTransfer(new Transfer("Id-2", "Id-1", BigDecimal.ONE));
+                fail("Failed executor accepts a transfer");
+            } catch (IllegalStateException ex) {
+                assertThat(ex.getMessage()).isEqualTo("Sharded transfer executor failed");
+            }
+        } finally {
+            service.shutdown();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.db.awmd.challenge.service;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TransactionHistoryTest {
+
+    /**
+     * Test that an account keeps at least max-entries and at most one more chunk, read page by page newest first.
+     */
+    @Test
+    public void read_boundedPages() throws Exception {
+        TransactionHistory history = new TransactionHistory(100, 0, 2);
+        for (int i = 0; i < 1000; i++) {
+            history.recordTransfer("Id-1", "Id-" + (2 + i % 3), new BigDecimal(i).movePointLeft(2));
+        }
+
+        List<Long> sequences = new ArrayList<>();
+        List<BigDecimal> amounts = new ArrayList<>();
+        long cursor = Long.MAX_VALUE;
+        while (cursor >= 0) {
+            cursor = history.read("Id-1", cursor, 30, (sequence, timestamp, counterpartId, units, scale) -> {
+                sequences.add(sequence);
+                amounts.add(BigDecimal.valueOf(units, scale));
+            });
+        }
+
+        assertThat(sequences.size()).isBetween(100, 100 + TransactionHistory.MAX_CHUNK_SIZE);
+        assertThat(sequences.get(0)).isEqualTo(999L);
+        assertThat(sequences.get(sequences.size() - 1)).isEqualTo(1000L - sequences.size());
+        assertThat(amounts.get(0)).isEqualByComparingTo("-9.99");
+        history.read("Id-3", Long.MAX_VALUE, 1, (sequence, timestamp, counterpartId, units, scale) -> {
+            assertThat(sequence).isEqualTo(332L);
+            assertThat(counterpartId).isEqualTo("Id-1");
+            assertThat(BigDecimal.valueOf(units, scale)).isEqualByComparingTo("9.97");
+        });
+    }
+
+    /**
+     * Test that a cleared account starts again at sequence 0.
+     */
+    @Test
+    public void clear() throws Exception {
+        TransactionHistory history = new TransactionHistory(100, 0, 2);
+        history.record("Id-1", "Id-2", BigDecimal.TEN);
+        history.clear("Id-1");
+
+        assertThat(history.read("Id-1", Long.MAX_VALUE, 10, (sequence, timestamp, counterpartId, units, scale) -> {
+            throw new AssertionError("Cleared transaction " + sequence);
+        })).isEqualTo(-1);
+        history.record("Id-1", "Id-2", BigDecimal.ONE);
+        history.read("Id-1", Long.MAX_VALUE, 10, (sequence, timestamp, counterpartId, units, scale) ->
+                assertThat(sequence).isEqualTo(0L));
+    }
+}
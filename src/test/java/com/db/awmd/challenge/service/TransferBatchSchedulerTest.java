@@ -0,0 +1,125 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferRejection;
+import com.db.awmd.challenge.domain.TransferResult;
+import org.junit.After;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TransferBatchSchedulerTest {
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    private final TransferBatchScheduler scheduler = new TransferBatchScheduler(pool);
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Test that a transfer runs in the wave after the last one touching its accounts, so a transfer of untouched
+     * accounts runs before an earlier transfer which has to wait.
+     */
+    @Test
+    public void run_waves() {
+        List<Transfer> transfers = Arrays.asList(
+                new Transfer("Id-A", "Id-B", new BigDecimal(1)),
+                new Transfer("Id-B", "Id-C", new BigDecimal(2)),
+                new Transfer("Id-C", "Id-A", new BigDecimal(3)),
+                new Transfer("Id-D", "Id-E", new BigDecimal(4)));
+        List<Integer> applied = new ArrayList<>();
+
+        TransferResult[] results = scheduler.run(transfers, transfer -> {
+            applied.add(transfer.getAmount().intValue());
+            return TransferResult.OK;
+        });
+
+        assertThat(results).containsOnly(TransferResult.OK);
+        assertThat(applied).containsExactly(1, 4, 2, 3);
+    }
+
+    /**
+     * Test that waves run in parallel never apply two transfers of one account at the same time, and apply the
+     * transfers of every account in submission order.
+     */
+    @Test
+    public void run_sameAccountInOrder() {
+        int accounts = 200;
+        Random random = new Random(1);
+        List<Transfer> transfers = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            int from = random.nextInt(accounts);
+            transfers.add(new Transfer("Id-" + from, "Id-" + (from + 1 + random.nextInt(accounts - 1)) % accounts,
+                    new BigDecimal(i)));
+        }
+        Set<String> busy = ConcurrentHashMap.newKeySet();
+        Map<String, List<Integer>> appliedByAccount = new ConcurrentHashMap<>();
+        AtomicBoolean overlapped = new AtomicBoolean();
+
+        TransferResult[] results = scheduler.run(transfers, transfer -> {
+            if (!busy.add(transfer.getAccountFromId()) || !busy.add(transfer.getAccountToId())) {
+                overlapped.set(true);
+            }
+            int index = transfer.getAmount().intValue();
+            appliedByAccount.computeIfAbsent(transfer.getAccountFromId(),
+                    id -> Collections.synchronizedList(new ArrayList<>())).add(index);
+            appliedByAccount.computeIfAbsent(transfer.getAccountToId(),
+                    id -> Collections.synchronizedList(new ArrayList<>())).add(index);
+            busy.remove(transfer.getAccountFromId());
+            busy.remove(transfer.getAccountToId());
+            return TransferResult.OK;
+        });
+
+        assertThat(results).containsOnly(TransferResult.OK);
+        assertThat(overlapped.get()).isFalse();
+        assertThat(appliedByAccount).hasSize(accounts);
+        for (List<Integer> applied : appliedByAccount.values()) {
+            assertThat(applied).isSorted();
+        }
+    }
+
+    /**
+     * Test that invalid transfers and a transfer whose executor throws are rejected on their own, while the other
+     * transfers of the batch are applied.
+     */
+    @Test
+    public void run_invalidAndFailedTransfers() {
+        List<Transfer> transfers = Arrays.asList(
+                new Transfer("Id-A", "Id-B", new BigDecimal(1)),
+                null,
+                new Transfer(null, "Id-B", new BigDecimal(2)),
+                new Transfer("Id-A", "Id-B", null),
+                new Transfer("Id-B", "Id-C", new BigDecimal(3)),
+                new Transfer("Id-C", "Id-D", new BigDecimal(4)));
+
+        TransferResult[] results = scheduler.run(transfers, transfer -> {
+            if (transfer.getAmount().intValue() == 3) {
+                throw new IllegalStateException("Journal failed");
+            }
+            return TransferResult.OK;
+        });
+
+        assertThat(results[0]).isEqualTo(TransferResult.OK);
+        assertThat(results[1].getRejection()).isEqualTo(TransferRejection.INVALID);
+        assertThat(results[2].getRejection()).isEqualTo(TransferRejection.INVALID);
+        assertThat(results[3].getRejection()).isEqualTo(TransferRejection.INVALID);
+        assertThat(results[4].getRejection()).isEqualTo(TransferRejection.FAILED);
+        assertThat(results[4].getMessage()).isEqualTo("Journal failed");
+        assertThat(results[5]).isEqualTo(TransferResult.OK);
+    }
+}
@@ -0,0 +1,63 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferRejection;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.JournaledAccountsRepository;
+import com.db.awmd.challenge.repository.TransactionJournal;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TransferPipelineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that transfers published without waiting are applied in order, rejected on the balance they see at their
+     * turn and journaled, so the accounts are recovered from the journal.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void publish_journaled() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("accounts.journal");
+        List<CompletableFuture<TransferResult>> results = new ArrayList<>();
+
+        try (JournaledAccountsRepository repository = new JournaledAccountsRepository(new AccountsRepositoryInMemory(),
+                path, TransactionJournal.SyncPolicy.PER_TRANSFER, 0)) {
+            repository.createAccount(new Account("Id-1", new BigDecimal(100)));
+            repository.createAccount(new Account("Id-2", BigDecimal.ZERO));
+            TransferPipeline pipeline = new TransferPipeline(repository, new TransferService(repository,
+                    (account, description) -> { })::validateTransfer, new TransactionHistory(),
+                    NotificationDispatcher.direct((account, description) -> { }), 16);
+            for (int i = 0; i < 150; i++) {
+                results.add(pipeline.publish(new Transfer("Id-1", "Id-2", BigDecimal.ONE)));
+            }
+            results.add(pipeline.publish(new Transfer("Id-1", "Id-3", BigDecimal.ONE)));
+            CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).join();
+            pipeline.shutdown();
+        }
+
+        assertThat(results.subList(0, 100)).extracting(result -> result.join().isOk()).containsOnly(true);
+        assertThat(results.subList(100, 150)).extracting(result -> result.join().getRejection())
+                .containsOnly(TransferRejection.INSUFFICIENT_MONEY);
+        assertThat(results.get(150).join().getRejection()).isEqualTo(TransferRejection.NO_ACCOUNT);
+        try (JournaledAccountsRepository repository = new JournaledAccountsRepository(new AccountsRepositoryInMemory(),
+                path, TransactionJournal.SyncPolicy.OS, 0)) {
+            assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo(BigDecimal.ZERO);
+            assertThat(repository.getAccount("Id-2").getBalance()).isEqualByComparingTo(new BigDecimal(100));
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.InsufficientMoneyTransactionException;
+import com.db.awmd.challenge.exception.SameAccountTransactionException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Contention test which fires random transfers between a small set of accounts from many threads at once.
+ * The number of transfers can be raised with -Dstress.transfers=N.
+ */
+public class TransferServiceStressTest {
+
+    private static final int ACCOUNTS = 64;
+
+    private static final BigDecimal INITIAL_BALANCE = new BigDecimal(1000);
+
+    /**
+     * Test that concurrent transfers never overdraft an account, never lose money and never deadlock.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void transfer_concurrentRandomTransfers() throws Exception {
+        AccountsRepository accountsRepository = new AccountsRepositoryInMemory();
+        TransferService transferService = new TransferService(accountsRepository, (account, description) -> { });
+        runRandomTransfers(accountsRepository, transferService, Long.getLong("stress.transfers", 1_000_000L));
+    }
+
+    /**
+     * Test the same on shard threads, where most transfers cross two shards.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void transfer_concurrentRandomTransfers_sharded() throws Exception {
+        AccountsRepository accountsRepository = new AccountsRepositoryInMemory();
+        TransferService transferService = new TransferService(accountsRepository, (account, description) -> { });
+        transferService.useShards(4, 64);
+        try {
+            runRandomTransfers(accountsRepository, transferService, Long.getLong("stress.transfers", 1_000_000L) / 4);
+        } finally {
+            transferService.shutdown();
+        }
+    }
+
+    /**
+     * Test the same through the pipeline, with fewer entries than threads waiting on it.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void transfer_concurrentRandomTransfers_pipeline() throws Exception {
+        AccountsRepository accountsRepository = new AccountsRepositoryInMemory();
+        TransferService transferService = new TransferService(accountsRepository, (account, description) -> { });
+        transferService.usePipeline(4);
+        try {
+            runRandomTransfers(accountsRepository, transferService, Long.getLong("stress.transfers", 1_000_000L) / 4);
+        } finally {
+            transferService.shutdown();
+        }
+    }
+
+    /**
+     * Test the same with two hot accounts split into stripes, whose credits take no lock.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void transfer_concurrentRandomTransfers_hotAccounts() throws Exception {
+        AccountsRepository accountsRepository = new AccountsRepositoryInMemory(Arrays.asList("Id-0", "Id-1"), 4);
+        TransferService transferService = new TransferService(accountsRepository, (account, description) -> { });
+        runRandomTransfers(accountsRepository, transferService, Long.getLong("stress.transfers", 1_000_000L) / 4);
+    }
+
+    private static void runRandomTransfers(AccountsRepository accountsRepository, TransferService transferService,
+                                           long transfers) throws Exception {
+        int threads = Math.max(8, Runtime.getRuntime().availableProcessors());
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accountsRepository.createAccount(new Account("Id-" + i, INITIAL_BALANCE));
+        }
+
+        AtomicLong remaining = new AtomicLong(transfers);
+        AtomicLong rejected = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                while (remaining.decrementAndGet() >= 0) {
+                    Transfer transfer = new Transfer("Id-" + random.nextInt(ACCOUNTS), "Id-" + random.nextInt(ACCOUNTS),
+                            new BigDecimal(1 + random.nextInt(400)));
+                    try {
+                        transferService.transfer(transfer);
+                    } catch (InsufficientMoneyTransactionException | SameAccountTransactionException ex) {
+                        rejected.incrementAndGet();
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+
+        boolean finished = executor.awaitTermination(5, TimeUnit.MINUTES);
+        assertThat(ManagementFactory.getThreadMXBean().findDeadlockedThreads()).isNull();
+        assertThat(finished).isTrue();
+        assertThat(rejected.get()).isLessThan(transfers);
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < ACCOUNTS; i++) {
+            BigDecimal balance = accountsRepository.getAccount("Id-" + i).getBalance();
+            assertThat(balance).isGreaterThanOrEqualTo(BigDecimal.ZERO);
+            total = total.add(balance);
+        }
+        assertThat(total).isEqualByComparingTo(INITIAL_BALANCE.multiply(new BigDecimal(ACCOUNTS)));
+    }
+}
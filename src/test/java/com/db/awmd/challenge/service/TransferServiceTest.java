@@ -3,6 +3,8 @@ package com.db.awmd.challenge.service;
 import com.db.awmd.challenge.TestConfigurations;
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
 import com.db.awmd.challenge.exception.InsufficientMoneyTransactionException;
 import com.db.awmd.challenge.exception.NegativeAmountTransactionException;
 import com.db.awmd.challenge.exception.NoAccountExistsException;
@@ -16,6 +18,7 @@ import org.springframework.test.context.junit4.SpringRunner;
 
 import java.math.BigDecimal;
 import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -58,11 +61,11 @@ public class TransferServiceTest {
         assertThat(this.accountsService.getAccount(accountIdTo).getBalance()).isEqualTo(new BigDecimal(1333));
 
         // Verify notifications
-        Mockito.verify(this.notificationService,Mockito.times(1))
+        Mockito.verify(this.notificationService,Mockito.timeout(1000).times(1))
                 .notifyAboutTransfer(accountFrom, "Amount "
                         + new BigDecimal(333) + " is transferred to account ID " + accountIdTo);
 
-        Mockito.verify(this.notificationService,Mockito.times(1))
+        Mockito.verify(this.notificationService,Mockito.timeout(1000).times(1))
                 .notifyAboutTransfer(accountTo, "Amount "
                         + new BigDecimal(333) + " is transferred from account ID " + accountIdFrom);
 
@@ -189,6 +192,32 @@ public class TransferServiceTest {
         assertThat(this.accountsService.getAccount(accountIdTo).getBalance()).isEqualTo(new BigDecimal(1385));
     }
 
+    /**
+     * Test for a batch in which one transfer is rejected, the others are applied in submission order
+     *
+     * @throws Exception
+     */
+    @Test
+    public void transfer_MultipleWithRejection() throws Exception {
+        String accountIdFrom  = UUID.randomUUID().toString();
+        String accountIdTo = UUID.randomUUID().toString();
+
+        this.accountsService.createAccount(new Account(accountIdFrom, new BigDecimal(1000)));
+        this.accountsService.createAccount(new Account(accountIdTo, new BigDecimal(1000)));
+
+        List<TransferResult> results = this.transferService.transfer(Arrays.asList(
+                new Transfer(accountIdFrom, accountIdTo, new BigDecimal(700)),
+                new Transfer(accountIdFrom, accountIdTo, new BigDecimal(700)),
+                new Transfer(accountIdTo, accountIdFrom, new BigDecimal(100)),
+                new Transfer(accountIdFrom, UUID.randomUUID().toString(), new BigDecimal(1))
+        ));
+
+        assertThat(results).extracting(TransferResult::getStatus).containsExactly(TransferStatus.OK,
+                TransferStatus.INSUFFICIENT, TransferStatus.OK, TransferStatus.NOT_FOUND);
+        assertThat(this.accountsService.getAccount(accountIdFrom).getBalance()).isEqualTo(new BigDecimal(400));
+        assertThat(this.accountsService.getAccount(accountIdTo).getBalance()).isEqualTo(new BigDecimal(1600));
+    }
+
     /**
      * Test for transferring the negative amount from one account to another
      *
@@ -0,0 +1,101 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.InvalidPayloadException;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class JsonPayloadConverterTest {
+
+    /**
+     * Test that a transfer is read like Jackson reads it, with unknown fields skipped.
+     */
+    @Test
+    public void readTransfer() {
+        Transfer transfer = transfer(" {\"accountFromId\" : \"Id-1\", \"extra\":{\"a\":[1,\"}\"]},\n"
+                + "\"accountToId\":\"Id-\\u00e9\\\"2\",\"amount\":125.50,\"idempotencyKey\":\"k-1\"} ");
+
+        assertThat(transfer.getAccountFromId()).isEqualTo("Id-1");
+        assertThat(transfer.getAccountToId()).isEqualTo("Id-é\"2");
+        assertThat(transfer.getAmount()).isEqualTo("125.50");
+        assertThat(transfer.getAmount().scale()).isEqualTo(2);
+        assertThat(transfer.getIdempotencyKey()).isEqualTo("k-1");
+
+        assertThat(transfer("{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\",\"amount\":\"1e3\"}").getAmount())
+                .isEqualByComparingTo("1000");
+        assertThat(transfer("{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\","
+                + "\"amount\":12345678901234567890.5}").getAmount()).isEqualByComparingTo("12345678901234567890.5");
+        assertThat(transfer("{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\",\"amount\":1}").getAccountFromId())
+                .isSameAs(transfer.getAccountFromId());
+    }
+
+    /**
+     * Test that an invalid transfer is refused with the field and the message of the broken constraint.
+     */
+    @Test
+    public void readTransfer_invalid() {
+        assertInvalid("{\"accountToId\":\"Id-2\",\"amount\":1}", "accountFromId", "may not be null");
+        assertInvalid("{\"accountFromId\":\"Id-1\",\"accountToId\":\"\",\"amount\":1}", "accountToId",
+                "may not be empty");
+        assertInvalid("{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\",\"amount\":0.99}", "amount",
+                "Transfer amount must be positive.");
+        assertInvalid("{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\",\"amount\":-221}", "amount",
+                "Transfer amount must be positive.");
+        assertInvalid("{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\",\"amount\":\"ten\"}", "amount",
+                "must be a number");
+        assertInvalid("{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\",\"amount\":01}", null, "Invalid number");
+        assertInvalid("{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\",\"amount\":1,}", null,
+                "Expected a field after ','");
+        assertInvalid("{\"accountFromId\":\"Id-1\"} {}", null, "Unexpected content after the object");
+        assertInvalid("[]", null, "Expected a JSON object");
+    }
+
+    /**
+     * Test that an account needs a balance of at least zero.
+     */
+    @Test
+    public void readAccount() {
+        Account account = account("{\"accountId\":\"Id-123\",\"balance\":0}");
+
+        assertThat(account.getAccountId()).isEqualTo("Id-123");
+        assertThat(account.getBalance()).isEqualByComparingTo("0");
+        try {
+            account("{\"accountId\":\"Id-123\",\"balance\":-0.01}");
+            fail("Negative balance accepted");
+        } catch (InvalidPayloadException ex) {
+            assertThat(ex.getField()).isEqualTo("balance");
+            assertThat(ex.getMessage()).isEqualTo("Initial balance must be positive.");
+        }
+    }
+
+    @Test
+    public void errorJson() {
+        assertThat(new String(JsonPayloadConverter.errorJson("amount", "Say \"one\""), StandardCharsets.UTF_8))
+                .isEqualTo("{\"field\":\"amount\",\"message\":\"Say \\\"one\\\"\"}");
+    }
+
+    private static void assertInvalid(String json, String field, String message) {
+        try {
+            transfer(json);
+            fail("Accepted " + json);
+        } catch (InvalidPayloadException ex) {
+            assertThat(ex.getField()).isEqualTo(field);
+            assertThat(ex.getMessage()).isEqualTo(message);
+        }
+    }
+
+    private static Transfer transfer(String json) {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        return JsonPayloadConverter.readTransfer(body, body.length);
+    }
+
+    private static Account account(String json) {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        return JsonPayloadConverter.readAccount(body, body.length);
+    }
+}